@@ -42,6 +42,7 @@ dependencies {
     implementation("com.google.firebase:firebase-database")
     implementation(libs.firebase.firestore)
     implementation(libs.firebase.auth)  // Firebase Realtime Database
+    implementation(libs.work.runtime)
     implementation("com.github.TutorialsAndroid:GButton:v1.0.19")
     implementation("com.google.code.gson:gson:2.8.9")
 
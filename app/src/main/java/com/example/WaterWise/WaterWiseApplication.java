@@ -0,0 +1,17 @@
+package com.example.WaterWise;
+
+import android.app.Application;
+
+import com.example.WaterWise.data.AppForeground;
+
+/**
+ * WaterWiseApplication sets up the state shared by the whole process before any activity is
+ * created, so the foreground tracker sees every activity start and stop.
+ */
+public class WaterWiseApplication extends Application {
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        registerActivityLifecycleCallbacks(AppForeground.getInstance());
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.WaterWise.data;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * AppForeground tracks whether any activity of the app is started, for the whole process. It is
+ * registered once by {@link com.example.WaterWise.WaterWiseApplication} before the first activity
+ * is created, so its count of started activities is right however late a listener is added, for
+ * instance when a repository is created for a new user while the login screen is still started.
+ * Must be used on the main thread.
+ */
+public class AppForeground implements Application.ActivityLifecycleCallbacks {
+    private static final AppForeground instance = new AppForeground();
+
+    // Number of started activities, zero while the app is in the background
+    private int startedActivities;
+    private final List<Listener> listeners = new ArrayList<>();
+
+    AppForeground() {
+    }
+
+    /**
+     * Gets the tracker of this process.
+     *
+     * @return The tracker registered by the application.
+     */
+    public static AppForeground getInstance() {
+        return instance;
+    }
+
+    /**
+     * Tells whether an activity of the app is started.
+     *
+     * @return True while the app is in the foreground.
+     */
+    public boolean isInForeground() {
+        return startedActivities > 0;
+    }
+
+    /**
+     * Adds a listener notified when the app moves to the foreground or the background. It is not
+     * notified of the current state.
+     *
+     * @param listener The listener to add.
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added with {@link #addListener}.
+     *
+     * @param listener The listener to remove.
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity) {
+        if (startedActivities++ == 0) {
+            for (Listener listener : new ArrayList<>(listeners)) {
+                listener.onForeground();
+            }
+        }
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity) {
+        if (startedActivities > 0 && --startedActivities == 0) {
+            for (Listener listener : new ArrayList<>(listeners)) {
+                listener.onBackground();
+            }
+        }
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {}
+
+    @Override
+    public void onActivityResumed(Activity activity) {}
+
+    @Override
+    public void onActivityPaused(Activity activity) {}
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {}
+
+    @Override
+    public void onActivityDestroyed(Activity activity) {}
+
+    /**
+     * Listens for the app moving between the foreground and the background.
+     */
+    public interface Listener {
+        // Called when the first activity of the app is started
+        void onForeground();
+
+        // Called when the last started activity of the app is stopped
+        void onBackground();
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.WaterWise.data;
+
+import java.util.Objects;
+
+/**
+ * CacheFirstRead decides which results of a stale-while-revalidate read to deliver. The value
+ * is read from a local cache and from the server at the same time. The cached value is
+ * delivered as soon as it arrives, so it can be shown right away, and the server value is
+ * delivered only if it differs from it. A cached value arriving after the server's is dropped.
+ * The latency of both reads is kept for logging.
+ *
+ * Results must be passed on a single thread.
+ *
+ * @param <T> The type of the value read.
+ */
+public class CacheFirstRead<T> {
+    private final long startMillis;
+    private boolean cacheDelivered;
+    private T cachedValue;
+    private boolean serverDone;
+    private long cacheLatencyMillis = -1;
+    private long serverLatencyMillis = -1;
+
+    /**
+     * Starts a read.
+     *
+     * @param startMillis The time both reads were sent, on a monotonic clock.
+     */
+    public CacheFirstRead(long startMillis) {
+        this.startMillis = startMillis;
+    }
+
+    /**
+     * Records the result of the cache read.
+     *
+     * @param value     The cached value, or null on a cache miss.
+     * @param nowMillis The current time on the same clock as the start.
+     * @return True if the value should be delivered.
+     */
+    public boolean onCacheResult(T value, long nowMillis) {
+        cacheLatencyMillis = nowMillis - startMillis;
+        if (serverDone || value == null) {
+            return false;
+        }
+        cacheDelivered = true;
+        cachedValue = value;
+        return true;
+    }
+
+    /**
+     * Records the result of the server read.
+     *
+     * @param value     The value on the server, or null if it does not exist.
+     * @param nowMillis The current time on the same clock as the start.
+     * @return True if the value should be delivered, false if the delivered cached value is the same.
+     */
+    public boolean onServerResult(T value, long nowMillis) {
+        serverLatencyMillis = nowMillis - startMillis;
+        serverDone = true;
+        return !cacheDelivered || !Objects.equals(cachedValue, value);
+    }
+
+    /**
+     * Records a failed server read, for example while offline.
+     *
+     * @param nowMillis The current time on the same clock as the start.
+     * @return True if the failure should be delivered, false if a cached value was delivered.
+     */
+    public boolean onServerFailed(long nowMillis) {
+        serverLatencyMillis = nowMillis - startMillis;
+        serverDone = true;
+        return !cacheDelivered;
+    }
+
+    /**
+     * Gets whether the cached value was delivered.
+     *
+     * @return True if the first value shown came from the cache.
+     */
+    public boolean isServedFromCache() {
+        return cacheDelivered;
+    }
+
+    /**
+     * Gets how long the cache read took.
+     *
+     * @return The latency in milliseconds, or -1 if the cache read has not completed.
+     */
+    public long getCacheLatencyMillis() {
+        return cacheLatencyMillis;
+    }
+
+    /**
+     * Gets how long the server read took.
+     *
+     * @return The latency in milliseconds, or -1 if the server read has not completed.
+     */
+    public long getServerLatencyMillis() {
+        return serverLatencyMillis;
+    }
+
+    /**
+     * Describes the read for logging, e.g. "served from cache in 6 ms, server answered in 310 ms".
+     *
+     * @return The description.
+     */
+    public String describe() {
+        return (cacheDelivered ? "served from cache in " + cacheLatencyMillis + " ms"
+                : "cache missed in " + cacheLatencyMillis + " ms")
+                + ", server answered in " + serverLatencyMillis + " ms";
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.WaterWise.data;
+
+import com.example.WaterWise.history.DailyIntakeBuckets;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * DailyTotalsCache serves daily totals from three tiers:
+ * <ol>
+ *   <li>memory, holding the {@link #MAX_SEGMENTS} most recently used segments of
+ *       {@link #SEGMENT_DAYS} days, about a year of history;</li>
+ *   <li>disk, the {@link DailyTotalsStore}, read a whole segment at a time on a memory miss;</li>
+ *   <li>Firestore, synced only when the requested days are not all on disk yet.</li>
+ * </ol>
+ * Past days are final once synced, so their segments never expire. Today can still change on
+ * another device, so it is revalidated once its last sync is older than
+ * {@link #TODAY_TTL_MILLIS}; until the sync completes the stored total keeps being served.
+ * Hits, misses and evictions of each tier are counted to size the tiers against real usage.
+ *
+ * All methods are thread-safe, but reads are meant to run on the disk thread.
+ */
+public class DailyTotalsCache {
+    // Number of days in a segment, aligned on epoch days, so a segment is about a month
+    static final int SEGMENT_DAYS = 32;
+    // Number of segments kept in memory
+    static final int MAX_SEGMENTS = 12;
+    // Time after which today's total is synced again
+    static final long TODAY_TTL_MILLIS = 60 * 1000;
+
+    private final Disk disk;
+    // Segments by index, least recently used first
+    private final LinkedHashMap<Long, int[]> segments = new LinkedHashMap<Long, int[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, int[]> eldest) {
+            if (size() > MAX_SEGMENTS) {
+                evictions++;
+                return true;
+            }
+            return false;
+        }
+    };
+    private HistorySyncWatermark watermark = HistorySyncWatermark.decode(null);
+    // When today was last synced, or -1 if it was not synced yet
+    private long todaySyncedAt = -1;
+
+    private int memoryHits;
+    private int memoryMisses;
+    private int evictions;
+    private int networkMisses;
+    private int staleHits;
+
+    /**
+     * Creates an empty cache in front of the daily totals store.
+     *
+     * @param disk Reads daily totals from the store.
+     */
+    public DailyTotalsCache(Disk disk) {
+        this.disk = disk;
+    }
+
+    /**
+     * Gets the daily totals of an inclusive range of days from memory, reading the segments
+     * that are not in memory from disk.
+     *
+     * @param startEpochDay The first day of the range.
+     * @param endEpochDay   The last day of the range.
+     * @return The daily totals of the range.
+     */
+    public synchronized DailyIntakeBuckets get(long startEpochDay, long endEpochDay) {
+        int[] result = new int[(int) Math.max(0, endEpochDay - startEpochDay + 1)];
+        if (result.length == 0) {
+            return new DailyIntakeBuckets(startEpochDay, result);
+        }
+        for (long segment = segmentOf(startEpochDay); segment <= segmentOf(endEpochDay); segment++) {
+            int[] totals = loadSegment(segment);
+            long segmentStart = segment * SEGMENT_DAYS;
+            long from = Math.max(startEpochDay, segmentStart);
+            long to = Math.min(endEpochDay, segmentStart + SEGMENT_DAYS - 1);
+            System.arraycopy(totals, (int) (from - segmentStart), result, (int) (from - startEpochDay), (int) (to - from + 1));
+        }
+        return new DailyIntakeBuckets(startEpochDay, result);
+    }
+
+    /**
+     * Checks whether a range of days must be synced with Firestore: either some past day in it
+     * was never synced, or it includes today and today's last sync is older than
+     * {@link #TODAY_TTL_MILLIS}. The totals from {@link #get(long, long)} can be shown meanwhile.
+     *
+     * @param startEpochDay The first day of the range.
+     * @param endEpochDay   The last day of the range.
+     * @param todayEpochDay The epoch day of today.
+     * @param nowMillis     The current time on a monotonic clock, in milliseconds.
+     * @return True if the range should be synced.
+     */
+    public synchronized boolean needsSync(long startEpochDay, long endEpochDay, long todayEpochDay, long nowMillis) {
+        long lastPastDay = Math.min(endEpochDay, todayEpochDay - 1);
+        if (startEpochDay <= lastPastDay && !watermark.covers(startEpochDay, lastPastDay)) {
+            networkMisses++;
+            return true;
+        }
+        if (endEpochDay >= todayEpochDay && (todaySyncedAt < 0 || nowMillis - todaySyncedAt >= TODAY_TTL_MILLIS)) {
+            staleHits++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Updates the total of a day just written to the store, if its segment is in memory.
+     *
+     * @param epochDay The day that changed.
+     * @param total    The new total in milliliters.
+     */
+    public synchronized void put(long epochDay, int total) {
+        int[] totals = segments.get(segmentOf(epochDay));
+        if (totals != null) {
+            totals[(int) (epochDay - segmentOf(epochDay) * SEGMENT_DAYS)] = total;
+        }
+    }
+
+    /**
+     * Sets the watermark read from the local store at startup, before any sync.
+     *
+     * @param watermark The stored watermark.
+     */
+    public synchronized void setWatermark(HistorySyncWatermark watermark) {
+        this.watermark = watermark;
+    }
+
+    /**
+     * Drops the segments holding days whose stored total changed from memory, so they are read
+     * again from disk, without marking a sync as completed.
+     *
+     * @param changedDays The days whose stored total changed.
+     */
+    public synchronized void invalidate(Iterable<Long> changedDays) {
+        for (long epochDay : changedDays) {
+            segments.remove(segmentOf(epochDay));
+        }
+    }
+
+    /**
+     * Records a completed sync. Segments holding days whose stored total changed are dropped
+     * from memory, so they are read again from disk.
+     *
+     * @param watermark   The watermark after the sync.
+     * @param changedDays The days whose stored total changed.
+     * @param nowMillis   The current time on a monotonic clock, in milliseconds.
+     */
+    public synchronized void onSynced(HistorySyncWatermark watermark, Iterable<Long> changedDays, long nowMillis) {
+        this.watermark = watermark;
+        todaySyncedAt = nowMillis;
+        invalidate(changedDays);
+    }
+
+    /**
+     * Gets the counters of the cache for logging.
+     *
+     * @return A summary of the hits, misses and evictions of each tier.
+     */
+    public synchronized String getStats() {
+        return String.format(Locale.US, "memory %d hits / %d misses, %d evictions, %d network misses, %d stale hits",
+                memoryHits, memoryMisses, evictions, networkMisses, staleHits);
+    }
+
+    synchronized int getMemoryHits() {
+        return memoryHits;
+    }
+
+    synchronized int getMemoryMisses() {
+        return memoryMisses;
+    }
+
+    synchronized int getEvictions() {
+        return evictions;
+    }
+
+    synchronized int getNetworkMisses() {
+        return networkMisses;
+    }
+
+    synchronized int getStaleHits() {
+        return staleHits;
+    }
+
+    private int[] loadSegment(long segment) {
+        int[] totals = segments.get(segment);
+        if (totals != null) {
+            memoryHits++;
+            return totals;
+        }
+        memoryMisses++;
+        long segmentStart = segment * SEGMENT_DAYS;
+        DailyIntakeBuckets stored = disk.load(segmentStart, segmentStart + SEGMENT_DAYS - 1);
+        totals = new int[SEGMENT_DAYS];
+        for (int i = 0; i < SEGMENT_DAYS; i++) {
+            totals[i] = stored.getTotal(segmentStart + i);
+        }
+        segments.put(segment, totals);
+        return totals;
+    }
+
+    private static long segmentOf(long epochDay) {
+        return Math.floorDiv(epochDay, SEGMENT_DAYS);
+    }
+
+    /**
+     * Reads daily totals from the store on disk.
+     */
+    public interface Disk {
+        DailyIntakeBuckets load(long startEpochDay, long endEpochDay);
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.WaterWise.data;
+
+import com.example.WaterWise.history.DailyIntakeBuckets;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * DailyTotalsStore keeps the total water intake of every day in a memory-mapped file, as a
+ * contiguous array of ints indexed by the day's offset from the first stored day. Looking up
+ * or updating a day is a single array access, and reading a range of days is one bulk copy
+ * that is already in date order.
+ *
+ * The file is laid out as:
+ * <pre>
+ *   magic (4 bytes) | day count (4 bytes) | first epoch day (8 bytes) | totals (4 bytes per day)
+ * </pre>
+ * The store is a cache of the daily aggregates in Firestore, so a file with an unexpected
+ * header is discarded and refilled instead of being recovered. {@link #wasReset()} tells when
+ * that happened, so anything describing the lost totals can be discarded too.
+ */
+public class DailyTotalsStore implements Closeable {
+    private static final int MAGIC = 0x57574454;
+    private static final int HEADER_SIZE = 16;
+    private static final int OFFSET_DAY_COUNT = 4;
+    private static final int OFFSET_START_EPOCH_DAY = 8;
+    // The file grows by this many days at a time
+    private static final int GROWTH_DAYS = 366;
+    // Refuse ranges longer than a century, which can only come from a bad date
+    static final int MAX_DAYS = 36600;
+
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    // View of the totals after the header
+    private IntBuffer totals;
+    private int capacity;
+    private int dayCount;
+    private long startEpochDay;
+    // Whether the file was created or discarded when the store was opened
+    private boolean wasReset;
+
+    /**
+     * Opens the store backed by the given file, creating it if needed.
+     *
+     * @param file The file backing the store.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public DailyTotalsStore(File file) throws IOException {
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+        long fileSize = channel.size();
+        if (fileSize < HEADER_SIZE || (fileSize - HEADER_SIZE) % 4 != 0) {
+            reset();
+            return;
+        }
+        map((int) ((fileSize - HEADER_SIZE) / 4));
+        dayCount = mapped.getInt(OFFSET_DAY_COUNT);
+        startEpochDay = mapped.getLong(OFFSET_START_EPOCH_DAY);
+        if (mapped.getInt(0) != MAGIC || dayCount < 0 || dayCount > capacity) {
+            reset();
+        }
+    }
+
+    /**
+     * Gets whether the store started empty when it was opened, because its file was missing,
+     * truncated or had a bad header. Any totals stored before are gone.
+     *
+     * @return True if the store was created or reset when opened.
+     */
+    public boolean wasReset() {
+        return wasReset;
+    }
+
+    /**
+     * Gets the total intake of a single day.
+     *
+     * @param epochDay The day to look up.
+     * @return The total intake in milliliters, or 0 if nothing is stored for that day.
+     */
+    public synchronized int get(long epochDay) {
+        long index = epochDay - startEpochDay;
+        return index < 0 || index >= dayCount ? 0 : totals.get((int) index);
+    }
+
+    /**
+     * Sets the total intake of a single day, growing the stored range if needed.
+     *
+     * @param epochDay The day to update.
+     * @param total    The total intake in milliliters.
+     * @throws IOException If the file cannot be grown.
+     */
+    public synchronized void set(long epochDay, int total) throws IOException {
+        cover(epochDay, epochDay);
+        totals.put((int) (epochDay - startEpochDay), total);
+        mapped.force();
+    }
+
+    /**
+     * Stores daily totals fetched from Firestore. Days take the server value, except days with
+     * local records not synced yet, which keep the larger of the local and server totals.
+     *
+     * @param fetched      The daily totals fetched from Firestore.
+     * @param unsyncedDays The epoch days with local records not synced yet, including today.
+     * @return The epoch days whose stored total changed.
+     * @throws IOException If the file cannot be grown.
+     */
+    public synchronized List<Long> merge(DailyIntakeBuckets fetched, Set<Long> unsyncedDays) throws IOException {
+        List<Long> changed = new ArrayList<>();
+        if (fetched.size() == 0) {
+            return changed;
+        }
+        long fetchedStart = fetched.getStartEpochDay();
+        cover(fetchedStart, fetchedStart + fetched.size() - 1);
+        for (int i = 0; i < fetched.size(); i++) {
+            mergeDay(fetchedStart + i, fetched.getTotal(fetchedStart + i), unsyncedDays, changed);
+        }
+        mapped.force();
+        return changed;
+    }
+
+    /**
+     * Stores the totals of individual days fetched from Firestore, in the same way as
+     * {@link #merge(DailyIntakeBuckets, Set)}.
+     *
+     * @param fetched      The fetched totals, keyed by epoch day.
+     * @param unsyncedDays The epoch days with local records not synced yet, including today.
+     * @return The epoch days whose stored total changed.
+     * @throws IOException If the file cannot be grown.
+     */
+    public synchronized List<Long> merge(Map<Long, Integer> fetched, Set<Long> unsyncedDays) throws IOException {
+        List<Long> changed = new ArrayList<>();
+        if (fetched.isEmpty()) {
+            return changed;
+        }
+        cover(Collections.min(fetched.keySet()), Collections.max(fetched.keySet()));
+        for (Map.Entry<Long, Integer> day : fetched.entrySet()) {
+            mergeDay(day.getKey(), day.getValue(), unsyncedDays, changed);
+        }
+        mapped.force();
+        return changed;
+    }
+
+    /**
+     * Copies the totals of an inclusive range of days. Days outside the stored range are 0.
+     *
+     * @param fromEpochDay The first day of the range.
+     * @param toEpochDay   The last day of the range.
+     * @return Buckets holding the total of every day in the range.
+     */
+    public synchronized DailyIntakeBuckets load(long fromEpochDay, long toEpochDay) {
+        int[] result = new int[(int) Math.max(0, toEpochDay - fromEpochDay + 1)];
+        long from = Math.max(fromEpochDay, startEpochDay);
+        long to = Math.min(toEpochDay, startEpochDay + dayCount - 1);
+        if (from <= to) {
+            IntBuffer view = totals.duplicate();
+            view.position((int) (from - startEpochDay));
+            view.get(result, (int) (from - fromEpochDay), (int) (to - from + 1));
+        }
+        return new DailyIntakeBuckets(fromEpochDay, result);
+    }
+
+    /**
+     * Closes the underlying file.
+     *
+     * @throws IOException If the file cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        randomAccessFile.close();
+    }
+
+    private void mergeDay(long epochDay, int total, Set<Long> unsyncedDays, List<Long> changed) {
+        int index = (int) (epochDay - startEpochDay);
+        int stored = totals.get(index);
+        if (unsyncedDays.contains(epochDay)) {
+            total = Math.max(total, stored);
+        }
+        if (total != stored) {
+            totals.put(index, total);
+            changed.add(epochDay);
+        }
+    }
+
+    /**
+     * Grows the stored range so that it includes every day between the two epoch days. Days
+     * added to the range start at 0.
+     */
+    private void cover(long fromEpochDay, long toEpochDay) throws IOException {
+        if (dayCount == 0) {
+            startEpochDay = fromEpochDay;
+        }
+        long newStart = Math.min(startEpochDay, fromEpochDay);
+        long newEnd = Math.max(startEpochDay + dayCount - 1, toEpochDay);
+        if (newStart == startEpochDay && newEnd - newStart + 1 <= dayCount) {
+            return;
+        }
+        long newCount = newEnd - newStart + 1;
+        if (newCount > MAX_DAYS) {
+            throw new IllegalArgumentException("Daily totals range too long: " + newCount + " days");
+        }
+        int shift = (int) (startEpochDay - newStart);
+        int[] existing = null;
+        if (shift > 0 && dayCount > 0) {
+            // Moving the first day earlier shifts every stored total
+            existing = new int[dayCount];
+            totals.duplicate().get(existing);
+        }
+        if (newCount > capacity) {
+            int newCapacity = (int) ((newCount + GROWTH_DAYS - 1) / GROWTH_DAYS * GROWTH_DAYS);
+            randomAccessFile.setLength(HEADER_SIZE + newCapacity * 4L);
+            map(newCapacity);
+        }
+        if (existing != null) {
+            IntBuffer view = totals.duplicate();
+            view.put(new int[shift]);
+            view.put(existing);
+        }
+        startEpochDay = newStart;
+        dayCount = (int) newCount;
+        mapped.putLong(OFFSET_START_EPOCH_DAY, startEpochDay);
+        mapped.putInt(OFFSET_DAY_COUNT, dayCount);
+    }
+
+    /**
+     * Discards the stored totals and writes an empty header.
+     */
+    private void reset() throws IOException {
+        randomAccessFile.setLength(0);
+        randomAccessFile.setLength(HEADER_SIZE + GROWTH_DAYS * 4L);
+        map(GROWTH_DAYS);
+        mapped.putInt(0, MAGIC);
+        mapped.putInt(OFFSET_DAY_COUNT, 0);
+        mapped.putLong(OFFSET_START_EPOCH_DAY, 0);
+        mapped.force();
+        dayCount = 0;
+        startEpochDay = 0;
+        wasReset = true;
+    }
+
+    private void map(int newCapacity) throws IOException {
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + newCapacity * 4L);
+        mapped.position(HEADER_SIZE);
+        totals = mapped.slice().asIntBuffer();
+        mapped.position(0);
+        capacity = newCapacity;
+    }
+}
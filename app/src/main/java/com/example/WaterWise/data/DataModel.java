@@ -1,116 +1,53 @@
 package com.example.WaterWise.data;
 
-
 import android.app.Application;
-import android.content.Context;
-import android.content.SharedPreferences;
-import android.util.Log;
 
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.MutableLiveData;
 
-import com.example.WaterWise.history.HistoryRecord;
+import com.example.WaterWise.history.HistoryPager;
+import com.example.WaterWise.history.HistoryRowFormatter;
 import com.example.WaterWise.home.IntakeRecord;
-import com.google.firebase.auth.FirebaseAuth;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.example.WaterWise.utils.FutureScope;
 
-import java.lang.reflect.Type;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Date;
+import java.text.DateFormatSymbols;
 import java.util.List;
 import java.util.Locale;
 
 /**
- * DataModel serves as the ViewModel that provides data to the UI components and helps manage the application's data.
- * It integrates SharedPreferences for local data storage and Firestore for cloud synchronization, allowing for reactive data updates.
+ * DataModel serves as the ViewModel that provides data to the UI components of a screen.
+ * It is a thin view over the process-wide {@link WaterRepository}, so every screen observes the
+ * same in-memory data and creating a DataModel costs no disk or network round trips.
  */
 public class DataModel extends AndroidViewModel {
-    // Firebase Firestore helper for handling Firestore operations
-    private FirestoreHelper firestoreHelper;
-
-    // SharedPreferences keys for storing and retrieving user data locally
-    private static final String KEY_GOAL = "key_goal";
-    private static final String KEY_INTAKE = "key_intake";
-    private static final String KEY_RECORDS = "key_records";
-    private static final String KEY_NAME = "key_name";
-    private static final String KEY_WEIGHT = "key_weight";
-    private static final String KEY_GENDER = "key_gender";
-    private static final String KEY_SIGN_UP_DATE = "key_sign_up_date";
-
     // Default values for user properties
-    public static final int DEFAULT_GOAL = 2000;
-    public static final int DEFAULT_INTAKE = 0;
-    public static final int DEFAULT_WEIGHT = 40;
-    public static final String DEFAULT_NAME = "User";
-    public static final String DEFAULT_GENDER = "Female";
-    public static final String DEFAULT_SIGN_UP_DATE = "2024-01-01";
-    private static final String KEY_LAST_RESET_DATE = "key_last_reset_date";
+    public static final int DEFAULT_GOAL = WaterRepository.DEFAULT_GOAL;
+    public static final int DEFAULT_INTAKE = WaterRepository.DEFAULT_INTAKE;
+    public static final int DEFAULT_WEIGHT = WaterRepository.DEFAULT_WEIGHT;
+    public static final String DEFAULT_NAME = WaterRepository.DEFAULT_NAME;
+    public static final String DEFAULT_GENDER = WaterRepository.DEFAULT_GENDER;
+    public static final String DEFAULT_SIGN_UP_DATE = WaterRepository.DEFAULT_SIGN_UP_DATE;
 
-    // SharedPreferences for local data storage
-    private SharedPreferences sharedPreferences;
-    private Gson gson;
-
-    // LiveData fields for reactive UI updates
-    private MutableLiveData<Integer> goal = new MutableLiveData<>();
-    private MutableLiveData<Integer> intake = new MutableLiveData<>();
-    private MutableLiveData<String> name = new MutableLiveData<>();
-    private MutableLiveData<Integer> weight = new MutableLiveData<>();
-    private MutableLiveData<String> gender = new MutableLiveData<>();
-    private MutableLiveData<List<IntakeRecord>> records = new MutableLiveData<>(new ArrayList<>());
-    private MutableLiveData<List<HistoryRecord>> historyRecords = new MutableLiveData<>(new ArrayList<>());
-    private MutableLiveData<String> signUpDate = new MutableLiveData<>();
+    // The repository holding the signed-in user's data
+    private final WaterRepository repository;
+    // Pages of the history list, kept across configuration changes
+    private final HistoryPager historyPager;
+    // Firestore reads started for the screens of this model, cancelled when it is cleared
+    private final FutureScope historyScope = new FutureScope();
 
     /**
      * Constructor for the DataModel.
-     * Initializes data model, shared preferences, and Firestore helper.
+     * Attaches to the repository of the signed-in user, creating it on first use.
      *
      * @param application The application instance.
      */
     public DataModel(Application application) {
         super(application);
-        String sharedPrefsName = getSharedPrefsName();
-        sharedPreferences = application.getSharedPreferences(sharedPrefsName, Context.MODE_PRIVATE);
-        gson = new Gson();
-        firestoreHelper = new FirestoreHelper();
-        // Reset intake data if a new day starts
-        checkAndResetDataIfNeeded();
-        // Load data from shared preferences
-        loadAllData();
-        checkAndFetchSignUpDate();
-        // Start listening to Firestore for data updates
-        startListeningToFirestore();
-    }
-
-    /**
-     * Gets the name for shared preferences based on the user ID.
-     *
-     * @return The name for shared preferences.
-     */
-    private String getSharedPrefsName() {
-        String userId = FirebaseAuth.getInstance().getCurrentUser().getUid();
-        return "waterwise_prefs_" + userId;
-    }
-
-    /**
-     * Resets intake data if today is a new day based on the last reset date.
-     */
-    private void checkAndResetDataIfNeeded() {
-        String currentDate = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
-        String lastResetDate = sharedPreferences.getString(KEY_LAST_RESET_DATE, null);
-
-        if (lastResetDate == null || !lastResetDate.equals(currentDate)) {
-            // Reset daily intake and records for the new day
-            setIntake(0);
-            setRecords(new ArrayList<>());
-            sharedPreferences.edit().putString(KEY_LAST_RESET_DATE, currentDate).apply();
-            Log.d("Intake After RESET", getIntake().getValue() + "");
-        } else{
-            Log.d("DataModel", "No reset needed.");
-        }
+        repository = WaterRepository.getInstance(application);
+        // Rows are formatted with the locale of the screens that created the model
+        HistoryRowFormatter rowFormatter = new HistoryRowFormatter(DateFormatSymbols.getInstance(Locale.getDefault()));
+        historyPager = new HistoryPager((startEpochDay, endEpochDay, goal, callback) ->
+                repository.loadHistoryPage(startEpochDay, endEpochDay, goal, rowFormatter, callback));
     }
 
     /**
@@ -119,7 +56,7 @@ public class DataModel extends AndroidViewModel {
      *
      * @return MutableLiveData<Integer> representing the user's water intake goal in milliliters.
      */
-    public MutableLiveData<Integer> getGoal() { return goal; }
+    public MutableLiveData<Integer> getGoal() { return repository.getGoal(); }
 
     /**
      * Returns a MutableLiveData object that holds the user's current water intake.
@@ -127,7 +64,7 @@ public class DataModel extends AndroidViewModel {
      *
      * @return MutableLiveData<Integer> representing the user's current water intake in milliliters.
      */
-    public MutableLiveData<Integer> getIntake() { return intake; }
+    public MutableLiveData<Integer> getIntake() { return repository.getIntake(); }
 
     /**
      * Returns a MutableLiveData object that holds the user's name.
@@ -135,7 +72,7 @@ public class DataModel extends AndroidViewModel {
      *
      * @return MutableLiveData<String> representing the user's name.
      */
-    public MutableLiveData<String> getName() { return name; }
+    public MutableLiveData<String> getName() { return repository.getName(); }
 
     /**
      * Returns a MutableLiveData object that holds the user's weight.
@@ -143,7 +80,7 @@ public class DataModel extends AndroidViewModel {
      *
      * @return MutableLiveData<Integer> representing the user's weight (in kilograms).
      */
-    public MutableLiveData<Integer> getWeight() { return weight; }
+    public MutableLiveData<Integer> getWeight() { return repository.getWeight(); }
 
     /**
      * Returns a MutableLiveData object that holds the user's gender.
@@ -151,7 +88,7 @@ public class DataModel extends AndroidViewModel {
      *
      * @return MutableLiveData<String> representing the user's gender.
      */
-    public MutableLiveData<String> getGender() { return gender; }
+    public MutableLiveData<String> getGender() { return repository.getGender(); }
 
     /**
      * Returns a MutableLiveData object that holds a list of IntakeRecord objects.
@@ -160,286 +97,125 @@ public class DataModel extends AndroidViewModel {
      *
      * @return MutableLiveData<List<IntakeRecord>> representing the list of intake records.
      */
-    public MutableLiveData<List<IntakeRecord>> getRecords() { return records; }
+    public MutableLiveData<List<IntakeRecord>> getRecords() { return repository.getRecords(); }
 
     /**
-     * Returns a MutableLiveData object that holds a list of HistoryRecord objects.
-     * These records represent the user's historical water intake data (e.g., daily summaries).
-     * This value is observed to update the UI when the history records change.
+     * Returns the pager backing the history list of this screen. It loads the user's daily
+     * intake totals since sign-up a page at a time, most recent day first.
      *
-     * @return MutableLiveData<List<HistoryRecord>> representing the list of history records.
+     * @return The history pager.
      */
-    public MutableLiveData<List<HistoryRecord>> getHistoryRecords() { return historyRecords;}
+    public HistoryPager getHistoryPager() { return historyPager; }
 
     /**
-     * Returns a MutableLiveData object that holds the user's sign-up date.
-     * This value is observed to update the UI when the sign-up date changes.
+     * Returns a MutableLiveData object that is true until the local data has been loaded.
+     * The other LiveData fields hold their initial values while this is true.
      *
-     * @return MutableLiveData<String> representing the user's sign-up date.
+     * @return MutableLiveData<Boolean> representing whether the local data is still loading.
      */
-    public MutableLiveData<String> getSignUpDate() { return signUpDate; }
+    public MutableLiveData<Boolean> isLoading() { return repository.isLoading(); }
 
     /**
-     * Sets the user's name, updates shared preferences, and synchronizes with Firestore.
+     * Returns a MutableLiveData object that holds the user's sign-up date.
+     * This value is observed to update the UI when the sign-up date changes.
      *
-     * @param nameValue The new name of the user.
+     * @return MutableLiveData<String> representing the user's sign-up date.
      */
-    public void setName(String nameValue) {
-        name.setValue(nameValue);
-        saveToPreferences(KEY_NAME, nameValue);
-        firestoreHelper.saveUserData(nameValue, goal.getValue(), weight.getValue(), gender.getValue());
-    }
+    public MutableLiveData<String> getSignUpDate() { return repository.getSignUpDate(); }
 
     /**
-     * Sets the user's weight, updates shared preferences, and synchronizes with Firestore.
+     * Returns a MutableLiveData object that holds the number of intake records not yet synced
+     * with Firestore. This value is observed to show that records are waiting to be sent.
      *
-     * @param weightValue The new weight of the user.
+     * @return MutableLiveData<Integer> representing the number of pending records.
      */
-    public void setWeight(int weightValue) {
-        weight.setValue(weightValue);
-        saveToPreferences(KEY_WEIGHT, weightValue);
-        firestoreHelper.saveUserData(name.getValue(), goal.getValue(), weightValue, gender.getValue());
-    }
+    public MutableLiveData<Integer> getPendingSyncCount() { return repository.getPendingSyncCount(); }
 
     /**
-     * Sets the user's gender, updates shared preferences, and synchronizes with Firestore.
+     * Returns a MutableLiveData object that holds the number of intake records whose last sync
+     * attempt failed. This value is observed to show that records will be retried.
      *
-     * @param genderValue The new gender of the user.
+     * @return MutableLiveData<Integer> representing the number of failed records.
      */
-    public void setGender(String genderValue) {
-        gender.setValue(genderValue);
-        saveToPreferences(KEY_GENDER, genderValue);
-        firestoreHelper.saveUserData(name.getValue(), goal.getValue(), weight.getValue(), genderValue);
-    }
+    public MutableLiveData<Integer> getFailedSyncCount() { return repository.getFailedSyncCount(); }
 
     /**
-     * Sets the user's intake records, and updates shared preferences.
+     * Sets the user's name.
      *
-     * @param newRecords The new list of intake records.
+     * @param nameValue The new name of the user.
      */
-    public void setRecords(List<IntakeRecord> newRecords) {
-        records.setValue(newRecords);
-        saveToPreferences(KEY_RECORDS, gson.toJson(newRecords));
-    }
+    public void setName(String nameValue) { repository.setName(nameValue); }
 
     /**
-     * Sets the user's daily water intake goal, updates shared preferences, and synchronizes with Firestore.
+     * Sets the user's weight.
      *
-     * @param goalValue The new daily intake goal.
+     * @param weightValue The new weight of the user.
      */
-    public void setGoal(int goalValue) {
-        goal.setValue(goalValue);
-        saveToPreferences(KEY_GOAL, goalValue);
-        firestoreHelper.saveUserData(name.getValue(), goalValue, weight.getValue(), gender.getValue());
-    }
+    public void setWeight(int weightValue) { repository.setWeight(weightValue); }
 
     /**
-     * Sets the user's current water intake, and updates shared preferences.
+     * Sets the user's gender.
      *
-     * @param intakeValue The new intake value.
+     * @param genderValue The new gender of the user.
      */
-    public void setIntake(int intakeValue) {
-        intake.setValue(intakeValue);
-        saveToPreferences(KEY_INTAKE, intakeValue);
-    }
+    public void setGender(String genderValue) { repository.setGender(genderValue); }
 
     /**
-     * Adds a new water intake record, updates the LiveData list, and saves it to Firestore.
+     * Sets the user's intake records.
      *
-     * @param record The new intake record to be added.
+     * @param newRecords The new list of intake records.
      */
-    public void addRecord(IntakeRecord record) {
-        List<IntakeRecord> currentRecords = records.getValue();
-        if (currentRecords != null) {
-            currentRecords.add(record);
-            setRecords(currentRecords);
-        }
-        firestoreHelper.saveWaterIntakeRecord(record.getTime(),record.getDate(), record.getAmount());
-    }
+    public void setRecords(List<IntakeRecord> newRecords) { repository.setRecords(newRecords); }
 
     /**
-     * Sets the user's sign-up date and saves it to SharedPreferences.
+     * Sets the user's daily water intake goal.
      *
-     * @param signUpDateValue The sign-up date of the user.
+     * @param goalValue The new daily intake goal.
      */
-    public void setSignUpDate(String signUpDateValue) {
-        signUpDate.setValue(signUpDateValue);
-        saveToPreferences(KEY_SIGN_UP_DATE, signUpDateValue);
-        firestoreHelper.saveSignUpDate(signUpDateValue);
-    }
+    public void setGoal(int goalValue) { repository.setGoal(goalValue); }
 
     /**
-     * Checks if the sign-up date is available in LiveData or SharedPreferences.
-     * If not, it attempts to fetch the sign-up date from Firestore.
-     * The fetched sign-up date is then saved to both LiveData and SharedPreferences.
-     */
-    public void checkAndFetchSignUpDate() {
-        // Check if sign-up date is already available in LiveData or SharedPreferences
-        if (getSignUpDate().getValue() == null || getSignUpDate().getValue().isEmpty() ||
-                getSignUpDate().getValue().equals(DEFAULT_SIGN_UP_DATE)) {
-
-            // Sign-up date is not available, so we fetch it from Firestore
-            firestoreHelper.fetchSignUpDate(fetchedSignUpDateStr -> {
-                if (fetchedSignUpDateStr != null) {
-                    // If a valid sign-up date is fetched, save it to LiveData and SharedPreferences
-                    setSignUpDate(fetchedSignUpDateStr);
-                } else {
-                    // Log an error if fetching the sign-up date from Firestore failed
-                    Log.e("DataModel", "Failed to fetch sign-up date from Firestore.");
-                }
-            });
-        } else {
-            // Sign-up date is already available, so log this information
-            Log.d("DataModel", "Sign-up date is already available: " + getSignUpDate().getValue());
-        }
-    }
-
-
-    /**
-     * Loads all data from shared preferences.
+     * Adds a new water intake record.
+     *
+     * @param record The new intake record to be added.
      */
-    private void loadAllData() {
-        loadFromPreferences(goal, KEY_GOAL, DEFAULT_GOAL);
-        loadFromPreferences(intake, KEY_INTAKE, DEFAULT_INTAKE);
-        loadRecords();
-        loadFromPreferences(name, KEY_NAME, DEFAULT_NAME);
-        loadFromPreferences(weight, KEY_WEIGHT, DEFAULT_WEIGHT);
-        loadFromPreferences(gender, KEY_GENDER, DEFAULT_GENDER);
-        loadFromPreferences(signUpDate, KEY_SIGN_UP_DATE, DEFAULT_SIGN_UP_DATE);
-    }
+    public void addRecord(IntakeRecord record) { repository.addRecord(record); }
 
     /**
-     * Loads data from shared preferences into MutableLiveData.
+     * Sets the user's sign-up date.
      *
-     * @param liveData      The LiveData field to be set.
-     * @param key           The key in shared preferences.
-     * @param defaultValue  The default value if the key does not exist.
-     * @param <T>           The type of data to be loaded.
+     * @param signUpDateValue The sign-up date of the user.
      */
-    private <T> void loadFromPreferences(MutableLiveData<T> liveData, String key, T defaultValue) {
-        if (defaultValue instanceof Integer) {
-            liveData.setValue((T) Integer.valueOf(sharedPreferences.getInt(key, (Integer) defaultValue)));
-        } else if (defaultValue instanceof String) {
-            String value = sharedPreferences.getString(key, (String) defaultValue);
-            if (value != null && !value.isEmpty()) {
-                liveData.setValue((T) value);
-            } else {
-                liveData.setValue(defaultValue);
-            }
-        }
-    }
+    public void setSignUpDate(String signUpDateValue) { repository.setSignUpDate(signUpDateValue); }
 
     /**
-     * Loads the user's water intake records from shared preferences.
+     * Sets the range of {@link #getHistoryPager()} to the days since sign-up and loads the most
+     * recent page. Call it again when the sign-up date changes.
      */
-    private void loadRecords() {
-        String json = sharedPreferences.getString(KEY_RECORDS, null);
-        Type type = new TypeToken<List<IntakeRecord>>() {}.getType();
-        List<IntakeRecord> savedRecords = json != null ? gson.fromJson(json, type) : new ArrayList<>();
-        records.setValue(savedRecords);
-        for ( IntakeRecord i : records.getValue()) {
-            Log.d("r e c o r d s", i.getAmount()+"");
-        }
-    }
+    public void loadHistoryRecords() { repository.loadHistoryRecords(historyPager, historyScope); }
 
     /**
-     * Saves data to SharedPreferences.
+     * Loads the daily totals of the most recent days, up to today, from the stored history.
      *
-     * @param key   The key to be saved in SharedPreferences.
-     * @param value The value to be saved.
-     */
-    private void saveToPreferences(String key, Object value) {
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        if (value instanceof Integer) {
-            editor.putInt(key, (Integer) value);
-        } else if (value instanceof String) {
-            editor.putString(key, (String) value);
-        }
-        editor.apply();
-    }
-
-    /**
-     * Starts listening to Firestore for changes and updates the LiveData fields accordingly.
+     * @param days     The number of days, including today.
+     * @param callback The callback to handle the totals, on the main thread.
      */
-    private void startListeningToFirestore() {
-        firestoreHelper.fetchUserData(this, (goal, intake) -> {
-            setGoal(goal);
-            setIntake(intake);
-        });
-    }
-
-    public void loadHistoryRecords() {
-        String signUpDateStr = getSignUpDate().getValue();
-        if (signUpDateStr == null || signUpDateStr.isEmpty()) {
-            Log.d("DataModel", "Sign-up date is missing.");
-            historyRecords.setValue(new ArrayList<>()); // Handle empty sign-up date
-            return;
-        }
-        String currentDateStr = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
-
-        // Generate a list of dates from sign-up date to current date
-        List<String> allDates = getDatesBetween(signUpDateStr, currentDateStr);
-
-        // Fetch intake records for all dates
-        loadIntakeRecordsForDates(allDates);
+    public void loadRecentDailyTotals(int days, FirestoreHelper.DailyTotalsCallback callback) {
+        repository.loadRecentDailyTotals(days, callback);
     }
 
     /**
-     * Fetches intake records for a list of dates and updates LiveData.
-     *
-     * @param allDates The list of dates to fetch intake records for.
+     * Called by the activity once its first frame has been drawn, so the repository can start
+     * any network refresh that is due.
      */
-    private void loadIntakeRecordsForDates(List<String> allDates) {
-        firestoreHelper.fetchIntakeForDates(allDates, historyRecordsResult -> {
-            if (historyRecordsResult != null && !historyRecordsResult.isEmpty()) {
-                historyRecords.setValue(historyRecordsResult); // Update LiveData with the full history records
-            } else {
-                Log.d("DataModel", "No history records found.");
-                historyRecords.setValue(new ArrayList<>());
-            }
-        });
-    }
+    public void onFirstFrame() { repository.onFirstFrame(); }
 
     /**
-     * Returns a list of date strings between the specified start and end dates, inclusive.
-     * The dates are formatted as "yyyy-MM-dd".
-     *
-     * @param startDateStr The start date as a string in "yyyy-MM-dd" format.
-     * @param endDateStr   The end date as a string in "yyyy-MM-dd" format.
-     * @return A list of date strings between the start and end dates, or an empty list if the input is invalid or parsing fails.
+     * Cancels the history reads still running once the owning screen is destroyed.
      */
-    private List<String> getDatesBetween(String startDateStr, String endDateStr) {
-        List<String> dates = new ArrayList<>();
-        Calendar calendar = Calendar.getInstance();
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-        try {
-            // Validate input: check if either startDateStr or endDateStr is null or empty
-            if (startDateStr == null || startDateStr.isEmpty() || endDateStr == null || endDateStr.isEmpty()) {
-                Log.e("DataModel", "Invalid input: startDate or endDate is null or empty");
-                return dates; // Return empty list in case of invalid input
-            }
-            // Parse the start and end dates from strings
-            Date startDate = dateFormat.parse(startDateStr);
-            Date endDate = dateFormat.parse(endDateStr);
-
-            // Set the calendar to the start date
-            calendar.setTime(startDate);
-
-            // Loop through the dates from startDate to endDate, adding each to the list
-            while (!calendar.getTime().after(endDate)) {
-                dates.add(dateFormat.format(calendar.getTime())); // Add the date string in "yyyy-MM-dd" format
-                calendar.add(Calendar.DATE, 1); // Move to the next day
-            }
-
-        } catch (ParseException e) {
-            // Log the specific parse exception if the date format is invalid
-            Log.e("DataModel", "ParseException in getDatesBetween", e);
-        }catch (Exception e) {
-            // Catch any other unexpected exceptions and log them
-            Log.e("DataModel", "Unexpected error in getDatesBetween", e);
-        }
-
-        // Return the list of dates, which may be empty if an error occurred
-        return dates;
+    @Override
+    protected void onCleared() {
+        historyScope.cancel();
+        super.onCleared();
     }
-}
\ No newline at end of file
+}
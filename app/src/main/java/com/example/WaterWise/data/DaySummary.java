@@ -0,0 +1,116 @@
+package com.example.WaterWise.data;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DaySummary is the compacted part of a day's daily aggregate document: the total and count of
+ * the raw records folded into it and how much was drunk in each hour of the day. It is stored
+ * in the users/{uid}/daily/{date} document next to the running total and count, which keep
+ * counting every record of the day, compacted or not. A day is consistent when its running
+ * total and count equal the compacted ones plus those of the raw records still present.
+ */
+public class DaySummary {
+    static final int HOURS = 24;
+
+    // Field names on the daily aggregate document
+    static final String FIELD_COMPACTED_TOTAL = "compactedTotal";
+    static final String FIELD_COMPACTED_COUNT = "compactedCount";
+    static final String FIELD_HOURLY = "hourly";
+
+    private long compactedTotal;
+    private long compactedCount;
+    private final long[] hourly = new long[HOURS];
+
+    /**
+     * Reads the compacted part of a daily aggregate document.
+     *
+     * @param fields The fields of the document, or null if it does not exist.
+     * @return The summary, empty if the day was never compacted.
+     */
+    public static DaySummary fromFields(Map<String, Object> fields) {
+        DaySummary summary = new DaySummary();
+        if (fields == null) {
+            return summary;
+        }
+        summary.compactedTotal = asLong(fields.get(FIELD_COMPACTED_TOTAL));
+        summary.compactedCount = asLong(fields.get(FIELD_COMPACTED_COUNT));
+        Object hourly = fields.get(FIELD_HOURLY);
+        if (hourly instanceof List) {
+            List<?> values = (List<?>) hourly;
+            for (int hour = 0; hour < HOURS && hour < values.size(); hour++) {
+                summary.hourly[hour] = asLong(values.get(hour));
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Folds a raw record into the summary.
+     *
+     * @param timestamp The time of the record in milliseconds since the epoch.
+     * @param amount    The amount of water in milliliters.
+     */
+    public void add(long timestamp, int amount) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(timestamp);
+        hourly[calendar.get(Calendar.HOUR_OF_DAY)] += amount;
+        compactedTotal += amount;
+        compactedCount++;
+    }
+
+    /**
+     * Checks that the running total and count of the day match this summary, once every raw
+     * record of the day was folded into it. A mismatch means a record was written or removed
+     * since the raw records were read, or the aggregate was wrong to begin with.
+     *
+     * @param total The running total of the daily aggregate.
+     * @param count The running count of the daily aggregate.
+     * @return True if the raw records can be deleted.
+     */
+    public boolean matches(long total, long count) {
+        return total == compactedTotal && count == compactedCount;
+    }
+
+    /**
+     * Gets the fields to write on the daily aggregate document.
+     *
+     * @return The compacted total, count and hourly amounts.
+     */
+    public Map<String, Object> toFields() {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(FIELD_COMPACTED_TOTAL, compactedTotal);
+        fields.put(FIELD_COMPACTED_COUNT, compactedCount);
+        List<Long> hourlyList = new ArrayList<>(HOURS);
+        for (long amount : hourly) {
+            hourlyList.add(amount);
+        }
+        fields.put(FIELD_HOURLY, hourlyList);
+        return fields;
+    }
+
+    /**
+     * Gets the amount drunk in an hour of the day.
+     *
+     * @param hour The hour, from 0 to 23.
+     * @return The amount in milliliters.
+     */
+    public long getHourly(int hour) {
+        return hourly[hour];
+    }
+
+    public long getCompactedTotal() {
+        return compactedTotal;
+    }
+
+    public long getCompactedCount() {
+        return compactedCount;
+    }
+
+    private static long asLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+}
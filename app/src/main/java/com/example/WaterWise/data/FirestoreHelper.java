@@ -1,27 +1,93 @@
 package com.example.WaterWise.data;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
-import com.example.WaterWise.history.HistoryRecord;
+import com.example.WaterWise.history.DailyIntakeBuckets;
+import com.example.WaterWise.history.HistoryPager;
+import com.example.WaterWise.home.IntakeRecord;
+import com.example.WaterWise.utils.Futures;
+import com.example.WaterWise.utils.HistoryUtils;
+import com.example.WaterWise.utils.HomeUtils;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
 import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.firestore.AggregateField;
+import com.google.firebase.firestore.AggregateQuerySnapshot;
+import com.google.firebase.firestore.AggregateSource;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.Source;
+import com.google.firebase.firestore.WriteBatch;
 
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 /**
  * FirestoreHelper is a utility class that provides functions to interact with Firestore.
  * It helps save and retrieve user data including water intake records, user information, and history data.
  */
 public class FirestoreHelper {
+    // Maximum number of days covered by a single history range query
+    static final int HISTORY_WINDOW_DAYS = 180;
+    // Days of the first, newest history window: one page of the history list, so it shows after one small read
+    static final int FIRST_HISTORY_WINDOW_DAYS = HistoryPager.PAGE_DAYS;
+    // Attempts at reading a history window, and the wait before the second one, doubled after each failure
+    static final int HISTORY_WINDOW_ATTEMPTS = 3;
+    static final long HISTORY_RETRY_DELAY_MILLIS = 2000;
+    // Version of the users/{uid}/daily aggregates, stored on the user document once backfilled.
+    // Raw records are deleted once compacted, so a new version must keep the compacted totals.
+    static final int DAILY_AGGREGATES_VERSION = 1;
+    // Firestore rejects batched writes with more than 500 operations
+    private static final int MAX_BATCH_WRITES = 500;
+    // Number of raw records read per page while backfilling the daily aggregates
+    private static final int BACKFILL_PAGE_SIZE = 500;
+    // Number of per-day aggregations sent at once while backfilling the daily aggregates
+    private static final int MAX_CONCURRENT_AGGREGATIONS = 10;
+    // Largest number of values Firestore accepts in a single whereIn filter
+    private static final int MAX_IN_QUERY_VALUES = 30;
+    // Time after which a read is given up and its future fails with a TimeoutException
+    static final long READ_TIMEOUT_MILLIS = 30000;
 
     private final FirebaseFirestore db;
     private final String userId;
+    // Document reads in flight or just completed, shared by every caller reading the same document
+    private final SingleFlight<DocumentSnapshot> documentReads = new SingleFlight<>(SystemClock::elapsedRealtime);
+    // Read timeouts and retries run on the main thread, like the Firestore completion listeners
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Futures.Scheduler mainScheduler = new Futures.Scheduler() {
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            mainHandler.postDelayed(task, delayMillis);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            mainHandler.removeCallbacks(task);
+        }
+    };
 
     /**
      * Constructor for FirestoreHelper.
@@ -33,203 +99,780 @@ public class FirestoreHelper {
     }
 
     /**
-     * Saves user data such as name, goal, weight, and gender to Firestore.
+     * Writes the given profile fields to the user document, leaving every other field as it is.
+     * Used by {@link ProfileWriter} to send one merged update per burst of edits.
      *
-     * @param name  The user's name.
-     * @param goal  The user's daily water intake goal.
-     * @param weight The user's weight.
-     * @param gender The user's gender.
+     * @param fields   The profile fields to write, keyed by field name.
+     * @param callback The callback to indicate whether the write was committed.
      */
-    public void saveUserData(String name, int goal, int weight, String gender) {
-        Map<String, Object> userData = new HashMap<>();
-        userData.put("name", name);
-        userData.put("goal", goal);
-        userData.put("weight", weight);
-        userData.put("gender", gender);
-        db.collection("users").document(userId).update(userData)
-                .addOnSuccessListener(
-                        aVoid -> Log.d("Firestore", "User data successfully written!")
-                ).addOnFailureListener(
-                        e -> Log.w("Firestore", "Error writing document", e)
-                );
+    public void updateUserFields(Map<String, Object> fields, SaveCallback callback) {
+        DocumentReference userRef = db.collection("users").document(userId);
+        invalidateDocument(userRef);
+        userRef.set(fields, SetOptions.merge())
+                .addOnSuccessListener(aVoid -> {
+                    Log.d("Firestore", "User fields " + fields.keySet() + " successfully written!");
+                    callback.onSaved(true);
+                })
+                .addOnFailureListener(e -> {
+                    Log.w("Firestore", "Error writing document", e);
+                    callback.onSaved(false);
+                });
     }
 
     /**
-     * Saves a water intake record to Firestore.
+     * Saves intake records to Firestore in a single batch. Each record is written under its
+     * client-generated ID, so resending a record overwrites the same document. The increments of
+     * the users/{uid}/daily/{date} aggregates are summed per day and committed in the same batch,
+     * so the daily totals always match the sum of the raw records. The same increment raises this
+     * device's slot of the {@link IntakeCounter} in the aggregate's devices map. Each aggregate
+     * written also gets the server time in its updatedAt field, so other devices can fetch only
+     * the days that changed since they last synced.
      *
-     * @param time  The time of water intake.
-     * @param date  The date of water intake.
-     * @param amount The amount of water consumed.
+     * @param recordsById The records to save, keyed by their document ID.
+     * @param deviceId    The installation ID of this device, the key of its counter slot.
+     * @param callback    The callback to indicate whether the batch was committed.
      */
-    public void saveWaterIntakeRecord(String time, String date, int amount) {
-        Map<String, Object> recordData = Map.of(
-                "time", time,
-                "date", date,
-                "amount", amount
-        );
-        db.collection("users").document(userId).collection("records").add(recordData)
-                .addOnSuccessListener(documentReference ->
-                        Log.d("Firestore", "Record successfully added to sub-collection!")
-                )
-                .addOnFailureListener(e ->
-                        Log.w("Firestore", "Error adding record", e)
-                );
+    public void saveWaterIntakeRecords(Map<String, IntakeLog.Entry> recordsById, String deviceId, SaveCallback callback) {
+        DocumentReference userRef = db.collection("users").document(userId);
+        WriteBatch batch = db.batch();
+        Map<String, int[]> dailyIncrements = new HashMap<>();
+        for (Map.Entry<String, IntakeLog.Entry> entry : recordsById.entrySet()) {
+            IntakeRecord record = HomeUtils.createIntakeRecord(entry.getValue().timestamp, entry.getValue().amount);
+            Map<String, Object> recordData = new HashMap<>();
+            recordData.put("time", record.getTime());
+            recordData.put("date", record.getDate());
+            recordData.put("amount", record.getAmount());
+            recordData.put("timestamp", record.getTimestamp());
+            batch.set(userRef.collection("records").document(entry.getKey()), recordData);
+
+            int[] increment = dailyIncrements.get(record.getDate());
+            if (increment == null) {
+                increment = new int[2];
+                dailyIncrements.put(record.getDate(), increment);
+            }
+            increment[0] += record.getAmount();
+            increment[1]++;
+        }
+        for (Map.Entry<String, int[]> day : dailyIncrements.entrySet()) {
+            Map<String, Object> aggregateData = new HashMap<>();
+            aggregateData.put("date", day.getKey());
+            aggregateData.put("total", FieldValue.increment(day.getValue()[0]));
+            aggregateData.put("count", FieldValue.increment(day.getValue()[1]));
+            aggregateData.put(IntakeCounter.FIELD_DEVICES,
+                    Collections.singletonMap(deviceId, FieldValue.increment(day.getValue()[0])));
+            aggregateData.put("updatedAt", FieldValue.serverTimestamp());
+            batch.set(userRef.collection("daily").document(day.getKey()), aggregateData, SetOptions.merge());
+        }
+        batch.commit()
+                .addOnSuccessListener(aVoid -> {
+                    Log.d("Firestore", recordsById.size() + " records successfully added to sub-collection!");
+                    callback.onSaved(true);
+                })
+                .addOnFailureListener(e -> {
+                    Log.w("Firestore", "Error adding records", e);
+                    callback.onSaved(false);
+                });
     }
 
     /**
-     * Fetches the total water intake for a specific date from Firestore.
+     * Looks up which of the given intake record IDs already exist. Writes still queued by
+     * Firestore on this device count as existing, so they are not sent a second time.
      *
-     * @param date     The date for which the intake should be fetched.
-     * @param callback The callback to handle the retrieved intake value.
+     * @param recordIds The record document IDs to look up.
+     * @param callback  The callback to handle the existing IDs, or null if the lookup failed.
      */
-    public void fetchDailyIntake( String date, intakeCallback callback) {
-        db.collection("users").document(userId).collection("records")
-                .whereEqualTo("date", date)
-                .get()
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful()) {
-                        int totalIntake = 0;
-                        for (DocumentSnapshot document : task.getResult()) {
-                            int intake = document.getLong("amount").intValue();
-                            totalIntake += intake;
-                        }
-                        callback.onIntakeLoaded(totalIntake);  // Return total intake
-                    } else {
-                        callback.onIntakeLoaded(0);  // Default to 0 if query fails
-                    }
-                });
+    public void fetchExistingRecordIds(List<String> recordIds, IntakeOutbox.ExistingRecordsCallback callback) {
+        CollectionReference recordsRef = db.collection("users").document(userId).collection("records");
+        List<CompletableFuture<QuerySnapshot>> lookups = new ArrayList<>();
+        for (int i = 0; i < recordIds.size(); i += MAX_IN_QUERY_VALUES) {
+            List<String> chunk = recordIds.subList(i, Math.min(recordIds.size(), i + MAX_IN_QUERY_VALUES));
+            lookups.add(toFuture(recordsRef.whereIn(FieldPath.documentId(), new ArrayList<>(chunk)).get()));
+        }
+        Futures.allAsList(lookups).whenComplete((snapshots, e) -> {
+            if (e != null) {
+                Log.w("FirestoreHelper", "Failed to look up intake records", e);
+                callback.onExistingLoaded(null);
+                return;
+            }
+            Set<String> existingIds = new HashSet<>();
+            for (QuerySnapshot snapshot : snapshots) {
+                for (DocumentSnapshot document : snapshot.getDocuments()) {
+                    existingIds.add(document.getId());
+                }
+            }
+            callback.onExistingLoaded(existingIds);
+        });
     }
 
     /**
-     * Fetches user data from Firestore, including name, goal, weight, gender, and daily intake.
-     * Updates the DataModel with the fetched data.
-     *
-     * @param dataModel The DataModel instance to update with the fetched data.
-     * @param callback  The callback to indicate the completion of data loading.
-     */
-    public void fetchUserData( DataModel dataModel, FirestoreHelperCallback callback) {
-        db.collection("users").document(userId).get().addOnCompleteListener(task -> {
-            String currentDate = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
-            if (task.isSuccessful() && task.getResult() != null) {
-                DocumentSnapshot document = task.getResult();
-                if (document.exists()) {
-                    Long goalLong = document.getLong("goal");
-                    String nameStr = document.getString("name");
-                    Long weightLong = document.getLong("weight");
-                    String genderStr = document.getString("gender");
-                    int goal = (goalLong != null) ? goalLong.intValue() : dataModel.DEFAULT_GOAL;
-                    int weight = (goalLong != null) ? weightLong.intValue() : dataModel.DEFAULT_WEIGHT;
-                    String name = (nameStr != null && !nameStr.isEmpty()) ? nameStr : DataModel.DEFAULT_NAME;
-                    String gender = (genderStr != null && !genderStr.isEmpty()) ? genderStr : DataModel.DEFAULT_GENDER;
-
-                    fetchDailyIntake( currentDate, totalIntake -> {
-                        dataModel.setGoal(goal);
-                        dataModel.setIntake(totalIntake);
-                        Log.d("!!!!! INTAKE UPDATE", totalIntake + "");
-                        dataModel.setName(name);
-                        dataModel.setWeight(weight);
-                        dataModel.setGender(gender);
-                        callback.onDataLoaded(goal, totalIntake);
-                    });
-                } else {
-                    // Handle the case where the document does not exist
-                    Log.e("FirestoreHelper", "User document does not exist.");
-                    callback.onDataLoaded(dataModel.DEFAULT_GOAL, dataModel.DEFAULT_INTAKE);
-                }
+     * Reads a document from the local Firestore cache and from the server at the same time, as
+     * described in {@link CacheFirstRead}: the cached value is passed as soon as it arrives and
+     * the server value only if it differs. If the server cannot be reached and nothing was
+     * cached, null is passed. The latency of both reads is logged.
+     *
+     * @param document The document to read.
+     * @param reader   Extracts the value from the document.
+     * @param callback The callback to handle the value, once or twice.
+     */
+    private <T> void readCacheFirst(DocumentReference document, DocumentReader<T> reader, CacheFirstCallback<T> callback) {
+        CacheFirstRead<T> read = new CacheFirstRead<>(SystemClock.elapsedRealtime());
+        getDocument(document, Source.SERVER, snapshot -> {
+            long nowMillis = SystemClock.elapsedRealtime();
+            T value = null;
+            boolean deliver;
+            if (snapshot != null) {
+                value = reader.read(snapshot);
+                deliver = read.onServerResult(value, nowMillis);
+            } else {
+                deliver = read.onServerFailed(nowMillis);
+            }
+            Log.d("FirestoreHelper", document.getPath() + " " + read.describe() + "; " + documentReads.getStats());
+            if (deliver) {
+                callback.onValueLoaded(value, false);
+            }
+        });
+        getDocument(document, Source.CACHE, cached -> {
+            T value = cached != null && cached.exists() ? reader.read(cached) : null;
+            if (read.onCacheResult(value, SystemClock.elapsedRealtime())) {
+                callback.onValueLoaded(value, true);
+            }
+        });
+    }
+
+    /**
+     * Reads a document through {@link #documentReads}, so concurrent reads of the same document
+     * from the same source share one request, and reads just after it share its result. A
+     * default read is also served by a recent server result.
+     *
+     * @param document The document to read.
+     * @param source   Where to read the document from.
+     * @param callback The callback to handle the snapshot, or null if the read failed.
+     */
+    private void getDocument(DocumentReference document, Source source, SingleFlight.Callback<DocumentSnapshot> callback) {
+        if (source == Source.DEFAULT) {
+            DocumentSnapshot recent = documentReads.peek(readKey(document, Source.SERVER));
+            if (recent != null) {
+                callback.onResult(recent);
+                return;
+            }
+        }
+        documentReads.get(readKey(document, source), done -> document.get(source).addOnCompleteListener(task -> {
+            if (!task.isSuccessful() && source != Source.CACHE) {
+                Log.w("FirestoreHelper", "Read of " + document.getPath() + " failed", task.getException());
+            }
+            done.onResult(task.isSuccessful() ? task.getResult() : null);
+        }), callback);
+    }
+
+    /**
+     * Reads a document through {@link #getDocument} as a future, which fails if the read did.
+     *
+     * @param document The document to read.
+     * @param source   Where to read it from.
+     * @return The future of the snapshot.
+     */
+    private CompletableFuture<DocumentSnapshot> getDocumentAsync(DocumentReference document, Source source) {
+        CompletableFuture<DocumentSnapshot> future = new CompletableFuture<>();
+        getDocument(document, source, snapshot -> {
+            if (snapshot != null) {
+                future.complete(snapshot);
             } else {
-                    Log.e("FirestoreHelper", "Task was not successful or result is null.");
-                    callback.onDataLoaded(dataModel.DEFAULT_GOAL, dataModel.DEFAULT_INTAKE);
+                future.completeExceptionally(new IllegalStateException("Could not read " + document.getPath()));
             }
         });
+        return Futures.withTimeout(future, READ_TIMEOUT_MILLIS, mainScheduler);
     }
 
     /**
-     * Fetches the total water intake records for a list of dates and returns the records using a callback.
+     * Adapts a Firestore task to a future that completes on the main thread, or fails after
+     * {@link #READ_TIMEOUT_MILLIS}. Cancelling the future does not stop the task, but nothing
+     * waiting for the future runs.
      *
-     * @param allDates The list of dates for which intake records should be fetched.
-     * @param callback The callback to handle the retrieved list of HistoryRecords.
+     * @param task The task.
+     * @return The future of the task's result.
      */
-    public void fetchIntakeForDates( List<String> allDates, HistoryIntakeCallback callback) {
-        List<HistoryRecord> historyIntakeList = new ArrayList<>();
+    private <T> CompletableFuture<T> toFuture(Task<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        task.addOnCompleteListener(done -> {
+            if (done.isSuccessful()) {
+                future.complete(done.getResult());
+            } else {
+                future.completeExceptionally(done.getException() != null ? done.getException()
+                        : new IllegalStateException("Firestore task failed"));
+            }
+        });
+        return Futures.withTimeout(future, READ_TIMEOUT_MILLIS, mainScheduler);
+    }
 
-        for (String date : allDates) {
-            db.collection("users").document(userId).collection("records")
-                    .whereEqualTo("date", date)
-                    .get()
-                    .addOnCompleteListener(task -> {
-                        int totalIntake = 0;
-                        if (task.isSuccessful()) {
-                            for (DocumentSnapshot document : task.getResult()) {
-                                Long intakeLong = document.getLong("amount");
-                                int intake = intakeLong != null ? intakeLong.intValue() : 0;
-                                totalIntake += intake;
+    /**
+     * Drops the shared results of a document after writing it.
+     *
+     * @param document The document written.
+     */
+    private void invalidateDocument(DocumentReference document) {
+        for (Source source : Source.values()) {
+            documentReads.invalidate(readKey(document, source));
+        }
+    }
+
+    private static String readKey(DocumentReference document, Source source) {
+        return document.getPath() + "@" + source.name();
+    }
+
+    /**
+     * Listens to the user document and passes the profile fields present in it on every change.
+     * Snapshots that only echo this device's own pending writes are skipped, so the caller can
+     * hydrate the fields without writing anything back. The first snapshot usually comes from
+     * the local Firestore cache, followed by the server's.
+     *
+     * @param callback The callback to handle the profile fields.
+     * @return The registration to remove the listener with.
+     */
+    public ListenerRegistration listenToUserData(UserDataCallback callback) {
+        return db.collection("users").document(userId).addSnapshotListener((document, e) -> {
+            if (e != null || document == null) {
+                Log.e("FirestoreHelper", "Listening to the user document failed.", e);
+                return;
+            }
+            if (!document.exists()) {
+                Log.e("FirestoreHelper", "User document does not exist.");
+                return;
+            }
+            if (document.getMetadata().hasPendingWrites()) {
+                return;
+            }
+            if (!document.getMetadata().isFromCache()) {
+                // Shared with reads of the user document, such as the sign-up date
+                documentReads.put(readKey(document.getReference(), Source.SERVER), document);
+            }
+            Map<String, Object> profile = new HashMap<>();
+            Long goalLong = document.getLong("goal");
+            String nameStr = document.getString("name");
+            Long weightLong = document.getLong("weight");
+            String genderStr = document.getString("gender");
+            if (goalLong != null) {
+                profile.put("goal", goalLong.intValue());
+            }
+            if (weightLong != null) {
+                profile.put("weight", weightLong.intValue());
+            }
+            if (nameStr != null && !nameStr.isEmpty()) {
+                profile.put("name", nameStr);
+            }
+            if (genderStr != null && !genderStr.isEmpty()) {
+                profile.put("gender", genderStr);
+            }
+            callback.onUserDataLoaded(profile, document.getMetadata().isFromCache());
+        });
+    }
+
+    /**
+     * Listens to the intake records of a date and passes only the records that changed since the
+     * previous snapshot. The first snapshot passes every record of the date as added.
+     *
+     * @param date     The date of the records, formatted as yyyy-MM-dd.
+     * @param callback The callback to handle the changed records.
+     * @return The registration to remove the listener with.
+     */
+    public ListenerRegistration listenToRecordsForDate(String date, RecordChangesCallback callback) {
+        SimpleDateFormat legacyFormat = new SimpleDateFormat("yyyy-MM-dd hh:mm a", Locale.getDefault());
+        return db.collection("users").document(userId).collection("records")
+                .whereEqualTo("date", date)
+                .addSnapshotListener((snapshot, e) -> {
+                    if (e != null || snapshot == null) {
+                        Log.e("FirestoreHelper", "Listening to the records of " + date + " failed.", e);
+                        return;
+                    }
+                    for (DocumentChange change : snapshot.getDocumentChanges()) {
+                        DocumentSnapshot document = change.getDocument();
+                        Long amountLong = document.getLong("amount");
+                        String time = document.getString("time");
+                        if (amountLong == null || time == null) {
+                            continue;
+                        }
+                        // Records written by earlier versions carry no timestamp
+                        Long timestampLong = document.getLong("timestamp");
+                        boolean legacy = timestampLong == null;
+                        long timestamp;
+                        if (!legacy) {
+                            timestamp = timestampLong;
+                        } else {
+                            try {
+                                timestamp = legacyFormat.parse(date + " " + time).getTime();
+                            } catch (ParseException ex) {
+                                continue;
                             }
                         }
-                        historyIntakeList.add(new HistoryRecord(date, totalIntake));
-                        if (historyIntakeList.size() == allDates.size()) {
-                            callback.onIntakeLoaded(historyIntakeList);
+                        int type;
+                        switch (change.getType()) {
+                            case ADDED:
+                                type = TodayRecords.ADDED;
+                                break;
+                            case MODIFIED:
+                                type = TodayRecords.MODIFIED;
+                                break;
+                            default:
+                                type = TodayRecords.REMOVED;
+                                break;
+                        }
+                        IntakeRecord record = new IntakeRecord(timestamp, time, date, amountLong.intValue());
+                        callback.onRecordChanged(type, document.getId(), record, legacy);
+                    }
+                    callback.onChangesApplied(snapshot.getMetadata().isFromCache());
+                });
+    }
+
+    /**
+     * Listens to the daily aggregate of a date and passes its {@link IntakeCounter} on every
+     * snapshot, including those from the local cache and those of this device's pending writes.
+     * Counters only grow, so merging a stale one changes nothing.
+     *
+     * @param date     The date of the aggregate, formatted as yyyy-MM-dd.
+     * @param callback The callback to handle the counter.
+     * @return The registration to remove the listener with.
+     */
+    public ListenerRegistration listenToDailyCounter(String date, DailyCounterCallback callback) {
+        return db.collection("users").document(userId).collection("daily").document(date)
+                .addSnapshotListener((document, e) -> {
+                    if (e != null || document == null) {
+                        Log.e("FirestoreHelper", "Listening to the aggregate of " + date + " failed.", e);
+                        return;
+                    }
+                    callback.onCounterChanged(IntakeCounter.fromFields(document.getData()), document.getMetadata().isFromCache());
+                });
+    }
+
+    /**
+     * Reads the {@link IntakeCounter} of a date's daily aggregate from the server once.
+     *
+     * @param date The date of the aggregate, formatted as yyyy-MM-dd.
+     * @return The future of the counter.
+     */
+    public CompletableFuture<IntakeCounter> fetchDailyCounterAsync(String date) {
+        return getDocumentAsync(db.collection("users").document(userId).collection("daily").document(date), Source.SERVER)
+                .thenApply(document -> IntakeCounter.fromFields(document.getData()));
+    }
+
+    /**
+     * Adapter of {@link #fetchDailyCounterAsync} for callers using a callback.
+     *
+     * @param date     The date of the aggregate, formatted as yyyy-MM-dd.
+     * @param callback The callback to handle the counter, which is null if the read failed.
+     */
+    public void fetchDailyCounter(String date, DailyCounterCallback callback) {
+        fetchDailyCounterAsync(date).whenComplete((counter, e) -> callback.onCounterChanged(counter, false));
+    }
+
+    /**
+     * Fetches the total water intake for every day between two dates using ordered range queries
+     * over the daily aggregates instead of one query per day. The range is split into windows,
+     * newest first: the first covers {@link #FIRST_HISTORY_WINDOW_DAYS} days and the others at
+     * most {@link #HISTORY_WINDOW_DAYS} days. The windows are read in parallel and each one
+     * completes on its own, so the newest days can be shown while older windows are still
+     * loading. A failed window is read again up to {@link #HISTORY_WINDOW_ATTEMPTS} times before
+     * its future fails, without holding back the other windows. Days without an aggregate
+     * document have a total of 0.
+     *
+     * @param startEpochDay The first day of the range (inclusive).
+     * @param endEpochDay   The last day of the range (inclusive).
+     * @return The futures of the daily totals of each window, newest window first.
+     */
+    public List<CompletableFuture<DailyIntakeBuckets>> fetchIntakeWindowsAsync(long startEpochDay, long endEpochDay) {
+        List<CompletableFuture<DailyIntakeBuckets>> windows = new ArrayList<>();
+        for (long[] range : HistoryUtils.splitIntoWindows(startEpochDay, endEpochDay,
+                FIRST_HISTORY_WINDOW_DAYS, HISTORY_WINDOW_DAYS)) {
+            windows.add(Futures.retry(() -> fetchIntakeWindowAsync(range[0], range[1]),
+                    HISTORY_WINDOW_ATTEMPTS, HISTORY_RETRY_DELAY_MILLIS, mainScheduler));
+        }
+        return windows;
+    }
+
+    /**
+     * Reads the daily aggregates of a single window with one range query.
+     *
+     * @param startEpochDay The first day of the window (inclusive).
+     * @param endEpochDay   The last day of the window (inclusive).
+     * @return The future of the daily totals of the window.
+     */
+    private CompletableFuture<DailyIntakeBuckets> fetchIntakeWindowAsync(long startEpochDay, long endEpochDay) {
+        return toFuture(db.collection("users").document(userId).collection("daily")
+                .whereGreaterThanOrEqualTo("date", HistoryUtils.formatEpochDay(startEpochDay))
+                .whereLessThanOrEqualTo("date", HistoryUtils.formatEpochDay(endEpochDay))
+                .orderBy("date")
+                .get())
+                .thenApply(snapshot -> {
+                    DailyIntakeBuckets buckets = new DailyIntakeBuckets(startEpochDay, endEpochDay);
+                    for (DocumentSnapshot document : snapshot) {
+                        Long totalLong = document.getLong("total");
+                        buckets.add(document.getString("date"), totalLong != null ? totalLong.intValue() : 0);
+                    }
+                    return buckets;
+                });
+    }
+
+    /**
+     * Fetches the daily aggregates written after a point in server time, such as records synced
+     * late by a device that was offline. Only changed days are read, so a device that synced
+     * recently reads a handful of documents at most.
+     *
+     * @param sinceMillis The server time of the latest change already seen, in milliseconds since
+     *                    the epoch, or 0 to fetch every aggregate with an update time.
+     * @return The future of the changed totals.
+     */
+    public CompletableFuture<UpdatedTotals> fetchDailyTotalsUpdatedSinceAsync(long sinceMillis) {
+        return toFuture(db.collection("users").document(userId).collection("daily")
+                .whereGreaterThan("updatedAt", new Timestamp(new Date(sinceMillis)))
+                .orderBy("updatedAt")
+                .get())
+                .thenApply(snapshot -> {
+                    Map<Long, Integer> totals = new HashMap<>();
+                    long latestMillis = sinceMillis;
+                    for (DocumentSnapshot document : snapshot) {
+                        String date = document.getString("date");
+                        Long totalLong = document.getLong("total");
+                        Timestamp updatedAt = document.getTimestamp("updatedAt");
+                        if (date == null || updatedAt == null) {
+                            continue;
+                        }
+                        try {
+                            totals.put(HistoryUtils.toEpochDay(date), totalLong != null ? totalLong.intValue() : 0);
+                        } catch (IllegalArgumentException e) {
+                            continue;
+                        }
+                        latestMillis = Math.max(latestMillis, updatedAt.toDate().getTime());
+                    }
+                    return new UpdatedTotals(totals, latestMillis);
+                });
+    }
+
+    /**
+     * Fetches the server time of the latest daily aggregate update, with a query reading a
+     * single document. A first sync reads it before the history, so the next sync fetches only
+     * the aggregates updated after that point instead of every aggregate.
+     *
+     * @return The future of no totals and the latest update time, 0 if no aggregate has one.
+     */
+    public CompletableFuture<UpdatedTotals> fetchLatestDailyUpdateAsync() {
+        return toFuture(db.collection("users").document(userId).collection("daily")
+                .orderBy("updatedAt", Query.Direction.DESCENDING)
+                .limit(1)
+                .get())
+                .thenApply(snapshot -> {
+                    long latestMillis = 0;
+                    for (DocumentSnapshot document : snapshot) {
+                        Timestamp updatedAt = document.getTimestamp("updatedAt");
+                        if (updatedAt != null) {
+                            latestMillis = updatedAt.toDate().getTime();
+                        }
+                    }
+                    return new UpdatedTotals(Collections.emptyMap(), latestMillis);
+                });
+    }
+
+    /**
+     * Builds the users/{uid}/daily aggregates from the existing raw records. This is a one-time
+     * migration for accounts created before aggregates existed. The records are first counted
+     * with a server-side aggregation. If there are more records than days in the history, each
+     * day is summed on the server with {@link #sumRecordsOfDate}, so the cost is constant per
+     * day however many sips were logged. Otherwise, or if the aggregation is unavailable (for
+     * example offline), the raw records are read page by page and summed here. The per-date
+     * totals are written with batched sets, then the user document is marked with
+     * {@link #DAILY_AGGREGATES_VERSION} so later runs return immediately. The sets overwrite the
+     * totals with absolute values and keep the device slots, so an increment committed between
+     * the read of the records and the sets is lost: callers must hold this device's record
+     * writes while it runs. Running it again is only harmless under the same condition.
+     *
+     * @param startDate The first date of the history in "yyyy-MM-dd" format.
+     * @param endDate   The last date of the history in "yyyy-MM-dd" format.
+     * @param callback  The callback to indicate whether the aggregates are ready.
+     */
+    public void backfillDailyAggregates(String startDate, String endDate, BackfillCallback callback) {
+        getDocument(db.collection("users").document(userId), Source.DEFAULT, document -> {
+            if (document == null) {
+                Log.w("FirestoreHelper", "Could not read user document before backfill");
+                callback.onBackfillComplete(false);
+                return;
+            }
+            Long version = document.getLong("dailyAggregatesVersion");
+            if (version != null && version >= DAILY_AGGREGATES_VERSION) {
+                callback.onBackfillComplete(true);
+                return;
+            }
+            List<String> dates = new ArrayList<>();
+            for (long day = HistoryUtils.toEpochDay(startDate); day <= HistoryUtils.toEpochDay(endDate); day++) {
+                dates.add(HistoryUtils.formatEpochDay(day));
+            }
+            db.collection("users").document(userId).collection("records").count()
+                    .get(AggregateSource.SERVER)
+                    .addOnCompleteListener(task -> {
+                        if (task.isSuccessful() && task.getResult() != null && task.getResult().getCount() > dates.size()) {
+                            backfillDays(dates, task.getResult().getCount(), callback);
+                        } else {
+                            // Fewer records than days, or no aggregation available: reading them is cheaper
+                            backfillRecordsPage(null, new TreeMap<>(), callback);
                         }
                     });
+        });
+    }
+
+    /**
+     * Sums the records of every date with server-side aggregations,
+     * {@link #MAX_CONCURRENT_AGGREGATIONS} dates at a time, then writes the aggregates. If an
+     * aggregation fails, or some records are dated outside the history, the backfill falls back
+     * to reading the raw records.
+     *
+     * @param dates       The dates of the history in "yyyy-MM-dd" format.
+     * @param recordCount The number of records of the user.
+     * @param callback    The callback to indicate whether the aggregates are ready.
+     */
+    private void backfillDays(List<String> dates, long recordCount, BackfillCallback callback) {
+        Futures.mapBounded(dates, MAX_CONCURRENT_AGGREGATIONS, date -> toFuture(sumRecordsOfDate(date)))
+                .whenComplete((sums, e) -> {
+                    if (e != null) {
+                        Log.w("FirestoreHelper", "Aggregation failed, reading records instead", e);
+                        backfillRecordsPage(null, new TreeMap<>(), callback);
+                        return;
+                    }
+                    Map<String, int[]> totalsByDate = new TreeMap<>();
+                    long summedCount = 0;
+                    for (int i = 0; i < sums.size(); i++) {
+                        Long total = sums.get(i).getLong(AggregateField.sum("amount"));
+                        long count = sums.get(i).getCount();
+                        if (count > 0) {
+                            totalsByDate.put(dates.get(i), new int[]{total != null ? total.intValue() : 0, (int) count});
+                            summedCount += count;
+                        }
+                    }
+                    if (summedCount < recordCount) {
+                        Log.w("FirestoreHelper", (recordCount - summedCount) + " records are outside the history, reading records instead");
+                        backfillRecordsPage(null, new TreeMap<>(), callback);
+                        return;
+                    }
+                    writeDailyAggregates(totalsByDate, callback);
+                });
+    }
+
+    /**
+     * Sums the amounts and counts the records of a date on the server, so only the two numbers
+     * are downloaded whatever the number of records.
+     *
+     * @param date The date in "yyyy-MM-dd" format.
+     * @return The task of the aggregation.
+     */
+    private Task<AggregateQuerySnapshot> sumRecordsOfDate(String date) {
+        return db.collection("users").document(userId).collection("records")
+                .whereEqualTo("date", date)
+                .aggregate(AggregateField.sum("amount"), AggregateField.count())
+                .get(AggregateSource.SERVER);
+    }
+
+    /**
+     * Reads one page of raw records, adds them to the per-date totals and continues with the
+     * next page, or writes the aggregates once the last page has been read.
+     *
+     * @param lastDocument The last document of the previous page, or null for the first page.
+     * @param totalsByDate The {total, count} pairs accumulated so far, keyed by date.
+     * @param callback     The callback to indicate whether the aggregates are ready.
+     */
+    private void backfillRecordsPage(DocumentSnapshot lastDocument, Map<String, int[]> totalsByDate,
+                                     BackfillCallback callback) {
+        Query query = db.collection("users").document(userId).collection("records")
+                .orderBy("date")
+                .limit(BACKFILL_PAGE_SIZE);
+        if (lastDocument != null) {
+            query = query.startAfter(lastDocument);
         }
+        query.get().addOnCompleteListener(task -> {
+            if (!task.isSuccessful() || task.getResult() == null) {
+                Log.w("FirestoreHelper", "Error reading records for backfill", task.getException());
+                callback.onBackfillComplete(false);
+                return;
+            }
+            QuerySnapshot page = task.getResult();
+            for (DocumentSnapshot document : page) {
+                String date = document.getString("date");
+                Long amountLong = document.getLong("amount");
+                if (date == null) {
+                    continue;
+                }
+                int[] totals = totalsByDate.get(date);
+                if (totals == null) {
+                    totals = new int[2];
+                    totalsByDate.put(date, totals);
+                }
+                totals[0] += amountLong != null ? amountLong.intValue() : 0;
+                totals[1]++;
+            }
+            if (page.size() == BACKFILL_PAGE_SIZE) {
+                backfillRecordsPage(page.getDocuments().get(page.size() - 1), totalsByDate, callback);
+            } else {
+                writeDailyAggregates(totalsByDate, callback);
+            }
+        });
     }
 
+    /**
+     * Writes the per-date totals as daily aggregate documents in batches and marks the user
+     * document as backfilled once every batch has been committed.
+     *
+     * @param totalsByDate The {total, count} pairs keyed by date.
+     * @param callback     The callback to indicate whether the aggregates are ready.
+     */
+    private void writeDailyAggregates(Map<String, int[]> totalsByDate, BackfillCallback callback) {
+        DocumentReference userRef = db.collection("users").document(userId);
+        List<Task<Void>> commits = new ArrayList<>();
+        WriteBatch batch = db.batch();
+        int operations = 0;
+        for (Map.Entry<String, int[]> entry : totalsByDate.entrySet()) {
+            Map<String, Object> aggregateData = new HashMap<>();
+            aggregateData.put("date", entry.getKey());
+            aggregateData.put("total", entry.getValue()[0]);
+            aggregateData.put("count", entry.getValue()[1]);
+            aggregateData.put("updatedAt", FieldValue.serverTimestamp());
+            // Merged, so the device slots written by other devices meanwhile are kept
+            batch.set(userRef.collection("daily").document(entry.getKey()), aggregateData, SetOptions.merge());
+            if (++operations == MAX_BATCH_WRITES) {
+                commits.add(batch.commit());
+                batch = db.batch();
+                operations = 0;
+            }
+        }
+        if (operations > 0) {
+            commits.add(batch.commit());
+        }
+        Tasks.whenAll(commits)
+                .continueWithTask(task -> {
+                    if (!task.isSuccessful()) {
+                        return task;
+                    }
+                    invalidateDocument(userRef);
+                    return userRef.update("dailyAggregatesVersion", DAILY_AGGREGATES_VERSION);
+                })
+                .addOnCompleteListener(task -> {
+                    if (task.isSuccessful()) {
+                        Log.d("Firestore", "Daily aggregates backfilled for " + totalsByDate.size() + " days");
+                    } else {
+                        Log.w("Firestore", "Error backfilling daily aggregates", task.getException());
+                    }
+                    callback.onBackfillComplete(task.isSuccessful());
+                });
+    }
 
     /**
-     * Saves the sign-up date for the current user in Firestore.
+     * Saves the sign-up date for the current user in Firestore. It is merged into the user
+     * document, so the profile fields and the daily aggregates version stored there are kept.
      *
      * @param signUpDate The sign-up date to be saved in Firestore.
      */
     public void saveSignUpDate(String signUpDate) {
-        FirebaseFirestore db = FirebaseFirestore.getInstance();
         Map<String, Object> userData = new HashMap<>();
         userData.put("signUpDate", signUpDate);
 
-        db.collection("users").document(userId).set(userData)
+        DocumentReference userRef = db.collection("users").document(userId);
+        invalidateDocument(userRef);
+        userRef.set(userData, SetOptions.merge())
                 .addOnSuccessListener(aVoid -> Log.d("Firestore", "Sign-up date successfully written!"))
                 .addOnFailureListener(e -> Log.w("Firestore", "Error writing sign-up date", e));
     }
 
     /**
-     * Fetches the user's sign-up date from Firestore.
+     * Fetches the user's sign-up date from Firestore. The date in the local Firestore cache is
+     * passed first, then the server's if it differs.
      *
      * @param callback The callback to handle the retrieved sign-up date.
      */
     public void fetchSignUpDate(FirestoreHelper.SignUpDateCallback callback) {
-        db.collection("users").document(userId).get().addOnCompleteListener(task -> {
-            if (task.isSuccessful() && task.getResult() != null) {
-                String signUpDateStr = task.getResult().getString("signUpDate");
-                callback.onSignUpDateFetched(signUpDateStr); // Pass the signUpDateStr to the callback
-            } else {
-                callback.onSignUpDateFetched(null); // Pass null in case of error
-            }
-        });
+        readCacheFirst(db.collection("users").document(userId),
+                document -> document.getString("signUpDate"), callback::onSignUpDateFetched);
     }
 
     /**
-     * Callback interface to handle sign-up date retrieval.
+     * The daily totals that changed since a point in server time, with the server time of the
+     * latest change among them.
+     */
+    public static class UpdatedTotals {
+        private final Map<Long, Integer> totals;
+        private final long latestMillis;
+
+        UpdatedTotals(Map<Long, Integer> totals, long latestMillis) {
+            this.totals = totals;
+            this.latestMillis = latestMillis;
+        }
+
+        public Map<Long, Integer> getTotals() {
+            return totals;
+        }
+
+        public long getLatestMillis() {
+            return latestMillis;
+        }
+    }
+
+    /**
+     * Callback interface to handle sign-up date retrieval. The date is null if it could not be
+     * read.
      */
     public interface SignUpDateCallback {
-        void onSignUpDateFetched(String signUpDateStr);
+        void onSignUpDateFetched(String signUpDateStr, boolean fromCache);
+    }
+
+    /**
+     * Callback interface to handle retrieval of daily intake totals over a range of days.
+     */
+    public interface DailyTotalsCallback {
+        void onDailyTotalsLoaded(DailyIntakeBuckets dailyTotals);
+    }
+
+    /**
+     * Callback interface to handle the retrieval of user data. The profile holds the fields
+     * found in the user document.
+     */
+    public interface UserDataCallback {
+        void onUserDataLoaded(Map<String, Object> profile, boolean fromCache);
+    }
+
+    /**
+     * Callback interface to handle changes of intake records. Each changed record of a snapshot
+     * is passed to onRecordChanged, followed by a single call to onChangesApplied.
+     */
+    public interface RecordChangesCallback {
+        void onRecordChanged(int type, String id, IntakeRecord record, boolean legacy);
+
+        void onChangesApplied(boolean fromCache);
+    }
+
+    /**
+     * Callback interface to handle the intake counter of a daily aggregate.
+     */
+    public interface DailyCounterCallback {
+        void onCounterChanged(IntakeCounter counter, boolean fromCache);
+    }
+
+    /**
+     * Callback interface to handle the completion of a write.
+     */
+    public interface SaveCallback {
+        void onSaved(boolean success);
     }
 
     /**
-     * Callback interface to handle retrieval of historical intake data.
+     * Callback interface to handle the completion of the daily aggregates backfill.
      */
-    public interface HistoryIntakeCallback {
-        void onIntakeLoaded(List<HistoryRecord> historyIntakeList);
+    public interface BackfillCallback {
+        void onBackfillComplete(boolean success);
     }
 
     /**
-     * Callback interface to handle the retrieval of user data.
+     * Extracts a value from a document read by {@link #readCacheFirst}.
      */
-    public interface FirestoreHelperCallback {
-        void onDataLoaded(int goal, int intake);
+    private interface DocumentReader<T> {
+        T read(DocumentSnapshot document);
     }
 
     /**
-     * Callback interface to handle the retrieval of daily intake data.
+     * Callback interface to handle a value read by {@link #readCacheFirst}.
      */
-    public interface intakeCallback {
-        void onIntakeLoaded(int totalIntake);
+    private interface CacheFirstCallback<T> {
+        void onValueLoaded(T value, boolean fromCache);
     }
 }
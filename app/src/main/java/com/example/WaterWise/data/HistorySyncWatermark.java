@@ -0,0 +1,142 @@
+package com.example.WaterWise.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * HistorySyncWatermark records how much of the history is already stored locally, so a sync
+ * only fetches what may have changed since. Totals of past days are final once every device
+ * has synced, so the watermark holds:
+ * <ul>
+ *   <li>the range of days fetched in full, which never includes today, and</li>
+ *   <li>the server time of the latest daily aggregate update seen, so days edited late, such as
+ *       records synced by a device that was offline, are fetched by update time instead of by
+ *       date.</li>
+ * </ul>
+ * It is stored as a single metadata value, "firstDay,lastDay,lastUpdateMillis".
+ */
+public class HistorySyncWatermark {
+    private boolean synced;
+    private long syncedFromEpochDay;
+    private long syncedThroughEpochDay;
+    private long lastUpdateMillis;
+
+    /**
+     * Reads a watermark from its stored value.
+     *
+     * @param value The stored value, or null if the history was never synced.
+     * @return The watermark, empty if the value is missing or malformed.
+     */
+    public static HistorySyncWatermark decode(String value) {
+        HistorySyncWatermark watermark = new HistorySyncWatermark();
+        if (value == null) {
+            return watermark;
+        }
+        String[] parts = value.split(",");
+        if (parts.length != 3) {
+            return watermark;
+        }
+        try {
+            watermark.syncedFromEpochDay = Long.parseLong(parts[0]);
+            watermark.syncedThroughEpochDay = Long.parseLong(parts[1]);
+            watermark.lastUpdateMillis = Long.parseLong(parts[2]);
+            watermark.synced = true;
+        } catch (NumberFormatException e) {
+            return new HistorySyncWatermark();
+        }
+        return watermark;
+    }
+
+    /**
+     * Reads the watermark of the totals held by a store. The watermark only describes days that
+     * are stored, so it is empty if the store lost its totals when it was opened, for example
+     * when a backup restored the metadata but not the totals file.
+     *
+     * @param value  The stored value, or null if the history was never synced.
+     * @param totals The store holding the synced totals.
+     * @return The watermark, empty if the value is missing or malformed or the store was reset.
+     */
+    public static HistorySyncWatermark decode(String value, DailyTotalsStore totals) {
+        return totals.wasReset() ? new HistorySyncWatermark() : decode(value);
+    }
+
+    /**
+     * Gets the value to store.
+     *
+     * @return The encoded watermark, or null if the history was never synced.
+     */
+    public String encode() {
+        return synced ? syncedFromEpochDay + "," + syncedThroughEpochDay + "," + lastUpdateMillis : null;
+    }
+
+    /**
+     * Gets whether a sync has completed, so changes can be fetched by update time.
+     *
+     * @return True if the history was synced before.
+     */
+    public boolean isSynced() {
+        return synced;
+    }
+
+    /**
+     * Gets the server time of the latest daily aggregate update seen.
+     *
+     * @return The time in milliseconds since the epoch, 0 if none was seen.
+     */
+    public long getLastUpdateMillis() {
+        return lastUpdateMillis;
+    }
+
+    /**
+     * Checks whether every day of a range was fetched by a previous sync.
+     *
+     * @param startEpochDay The first day of the range.
+     * @param endEpochDay   The last day of the range.
+     * @return True if the range is within the synced days.
+     */
+    public boolean covers(long startEpochDay, long endEpochDay) {
+        return synced && startEpochDay >= syncedFromEpochDay && endEpochDay <= syncedThroughEpochDay;
+    }
+
+    /**
+     * Gets the ranges of days that must be fetched by date: the days after the last synced day
+     * up to today, and any days before the first synced day, for example after the sign-up date
+     * moved earlier. Without a watermark, this is the whole history.
+     *
+     * @param startEpochDay The first day of the history.
+     * @param todayEpochDay The epoch day of today.
+     * @return The inclusive {first, last} ranges, oldest first.
+     */
+    public List<long[]> rangesToFetch(long startEpochDay, long todayEpochDay) {
+        List<long[]> ranges = new ArrayList<>();
+        if (!synced) {
+            if (startEpochDay <= todayEpochDay) {
+                ranges.add(new long[]{startEpochDay, todayEpochDay});
+            }
+            return ranges;
+        }
+        if (startEpochDay < syncedFromEpochDay) {
+            ranges.add(new long[]{startEpochDay, Math.min(syncedFromEpochDay - 1, todayEpochDay)});
+        }
+        long from = Math.max(startEpochDay, syncedThroughEpochDay + 1);
+        if (from <= todayEpochDay) {
+            ranges.add(new long[]{from, todayEpochDay});
+        }
+        return ranges;
+    }
+
+    /**
+     * Advances the watermark after a sync stored every day from the start of the history to
+     * today. Today stays outside the synced range, since it can still change.
+     *
+     * @param startEpochDay    The first day of the history.
+     * @param todayEpochDay    The epoch day of today.
+     * @param lastUpdateMillis The server time of the latest update seen by the sync.
+     */
+    public void advance(long startEpochDay, long todayEpochDay, long lastUpdateMillis) {
+        syncedFromEpochDay = synced ? Math.min(syncedFromEpochDay, startEpochDay) : startEpochDay;
+        syncedThroughEpochDay = synced ? Math.max(syncedThroughEpochDay, todayEpochDay - 1) : todayEpochDay - 1;
+        this.lastUpdateMillis = Math.max(this.lastUpdateMillis, lastUpdateMillis);
+        synced = true;
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.WaterWise.data;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * IntakeCounter is a day's water intake as a grow-only counter: one slot per installation,
+ * holding the total of the records logged there. Each installation only ever raises its own
+ * slot, and two counters merge by keeping the larger value of each slot. The merge is
+ * commutative, associative and idempotent, so devices that log offline and exchange counters
+ * in any order, any number of times, end with the same total, and a stale copy can never lower
+ * it.
+ *
+ * In Firestore, the slots are the devices map of the users/{uid}/daily/{date} aggregate, raised
+ * with increments in the batch that writes the records. Records written by versions without
+ * slots are only counted by the aggregate's total, so the difference is kept in the
+ * {@link #UNATTRIBUTED} slot.
+ */
+public class IntakeCounter {
+    // Slot of the intake counted by the aggregate total but by no device slot
+    static final String UNATTRIBUTED = "";
+    // Field of the daily aggregate holding the slots
+    static final String FIELD_DEVICES = "devices";
+
+    private final Map<String, Long> slots = new TreeMap<>();
+
+    /**
+     * Reads the counter of a daily aggregate document.
+     *
+     * @param fields The fields of the document, or null if it does not exist.
+     * @return The counter, empty if nothing was logged that day.
+     */
+    public static IntakeCounter fromFields(Map<String, Object> fields) {
+        IntakeCounter counter = new IntakeCounter();
+        if (fields == null) {
+            return counter;
+        }
+        Object devices = fields.get(FIELD_DEVICES);
+        if (devices instanceof Map) {
+            for (Map.Entry<?, ?> slot : ((Map<?, ?>) devices).entrySet()) {
+                if (slot.getValue() instanceof Number) {
+                    counter.raise(String.valueOf(slot.getKey()), ((Number) slot.getValue()).longValue());
+                }
+            }
+        }
+        Object total = fields.get("total");
+        if (total instanceof Number) {
+            counter.raise(UNATTRIBUTED, ((Number) total).longValue() - counter.total());
+        }
+        return counter;
+    }
+
+    /**
+     * Decodes a counter written by {@link #encode()}.
+     *
+     * @param encoded The encoded counter, or null.
+     * @return The counter, empty if the value is null or malformed.
+     */
+    public static IntakeCounter decode(String encoded) {
+        IntakeCounter counter = new IntakeCounter();
+        if (encoded == null || encoded.isEmpty()) {
+            return counter;
+        }
+        try {
+            for (String slot : encoded.split(";")) {
+                int separator = slot.lastIndexOf('=');
+                counter.raise(slot.substring(0, separator), Long.parseLong(slot.substring(separator + 1)));
+            }
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            return new IntakeCounter();
+        }
+        return counter;
+    }
+
+    /**
+     * Encodes the counter as "device=amount" pairs separated by semicolons.
+     *
+     * @return The encoded counter.
+     */
+    public String encode() {
+        StringBuilder encoded = new StringBuilder();
+        for (Map.Entry<String, Long> slot : slots.entrySet()) {
+            if (encoded.length() > 0) {
+                encoded.append(';');
+            }
+            encoded.append(slot.getKey()).append('=').append(slot.getValue());
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * Adds intake logged on a device to its slot.
+     *
+     * @param device The installation ID of the device.
+     * @param amount The amount in milliliters, not negative.
+     */
+    public void add(String device, long amount) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("A grow-only counter cannot decrease: " + amount);
+        }
+        slots.put(device, get(device) + amount);
+    }
+
+    /**
+     * Raises the slot of a device to the given value, if it is lower.
+     *
+     * @param device The installation ID of the device.
+     * @param value  The value of the slot.
+     * @return True if the slot changed.
+     */
+    public boolean raise(String device, long value) {
+        if (value <= get(device)) {
+            return false;
+        }
+        slots.put(device, value);
+        return true;
+    }
+
+    /**
+     * Merges another counter into this one, keeping the larger value of each slot.
+     *
+     * @param other The other counter.
+     * @return True if this counter changed.
+     */
+    public boolean merge(IntakeCounter other) {
+        boolean changed = false;
+        for (Map.Entry<String, Long> slot : other.slots.entrySet()) {
+            changed |= raise(slot.getKey(), slot.getValue());
+        }
+        return changed;
+    }
+
+    /**
+     * Gets the slot of a device.
+     *
+     * @param device The installation ID of the device.
+     * @return The intake logged on the device in milliliters, 0 if none.
+     */
+    public long get(String device) {
+        Long value = slots.get(device);
+        return value != null ? value : 0;
+    }
+
+    /**
+     * Gets the total intake of the day.
+     *
+     * @return The sum of every slot in milliliters.
+     */
+    public long total() {
+        long total = 0;
+        for (long value : slots.values()) {
+            total += value;
+        }
+        return total;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof IntakeCounter && slots.equals(((IntakeCounter) o).slots);
+    }
+
+    @Override
+    public int hashCode() {
+        return slots.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
@@ -0,0 +1,327 @@
+package com.example.WaterWise.data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * IntakeLog is an append-only local log of water intake records stored as fixed-width binary
+ * entries. Adding a record is a single 20 byte append, and loading is a sequential scan.
+ *
+ * Each entry is laid out as:
+ * <pre>
+ *   timestamp (8 bytes) | amount (4 bytes) | sync state (1 byte) | sequence (1 byte) | reserved (2 bytes) | CRC32 (4 bytes)
+ * </pre>
+ * The sequence numbers entries appended in the same millisecond, 0 for the first one, so two
+ * sips logged at once are still told apart by their timestamp and sequence. The checksum covers
+ * the first 16 bytes. When the log is opened, a partial entry at the end of
+ * the file or an entry whose checksum does not match (a write torn by process death) is
+ * truncated together with everything after it.
+ */
+public class IntakeLog implements Closeable {
+    // Size of a single entry in bytes
+    static final int ENTRY_SIZE = 20;
+    // Number of bytes covered by the checksum
+    private static final int PAYLOAD_SIZE = 16;
+    // Largest sequence number an entry can have
+    private static final int MAX_SEQUENCE = 255;
+    // Number of entries read at once while scanning the log
+    private static final int ENTRIES_PER_READ = 256;
+
+    // Sync states of an entry
+    public static final byte STATE_PENDING = 0;
+    public static final byte STATE_SYNCED = 1;
+    // Handed to Firestore in a batch whose outcome is not known yet
+    public static final byte STATE_SENT = 2;
+
+    private final File file;
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    // Reused buffer for writing a single entry
+    private final ByteBuffer entryBuffer = ByteBuffer.allocate(ENTRY_SIZE);
+    private final CRC32 crc = new CRC32();
+    // Number of valid entries in the log
+    private long entryCount;
+    // Timestamp and sequence of the last entry, to number entries appended in the same millisecond
+    private long lastTimestamp = Long.MIN_VALUE;
+    private int lastSequence;
+
+    /**
+     * Opens the log stored in the given file, creating it if needed, and truncates any torn
+     * entry left at the end by an interrupted write.
+     *
+     * @param file The file backing the log.
+     * @throws IOException If the file cannot be opened or recovered.
+     */
+    public IntakeLog(File file) throws IOException {
+        this.file = file;
+        open();
+    }
+
+    /**
+     * Appends an entry to the end of the log and forces it to storage.
+     *
+     * @param timestamp The time of the intake in milliseconds since the epoch.
+     * @param amount    The amount of water in milliliters.
+     * @param syncState The sync state of the entry.
+     * @return The index of the new entry.
+     * @throws IOException If the entry cannot be written.
+     */
+    public synchronized long append(long timestamp, int amount, byte syncState) throws IOException {
+        int sequence = timestamp == lastTimestamp ? lastSequence + 1 : 0;
+        if (sequence > MAX_SEQUENCE) {
+            throw new IOException("Too many entries at " + timestamp);
+        }
+        long index = entryCount;
+        writeEntry(index, timestamp, amount, syncState, sequence);
+        // Only the file content needs to be durable, not its metadata
+        channel.force(false);
+        entryCount++;
+        lastTimestamp = timestamp;
+        lastSequence = sequence;
+        return index;
+    }
+
+    /**
+     * Updates the sync state of an existing entry in place. Since compaction moves entries, the
+     * entry is identified by its index and checked against its timestamp and sequence; if it
+     * moved, it is looked up by timestamp and sequence instead.
+     *
+     * @param index     The index of the entry when it was appended.
+     * @param timestamp The timestamp of the entry.
+     * @param sequence  The sequence of the entry among those with the same timestamp.
+     * @param syncState The new sync state.
+     * @return True if the entry was found and updated.
+     * @throws IOException If the entry cannot be read or written.
+     */
+    public synchronized boolean setSyncState(long index, long timestamp, int sequence, byte syncState) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(ENTRY_SIZE);
+        if (index < 0 || index >= entryCount || readEntry(buffer, index) != timestamp
+                || (buffer.get(13) & 0xFF) != sequence) {
+            index = -1;
+            for (Entry entry : readAll()) {
+                if (entry.timestamp == timestamp && entry.sequence == sequence) {
+                    index = entry.index;
+                    readEntry(buffer, index);
+                    break;
+                }
+            }
+            if (index < 0) {
+                return false;
+            }
+        }
+        writeEntry(index, timestamp, buffer.getInt(8), syncState, sequence);
+        channel.force(false);
+        return true;
+    }
+
+    /**
+     * Reads every entry with a timestamp at or after the given time, in the order they were added.
+     *
+     * @param sinceTimestamp The earliest timestamp to include, in milliseconds since the epoch.
+     * @return The matching entries.
+     * @throws IOException If the log cannot be read.
+     */
+    public synchronized List<Entry> readSince(long sinceTimestamp) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(ENTRY_SIZE * ENTRIES_PER_READ);
+        long index = 0;
+        while (index < entryCount) {
+            buffer.clear();
+            int entriesToRead = (int) Math.min(ENTRIES_PER_READ, entryCount - index);
+            buffer.limit(entriesToRead * ENTRY_SIZE);
+            readFully(buffer, index * ENTRY_SIZE);
+            for (int i = 0; i < entriesToRead; i++) {
+                int offset = i * ENTRY_SIZE;
+                long timestamp = buffer.getLong(offset);
+                if (timestamp >= sinceTimestamp) {
+                    entries.add(new Entry(index + i, timestamp, buffer.getInt(offset + 8), buffer.get(offset + 12),
+                            buffer.get(offset + 13) & 0xFF));
+                }
+            }
+            index += entriesToRead;
+        }
+        return entries;
+    }
+
+    /**
+     * Reads every entry in the log.
+     *
+     * @return All entries, in the order they were added.
+     * @throws IOException If the log cannot be read.
+     */
+    public List<Entry> readAll() throws IOException {
+        return readSince(Long.MIN_VALUE);
+    }
+
+    /**
+     * Rewrites the log keeping only entries at or after the given time and entries that are not
+     * synced yet. The new log is written to a temporary file and renamed over the old one, so an
+     * interrupted compaction leaves the previous log intact. Entry indexes change after compaction.
+     *
+     * @param keepSinceTimestamp The earliest timestamp of synced entries to keep.
+     * @throws IOException If the log cannot be rewritten.
+     */
+    public synchronized void compact(long keepSinceTimestamp) throws IOException {
+        List<Entry> kept = new ArrayList<>();
+        for (Entry entry : readAll()) {
+            if (entry.timestamp >= keepSinceTimestamp || entry.syncState != STATE_SYNCED) {
+                kept.add(entry);
+            }
+        }
+        if (kept.size() == entryCount) {
+            return;
+        }
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (IntakeLog compacted = new IntakeLog(tempFile)) {
+            compacted.clear();
+            for (Entry entry : kept) {
+                compacted.writeEntry(compacted.entryCount++, entry.timestamp, entry.amount, entry.syncState, entry.sequence);
+            }
+            compacted.channel.force(true);
+        }
+        randomAccessFile.close();
+        if (!tempFile.renameTo(file)) {
+            open();
+            throw new IOException("Could not replace " + file);
+        }
+        open();
+    }
+
+    /**
+     * Removes every entry from the log.
+     *
+     * @throws IOException If the log cannot be truncated.
+     */
+    public synchronized void clear() throws IOException {
+        channel.truncate(0);
+        channel.force(true);
+        entryCount = 0;
+        lastTimestamp = Long.MIN_VALUE;
+        lastSequence = 0;
+    }
+
+    /**
+     * Gets the number of entries in the log.
+     *
+     * @return The number of valid entries.
+     */
+    public synchronized long size() {
+        return entryCount;
+    }
+
+    /**
+     * Closes the underlying file.
+     *
+     * @throws IOException If the file cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        randomAccessFile.close();
+    }
+
+    /**
+     * Opens the channel and counts the valid entries, truncating the log at the first entry that
+     * is incomplete or fails its checksum.
+     */
+    private void open() throws IOException {
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+        long fileSize = channel.size();
+        long completeEntries = fileSize / ENTRY_SIZE;
+        ByteBuffer buffer = ByteBuffer.allocate(ENTRY_SIZE * ENTRIES_PER_READ);
+        long validEntries = 0;
+        scan:
+        while (validEntries < completeEntries) {
+            buffer.clear();
+            int entriesToRead = (int) Math.min(ENTRIES_PER_READ, completeEntries - validEntries);
+            buffer.limit(entriesToRead * ENTRY_SIZE);
+            readFully(buffer, validEntries * ENTRY_SIZE);
+            for (int i = 0; i < entriesToRead; i++) {
+                if (!isValid(buffer, i * ENTRY_SIZE)) {
+                    break scan;
+                }
+                validEntries++;
+            }
+        }
+        if (validEntries * ENTRY_SIZE != fileSize) {
+            channel.truncate(validEntries * ENTRY_SIZE);
+            channel.force(true);
+        }
+        entryCount = validEntries;
+        lastTimestamp = Long.MIN_VALUE;
+        lastSequence = 0;
+        if (entryCount > 0) {
+            ByteBuffer last = ByteBuffer.allocate(ENTRY_SIZE);
+            lastTimestamp = readEntry(last, entryCount - 1);
+            lastSequence = last.get(13) & 0xFF;
+        }
+    }
+
+    private boolean isValid(ByteBuffer buffer, int offset) {
+        crc.reset();
+        for (int i = 0; i < PAYLOAD_SIZE; i++) {
+            crc.update(buffer.get(offset + i));
+        }
+        return (int) crc.getValue() == buffer.getInt(offset + PAYLOAD_SIZE);
+    }
+
+    private void writeEntry(long index, long timestamp, int amount, byte syncState, int sequence) throws IOException {
+        entryBuffer.clear();
+        entryBuffer.putLong(timestamp);
+        entryBuffer.putInt(amount);
+        entryBuffer.put(syncState);
+        entryBuffer.put((byte) sequence);
+        entryBuffer.put((byte) 0).put((byte) 0);
+        crc.reset();
+        crc.update(entryBuffer.array(), 0, PAYLOAD_SIZE);
+        entryBuffer.putInt((int) crc.getValue());
+        entryBuffer.flip();
+        long position = index * ENTRY_SIZE;
+        while (entryBuffer.hasRemaining()) {
+            position += channel.write(entryBuffer, position);
+        }
+    }
+
+    private long readEntry(ByteBuffer buffer, long index) throws IOException {
+        buffer.clear();
+        readFully(buffer, index * ENTRY_SIZE);
+        return buffer.getLong(0);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of " + file);
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * A single intake entry read from the log.
+     */
+    public static class Entry {
+        public final long index;
+        public final long timestamp;
+        public final int amount;
+        public final byte syncState;
+        // Number of earlier entries with the same timestamp
+        public final int sequence;
+
+        Entry(long index, long timestamp, int amount, byte syncState, int sequence) {
+            this.index = index;
+            this.timestamp = timestamp;
+            this.amount = amount;
+            this.syncState = syncState;
+            this.sequence = sequence;
+        }
+    }
+}
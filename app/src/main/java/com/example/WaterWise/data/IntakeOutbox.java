@@ -0,0 +1,397 @@
+package com.example.WaterWise.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * IntakeOutbox sends the intake records waiting in the {@link IntakeLog} to Firestore. The log
+ * is the durable queue: an entry stays pending until a batch containing it is committed, so
+ * records added offline or lost to a failed write are sent later, even after a restart.
+ *
+ * Pending entries are sent in groups of up to {@link #MAX_BATCH_RECORDS} per commit. A record
+ * added shortly after another waits {@link #FLUSH_DELAY_MILLIS} to join the same batch, and a
+ * rejected batch is retried with exponential backoff. Each record is written under an ID made of
+ * the installation ID, its timestamp and, for records logged in the same millisecond as an
+ * earlier one, its sequence, so resending it overwrites the same document. Entries
+ * handed to Firestore before the app was killed are marked as sent; on the next start, those
+ * whose ID already exists are marked synced instead of being sent twice. Sending can be held,
+ * for work that must not run while records and their aggregate increments are committed.
+ *
+ * All methods must be called on the same thread, the one the scheduler runs tasks on.
+ */
+public class IntakeOutbox {
+    // Largest number of records in one batch, leaving room for the daily aggregate writes
+    static final int MAX_BATCH_RECORDS = 200;
+    // Time a new record waits for others to join its batch
+    static final long FLUSH_DELAY_MILLIS = 2000;
+    // Delay before the first retry of a rejected batch, doubled after each failure
+    static final long INITIAL_BACKOFF_MILLIS = 2000;
+    static final long MAX_BACKOFF_MILLIS = 5 * 60 * 1000;
+
+    private final IntakeLog log;
+    private final String installId;
+    private final Scheduler scheduler;
+    private final Sink sink;
+    private final StatusListener listener;
+    private final Runnable flushTask = this::flush;
+    // Callbacks waiting for every pending record to be sent
+    private final List<DrainCallback> drainCallbacks = new ArrayList<>();
+
+    // Whether a flush is scheduled, so bursts of records schedule it once
+    private boolean flushScheduled;
+    // Whether a batch or a check of sent records is waiting for Firestore
+    private boolean inFlight;
+    // Whether sending is held, and the callback waiting for the batch in flight to complete
+    private boolean held;
+    private Runnable idleCallback;
+    // Number of consecutive rejected batches
+    private int failures;
+    // Records of the last rejected batch that are still waiting to be retried
+    private int failedCount;
+    private int pendingCount;
+    // Timestamp of the oldest record not synced yet, or Long.MAX_VALUE if every record is synced
+    private long oldestUnsyncedTimestamp = Long.MAX_VALUE;
+    private boolean closed;
+
+    /**
+     * Creates an outbox for the entries of a log.
+     *
+     * @param log       The intake log holding the records to send.
+     * @param installId A random ID of this installation, used as the prefix of record IDs.
+     * @param scheduler Schedules flushes on the outbox's thread.
+     * @param sink      Writes batches of records to Firestore.
+     * @param listener  Notified when the number of pending or failed records changes.
+     */
+    public IntakeOutbox(IntakeLog log, String installId, Scheduler scheduler, Sink sink, StatusListener listener) {
+        this.log = log;
+        this.installId = installId;
+        this.scheduler = scheduler;
+        this.sink = sink;
+        this.listener = listener;
+    }
+
+    /**
+     * Gets the Firestore document ID of a record. The first record of a millisecond keeps the ID
+     * it had before sequences were stored, so records sent by an older version are still found.
+     *
+     * @param timestamp The timestamp of the record.
+     * @param sequence  The sequence of the record among those with the same timestamp.
+     * @return The ID of the record document.
+     */
+    public String recordId(long timestamp, int sequence) {
+        return sequence == 0 ? installId + "-" + timestamp : installId + "-" + timestamp + "-" + sequence;
+    }
+
+    /**
+     * Schedules a flush for a record just appended to the log. Records appended within
+     * {@link #FLUSH_DELAY_MILLIS} of each other are sent in the same batch.
+     */
+    public void onRecordAdded() {
+        pendingCount++;
+        notifyStatus();
+        schedule(FLUSH_DELAY_MILLIS);
+    }
+
+    /**
+     * Sends every pending record now, batch after batch, and reports once none is left or a
+     * batch or lookup failed. A failed drain leaves the usual retry scheduled.
+     *
+     * @param callback The callback to indicate whether every record was sent.
+     */
+    public void drain(DrainCallback callback) {
+        if (closed) {
+            callback.onDrained(false);
+            return;
+        }
+        drainCallbacks.add(callback);
+        flush();
+    }
+
+    /**
+     * Sends the next batch of pending records now, unless a batch is already in flight. Once a
+     * batch completes, the next one is sent until no record is pending. Entries left marked as
+     * sent by a previous run are checked by ID first; the ones found are marked synced and the
+     * rest are sent again.
+     */
+    public void flush() {
+        flushScheduled = false;
+        if (closed || inFlight || held) {
+            return;
+        }
+        List<IntakeLog.Entry> sent = readEntries(IntakeLog.STATE_SENT);
+        if (sent == null) {
+            finishDrains(false);
+            return;
+        }
+        if (!sent.isEmpty()) {
+            checkSent(byId(sent));
+            return;
+        }
+        List<IntakeLog.Entry> pending = readEntries(IntakeLog.STATE_PENDING);
+        if (pending == null) {
+            finishDrains(false);
+            return;
+        }
+        if (pending.isEmpty()) {
+            failedCount = 0;
+            notifyStatus();
+            finishDrains(true);
+            return;
+        }
+        List<IntakeLog.Entry> batch = pending.subList(0, Math.min(pending.size(), MAX_BATCH_RECORDS));
+        Map<String, IntakeLog.Entry> batchById = byId(batch);
+        // Marked before the commit, so a restart knows these may have reached Firestore
+        for (IntakeLog.Entry entry : batch) {
+            setState(entry, IntakeLog.STATE_SENT);
+        }
+        notifyStatus();
+        inFlight = true;
+        sink.write(batchById, success -> {
+            inFlight = false;
+            notifyIdle();
+            if (closed) {
+                return;
+            }
+            // A batch is atomic, so a rejected one wrote nothing and can be resent as a whole
+            byte state = success ? IntakeLog.STATE_SYNCED : IntakeLog.STATE_PENDING;
+            for (IntakeLog.Entry entry : batchById.values()) {
+                setState(entry, state);
+            }
+            if (success) {
+                failures = 0;
+                failedCount = 0;
+                flush();
+            } else {
+                failedCount = batchById.size();
+                notifyStatus();
+                scheduleRetry();
+                finishDrains(false);
+            }
+        });
+    }
+
+    /**
+     * Holds sending until {@link #release()}. Records keep being added and drains keep waiting,
+     * but no batch is committed. The callback runs once the batch in flight, if any, completes,
+     * so from then on nothing this outbox sent is still on its way to Firestore.
+     *
+     * @param onIdle Run on the outbox's thread once no batch is in flight.
+     */
+    public void hold(Runnable onIdle) {
+        held = true;
+        if (closed || !inFlight) {
+            onIdle.run();
+        } else {
+            idleCallback = onIdle;
+        }
+    }
+
+    /**
+     * Resumes sending after {@link #hold}, starting with the records added meanwhile.
+     */
+    public void release() {
+        held = false;
+        idleCallback = null;
+        flush();
+    }
+
+    /**
+     * Stops sending. Batches in flight complete without touching the log.
+     */
+    public void close() {
+        closed = true;
+        finishDrains(false);
+    }
+
+    /**
+     * Gets the number of records not synced with Firestore yet.
+     *
+     * @return The number of pending records, including those in flight.
+     */
+    public int getPendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * Gets the number of records whose last attempt was rejected and that wait for a retry.
+     *
+     * @return The number of failed records.
+     */
+    public int getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * Gets the time of the oldest record that may still be sent, as of the last read of the
+     * log. Records of that day or later must stay in Firestore, since an entry marked as sent is
+     * looked up by ID before it is resent.
+     *
+     * @return The timestamp in milliseconds, or Long.MAX_VALUE if every record is synced.
+     */
+    public long getOldestUnsyncedTimestamp() {
+        return oldestUnsyncedTimestamp;
+    }
+
+    /**
+     * Gets the delay before the next retry after the given number of consecutive failures.
+     *
+     * @param failures The number of consecutive failures, at least 1.
+     * @return The delay in milliseconds.
+     */
+    static long backoffMillis(int failures) {
+        int doublings = Math.min(failures - 1, 30);
+        return Math.min(INITIAL_BACKOFF_MILLIS << doublings, MAX_BACKOFF_MILLIS);
+    }
+
+    /**
+     * Looks up which of the entries left marked as sent reached Firestore, then marks them
+     * synced or pending and continues flushing.
+     */
+    private void checkSent(Map<String, IntakeLog.Entry> sentById) {
+        inFlight = true;
+        sink.findExisting(new ArrayList<>(sentById.keySet()), existingIds -> {
+            inFlight = false;
+            notifyIdle();
+            if (closed) {
+                return;
+            }
+            if (existingIds == null) {
+                // Unknown whether they arrived; check again later
+                scheduleRetry();
+                finishDrains(false);
+                return;
+            }
+            failures = 0;
+            for (Map.Entry<String, IntakeLog.Entry> entry : sentById.entrySet()) {
+                boolean arrived = existingIds.contains(entry.getKey());
+                setState(entry.getValue(), arrived ? IntakeLog.STATE_SYNCED : IntakeLog.STATE_PENDING);
+            }
+            flush();
+        });
+    }
+
+    private void notifyIdle() {
+        Runnable callback = idleCallback;
+        idleCallback = null;
+        if (callback != null) {
+            callback.run();
+        }
+    }
+
+    private void finishDrains(boolean success) {
+        if (drainCallbacks.isEmpty()) {
+            return;
+        }
+        List<DrainCallback> callbacks = new ArrayList<>(drainCallbacks);
+        drainCallbacks.clear();
+        for (DrainCallback callback : callbacks) {
+            callback.onDrained(success);
+        }
+    }
+
+    private void scheduleRetry() {
+        failures++;
+        schedule(backoffMillis(failures));
+    }
+
+    private void schedule(long delayMillis) {
+        if (closed || flushScheduled) {
+            return;
+        }
+        flushScheduled = true;
+        scheduler.schedule(flushTask, delayMillis);
+    }
+
+    /**
+     * Reads the entries of the log in the given state, counting every entry not synced yet as
+     * pending and keeping the oldest one's time. Returns null if the log cannot be read.
+     */
+    private List<IntakeLog.Entry> readEntries(byte state) {
+        try {
+            List<IntakeLog.Entry> matching = new ArrayList<>();
+            int unsynced = 0;
+            long oldest = Long.MAX_VALUE;
+            for (IntakeLog.Entry entry : log.readAll()) {
+                if (entry.syncState != IntakeLog.STATE_SYNCED) {
+                    unsynced++;
+                    oldest = Math.min(oldest, entry.timestamp);
+                }
+                if (entry.syncState == state) {
+                    matching.add(entry);
+                }
+            }
+            pendingCount = unsynced;
+            oldestUnsyncedTimestamp = oldest;
+            return matching;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private Map<String, IntakeLog.Entry> byId(List<IntakeLog.Entry> entries) {
+        Map<String, IntakeLog.Entry> entriesById = new LinkedHashMap<>();
+        for (IntakeLog.Entry entry : entries) {
+            entriesById.put(recordId(entry.timestamp, entry.sequence), entry);
+        }
+        return entriesById;
+    }
+
+    private void setState(IntakeLog.Entry entry, byte state) {
+        try {
+            log.setSyncState(entry.index, entry.timestamp, entry.sequence, state);
+        } catch (IOException e) {
+            // The entry keeps its previous state and is handled again on the next start
+        }
+    }
+
+    private void notifyStatus() {
+        listener.onStatusChanged(pendingCount, failedCount);
+    }
+
+    /**
+     * Schedules delayed tasks on the outbox's thread.
+     */
+    public interface Scheduler {
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    /**
+     * Sends records to Firestore.
+     */
+    public interface Sink {
+        /**
+         * Writes the records and their daily aggregate increments in a single batch.
+         */
+        void write(Map<String, IntakeLog.Entry> recordsById, FirestoreHelper.SaveCallback callback);
+
+        /**
+         * Looks up which of the record IDs already exist, passing null if the lookup failed.
+         */
+        void findExisting(List<String> recordIds, ExistingRecordsCallback callback);
+    }
+
+    /**
+     * Callback interface to handle the lookup of existing record IDs.
+     */
+    public interface ExistingRecordsCallback {
+        void onExistingLoaded(Set<String> existingIds);
+    }
+
+    /**
+     * Callback interface to handle the end of a drain.
+     */
+    public interface DrainCallback {
+        void onDrained(boolean success);
+    }
+
+    /**
+     * Listens for changes of the number of records waiting to be synced.
+     */
+    public interface StatusListener {
+        void onStatusChanged(int pendingCount, int failedCount);
+    }
+}
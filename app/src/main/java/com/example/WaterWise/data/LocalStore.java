@@ -0,0 +1,190 @@
+package com.example.WaterWise.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * LocalStore is the per-user SQLite database that holds the profile and bookkeeping values,
+ * while daily totals live in a {@link DailyTotalsStore}. It is the read path for
+ * the UI, while Firestore is only used to keep it in sync. All methods do disk I/O and must be
+ * called off the main thread.
+ */
+public class LocalStore extends SQLiteOpenHelper {
+    private static final int DATABASE_VERSION = 1;
+
+    // Single row table with the user's profile
+    private static final String TABLE_PROFILE = "profile";
+    public static final String COLUMN_NAME = "name";
+    public static final String COLUMN_GOAL = "goal";
+    public static final String COLUMN_WEIGHT = "weight";
+    public static final String COLUMN_GENDER = "gender";
+    public static final String COLUMN_SIGN_UP_DATE = "sign_up_date";
+    private static final String COLUMN_ID = "id";
+    private static final int PROFILE_ROW_ID = 1;
+
+    // Bookkeeping values such as the last reset date
+    private static final String TABLE_METADATA = "metadata";
+    private static final String COLUMN_KEY = "key";
+    private static final String COLUMN_VALUE = "value";
+    public static final String META_LAST_RESET_DATE = "last_reset_date";
+    public static final String META_DAILY_AGGREGATES_READY = "daily_aggregates_ready";
+    public static final String META_PREFERENCES_MIGRATED = "preferences_migrated";
+    public static final String META_INSTALL_ID = "install_id";
+    public static final String META_HISTORY_WATERMARK = "history_watermark";
+    public static final String META_OLDEST_UNSYNCED_TIMESTAMP = "oldest_unsynced_timestamp";
+    public static final String META_TODAY_COUNTER = "today_counter";
+
+    // The store of the signed-in user, shared by every DataModel
+    private static LocalStore instance;
+    private static String instanceUserId;
+
+    /**
+     * Gets the store of the given user, closing the store of a previously signed-in user.
+     *
+     * @param context The context used to open the database.
+     * @param userId  The Firebase user ID.
+     * @return The user's local store.
+     */
+    public static synchronized LocalStore getInstance(Context context, String userId) {
+        if (instance == null || !userId.equals(instanceUserId)) {
+            if (instance != null) {
+                instance.close();
+            }
+            instance = new LocalStore(context.getApplicationContext(), userId);
+            instanceUserId = userId;
+        }
+        return instance;
+    }
+
+    private LocalStore(Context context, String userId) {
+        super(context, "waterwise_" + userId + ".db", null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_PROFILE + " ("
+                + COLUMN_ID + " INTEGER PRIMARY KEY, "
+                + COLUMN_NAME + " TEXT, "
+                + COLUMN_GOAL + " INTEGER, "
+                + COLUMN_WEIGHT + " INTEGER, "
+                + COLUMN_GENDER + " TEXT, "
+                + COLUMN_SIGN_UP_DATE + " TEXT)");
+        db.execSQL("CREATE TABLE " + TABLE_METADATA + " ("
+                + COLUMN_KEY + " TEXT PRIMARY KEY, "
+                + COLUMN_VALUE + " TEXT)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // First version of the schema, nothing to upgrade yet
+    }
+
+    /**
+     * Loads the user's profile.
+     *
+     * @return The stored profile, or null if nothing has been stored yet.
+     */
+    public Profile loadProfile() {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_PROFILE, null,
+                COLUMN_ID + " = " + PROFILE_ROW_ID, null, null, null, null)) {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            Profile profile = new Profile();
+            profile.name = getStringOrNull(cursor, COLUMN_NAME);
+            profile.goal = getIntegerOrNull(cursor, COLUMN_GOAL);
+            profile.weight = getIntegerOrNull(cursor, COLUMN_WEIGHT);
+            profile.gender = getStringOrNull(cursor, COLUMN_GENDER);
+            profile.signUpDate = getStringOrNull(cursor, COLUMN_SIGN_UP_DATE);
+            return profile;
+        }
+    }
+
+    /**
+     * Updates a single text column of the profile.
+     *
+     * @param column One of the profile column constants.
+     * @param value  The new value.
+     */
+    public void updateProfile(String column, String value) {
+        ContentValues values = new ContentValues();
+        values.put(column, value);
+        updateProfile(values);
+    }
+
+    /**
+     * Updates a single integer column of the profile.
+     *
+     * @param column One of the profile column constants.
+     * @param value  The new value.
+     */
+    public void updateProfile(String column, int value) {
+        ContentValues values = new ContentValues();
+        values.put(column, value);
+        updateProfile(values);
+    }
+
+    /**
+     * Updates several columns of the profile, creating the profile row if needed.
+     *
+     * @param values The columns to update.
+     */
+    public void updateProfile(ContentValues values) {
+        SQLiteDatabase db = getWritableDatabase();
+        if (db.update(TABLE_PROFILE, values, COLUMN_ID + " = " + PROFILE_ROW_ID, null) == 0) {
+            ContentValues row = new ContentValues(values);
+            row.put(COLUMN_ID, PROFILE_ROW_ID);
+            db.insert(TABLE_PROFILE, null, row);
+        }
+    }
+
+    /**
+     * Gets a bookkeeping value.
+     *
+     * @param key One of the metadata key constants.
+     * @return The stored value, or null if it is not set.
+     */
+    public String getMetadata(String key) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_METADATA, new String[]{COLUMN_VALUE},
+                COLUMN_KEY + " = ?", new String[]{key}, null, null, null)) {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        }
+    }
+
+    /**
+     * Sets a bookkeeping value.
+     *
+     * @param key   One of the metadata key constants.
+     * @param value The value to store.
+     */
+    public void setMetadata(String key, String value) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_KEY, key);
+        values.put(COLUMN_VALUE, value);
+        getWritableDatabase().insertWithOnConflict(TABLE_METADATA, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    private static String getStringOrNull(Cursor cursor, String column) {
+        int index = cursor.getColumnIndexOrThrow(column);
+        return cursor.isNull(index) ? null : cursor.getString(index);
+    }
+
+    private static Integer getIntegerOrNull(Cursor cursor, String column) {
+        int index = cursor.getColumnIndexOrThrow(column);
+        return cursor.isNull(index) ? null : cursor.getInt(index);
+    }
+
+    /**
+     * The user's profile as stored locally. Fields that were never set are null.
+     */
+    public static class Profile {
+        public String name;
+        public Integer goal;
+        public Integer weight;
+        public String gender;
+        public String signUpDate;
+    }
+}
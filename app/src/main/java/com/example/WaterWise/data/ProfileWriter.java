@@ -0,0 +1,260 @@
+package com.example.WaterWise.data;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * ProfileWriter coalesces edits of the user's profile fields into merged writes to the user
+ * document. Edited fields are tracked as dirty and sent together once no further edit arrives
+ * within {@link #DEBOUNCE_MILLIS}, so a burst of edits costs a single write. Values loaded from
+ * the server are hydrated without being written back, and an edit that sets a field to the value
+ * the server already has is dropped. Counters record how many writes this avoided. A failed
+ * write is retried with exponential backoff, and its fields are dropped after
+ * {@link #MAX_WRITE_ATTEMPTS} attempts: Firestore keeps offline writes queued rather than failing
+ * them, so a failure is a rejection, such as a permission error after sign-out, that retrying
+ * forever would not fix.
+ *
+ * All methods must be called on the same thread, the one the scheduler runs tasks on.
+ */
+public class ProfileWriter {
+    // Time without edits after which the dirty fields are written
+    static final long DEBOUNCE_MILLIS = 1500;
+    // Attempts at writing the same fields before they are dropped, and the longest retry delay
+    static final int MAX_WRITE_ATTEMPTS = 5;
+    static final long MAX_BACKOFF_MILLIS = 5 * 60 * 1000;
+
+    private final Scheduler scheduler;
+    private final Sink sink;
+    // Last values known to be stored on the server, per field
+    private final Map<String, Object> serverValues = new HashMap<>();
+    // Fields edited locally and not written yet, in edit order
+    private final Map<String, Object> dirtyFields = new LinkedHashMap<>();
+    // Fields of the write in flight, or null if there is none
+    private Map<String, Object> inFlight;
+    private final Runnable flushTask = this::flush;
+    // Marks a field that has never been seen
+    private static final Object UNKNOWN = new Object();
+    // Number of consecutive failed writes
+    private int failures;
+
+    private long editCount;
+    private long writesSent;
+    private long echoesSkipped;
+    private long editsCoalesced;
+    private long unchangedEditsSkipped;
+    private long writesDropped;
+
+    /**
+     * Creates a writer.
+     *
+     * @param scheduler Schedules the debounced flush.
+     * @param sink      Sends a merged update of the user document.
+     */
+    public ProfileWriter(Scheduler scheduler, Sink sink) {
+        this.scheduler = scheduler;
+        this.sink = sink;
+    }
+
+    /**
+     * Records values read from the server. Fields with a pending local edit keep the local value,
+     * every other field is returned so the caller can show it. Nothing is written back.
+     *
+     * @param fields      The profile fields read from the server.
+     * @param shownValues Gets the value of a field currently shown, which a field applied with a
+     *                    different value would have been written back over.
+     * @return The fields the caller should apply locally.
+     */
+    public Map<String, Object> hydrate(Map<String, Object> fields, Function<String, Object> shownValues) {
+        Map<String, Object> applied = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            serverValues.put(field.getKey(), field.getValue());
+            if (!dirtyFields.containsKey(field.getKey()) && (inFlight == null || !inFlight.containsKey(field.getKey()))) {
+                applied.put(field.getKey(), field.getValue());
+                if (!equal(shownValues.apply(field.getKey()), field.getValue())) {
+                    // The setters used to write each changed value straight back
+                    echoesSkipped++;
+                }
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Records a local edit of a field and schedules a write of all dirty fields.
+     *
+     * @param field The name of the field on the user document.
+     * @param value The new value.
+     * @return True if the edit will be written, false if the server already has this value.
+     */
+    public boolean set(String field, Object value) {
+        editCount++;
+        if (equal(currentValue(field), value)) {
+            unchangedEditsSkipped++;
+            return false;
+        }
+        if (!dirtyFields.isEmpty()) {
+            // Joins the write already waiting for the debounce
+            editsCoalesced++;
+        }
+        dirtyFields.put(field, value);
+        scheduler.cancel(flushTask);
+        scheduler.schedule(flushTask, DEBOUNCE_MILLIS);
+        return true;
+    }
+
+    /**
+     * Writes every dirty field now in a single merged update. If a write is already in flight,
+     * the dirty fields are written once it completes.
+     */
+    public void flush() {
+        scheduler.cancel(flushTask);
+        if (dirtyFields.isEmpty() || inFlight != null) {
+            return;
+        }
+        Map<String, Object> fields = new LinkedHashMap<>(dirtyFields);
+        dirtyFields.clear();
+        inFlight = fields;
+        writesSent++;
+        sink.write(fields, success -> {
+            inFlight = null;
+            if (success) {
+                failures = 0;
+                serverValues.putAll(fields);
+            } else if (++failures < MAX_WRITE_ATTEMPTS) {
+                // Retry the failed fields, unless they were edited again meanwhile
+                for (Map.Entry<String, Object> field : fields.entrySet()) {
+                    if (!dirtyFields.containsKey(field.getKey())) {
+                        dirtyFields.put(field.getKey(), field.getValue());
+                    }
+                }
+            } else {
+                // Rejected every time, so the failed fields are dropped; later edits start over
+                failures = 0;
+                writesDropped++;
+            }
+            if (!dirtyFields.isEmpty()) {
+                scheduler.schedule(flushTask, retryDelayMillis(failures));
+            }
+        });
+    }
+
+    /**
+     * Checks whether any edit has not been written yet.
+     *
+     * @return True if there are dirty fields or a write in flight.
+     */
+    public boolean hasPendingWrites() {
+        return !dirtyFields.isEmpty() || inFlight != null;
+    }
+
+    /**
+     * Gets the number of local edits recorded.
+     *
+     * @return The number of calls to set.
+     */
+    public long getEditCount() {
+        return editCount;
+    }
+
+    /**
+     * Gets the number of merged updates sent to the server.
+     *
+     * @return The number of writes.
+     */
+    public long getWritesSent() {
+        return writesSent;
+    }
+
+    /**
+     * Gets the number of server values that were hydrated instead of being written back.
+     *
+     * @return The number of echo writes skipped.
+     */
+    public long getEchoesSkipped() {
+        return echoesSkipped;
+    }
+
+    /**
+     * Gets the number of edits that joined a pending write instead of causing their own.
+     *
+     * @return The number of coalesced edits.
+     */
+    public long getEditsCoalesced() {
+        return editsCoalesced;
+    }
+
+    /**
+     * Gets the number of edits dropped because the value did not change.
+     *
+     * @return The number of unchanged edits.
+     */
+    public long getUnchangedEditsSkipped() {
+        return unchangedEditsSkipped;
+    }
+
+    /**
+     * Gets the total number of writes avoided compared to writing every hydrated value and
+     * every edit on its own.
+     *
+     * @return The number of writes avoided.
+     */
+    public long getWritesAvoided() {
+        return echoesSkipped + editsCoalesced + unchangedEditsSkipped;
+    }
+
+    /**
+     * Gets the number of writes whose fields were dropped after failing every attempt.
+     *
+     * @return The number of dropped writes.
+     */
+    public long getWritesDropped() {
+        return writesDropped;
+    }
+
+    /**
+     * Gets the delay before writing the dirty fields: the debounce delay, doubled after each
+     * consecutive failure up to {@link #MAX_BACKOFF_MILLIS}.
+     *
+     * @param failures The number of consecutive failed writes.
+     * @return The delay in milliseconds.
+     */
+    static long retryDelayMillis(int failures) {
+        return Math.min(DEBOUNCE_MILLIS << Math.min(failures, 30), MAX_BACKOFF_MILLIS);
+    }
+
+    /**
+     * Gets the latest value of a field: the pending edit, the value being written, or the
+     * value on the server, in that order. Returns UNKNOWN if the field was never seen.
+     */
+    private Object currentValue(String field) {
+        if (dirtyFields.containsKey(field)) {
+            return dirtyFields.get(field);
+        }
+        if (inFlight != null && inFlight.containsKey(field)) {
+            return inFlight.get(field);
+        }
+        return serverValues.containsKey(field) ? serverValues.get(field) : UNKNOWN;
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Schedules and cancels delayed tasks on the writer's thread.
+     */
+    public interface Scheduler {
+        void schedule(Runnable task, long delayMillis);
+
+        void cancel(Runnable task);
+    }
+
+    /**
+     * Sends a merged update of profile fields to the server.
+     */
+    public interface Sink {
+        void write(Map<String, Object> fields, FirestoreHelper.SaveCallback callback);
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.WaterWise.data;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.example.WaterWise.utils.HistoryUtils;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RecordCompactionWorker runs the {@link RecordCompactor} for the signed-in user once a day,
+ * while the device is charging on a network. Raw records are kept for
+ * {@link #COMPACT_AFTER_DAYS} days, and for every day from the oldest record this installation
+ * has not synced yet: such a record may have been written without its acknowledgement arriving,
+ * and is looked up by ID before it is resent, so it must still exist.
+ */
+public class RecordCompactionWorker extends Worker {
+    // Unique name of the periodic work, so scheduling it again keeps the existing one
+    private static final String WORK_NAME = "record_compaction";
+    // Number of days raw records are kept before being compacted
+    static final int COMPACT_AFTER_DAYS = 30;
+
+    public RecordCompactionWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Schedules the daily compaction unless it is already scheduled.
+     *
+     * @param context The application context.
+     */
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .setRequiresCharging(true)
+                .setRequiresBatteryNotLow(true)
+                .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(RecordCompactionWorker.class, 1, TimeUnit.DAYS)
+                .setConstraints(constraints)
+                .build();
+        WorkManager.getInstance(context).enqueueUniquePeriodicWork(WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        if (user == null) {
+            return Result.success();
+        }
+        long cutoffEpochDay = WaterRepository.epochDayOf(System.currentTimeMillis()) - COMPACT_AFTER_DAYS;
+        String oldestUnsynced = LocalStore.getInstance(getApplicationContext(), user.getUid())
+                .getMetadata(LocalStore.META_OLDEST_UNSYNCED_TIMESTAMP);
+        if (oldestUnsynced != null && !oldestUnsynced.isEmpty()) {
+            cutoffEpochDay = Math.min(cutoffEpochDay, WaterRepository.epochDayOf(Long.parseLong(oldestUnsynced)));
+        }
+        try {
+            new RecordCompactor(FirebaseFirestore.getInstance(), user.getUid())
+                    .compactBefore(HistoryUtils.formatEpochDay(cutoffEpochDay));
+            return Result.success();
+        } catch (ExecutionException | InterruptedException e) {
+            Log.w("RecordCompactionWorker", "Compaction failed, retrying later", e);
+            return Result.retry();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.WaterWise.data;
+
+import android.util.Log;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Source;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * RecordCompactor folds old raw intake records of users/{uid}/records into the
+ * users/{uid}/daily/{date} aggregate of their day, then deletes them. The aggregate keeps its
+ * running total and count, which already include every record, and gains a {@link DaySummary}
+ * of the compacted records with the amount drunk per hour. History is read from the aggregates
+ * alone, so it does not change.
+ *
+ * Each day is compacted in a transaction that reads its aggregate, checks that the running
+ * total and count equal the summary once the raw records are folded into it, then writes the
+ * summary and deletes the records. Every record write also updates the aggregate, so a record
+ * written meanwhile either shows up as a mismatch, which skips the day, or makes the
+ * transaction retry.
+ *
+ * The methods block until Firestore answers and must be called on a background thread.
+ */
+public class RecordCompactor {
+    // Largest number of days compacted per run, so a long history is spread over several runs
+    static final int MAX_DAYS_PER_RUN = 60;
+    // A transaction writes at most 500 documents: the aggregate plus the deleted records
+    static final int MAX_RECORDS_PER_DAY = 499;
+
+    private final FirebaseFirestore db;
+    private final String userId;
+
+    /**
+     * Creates a compactor for the records of a user.
+     *
+     * @param db     The Firestore instance.
+     * @param userId The Firebase user ID.
+     */
+    public RecordCompactor(FirebaseFirestore db, String userId) {
+        this.db = db;
+        this.userId = userId;
+    }
+
+    /**
+     * Compacts the records of the days before the given date, oldest first, up to
+     * {@link #MAX_DAYS_PER_RUN} days. Does nothing until the daily aggregates were backfilled,
+     * since the records are the only copy of the totals before that.
+     *
+     * @param cutoffDate The first date to keep raw records of, in "yyyy-MM-dd" format.
+     * @return The number of days compacted.
+     * @throws ExecutionException   If a read or the transaction of a day failed.
+     * @throws InterruptedException If the thread was interrupted while waiting for Firestore.
+     */
+    public int compactBefore(String cutoffDate) throws ExecutionException, InterruptedException {
+        DocumentSnapshot user = Tasks.await(db.collection("users").document(userId).get(Source.SERVER));
+        Long version = user.getLong("dailyAggregatesVersion");
+        if (version == null || version < FirestoreHelper.DAILY_AGGREGATES_VERSION) {
+            Log.d("RecordCompactor", "Daily aggregates not backfilled yet, nothing compacted");
+            return 0;
+        }
+        int compacted = 0;
+        String date = null;
+        for (int days = 0; days < MAX_DAYS_PER_RUN; days++) {
+            date = nextDateWithRecords(date, cutoffDate);
+            if (date == null) {
+                break;
+            }
+            if (compactDay(date)) {
+                compacted++;
+            }
+        }
+        Log.d("RecordCompactor", compacted + " days compacted before " + cutoffDate);
+        return compacted;
+    }
+
+    /**
+     * Finds the first date after the given one and before the cutoff that still has raw
+     * records, reading a single record.
+     *
+     * @param afterDate  The last date handled, or null to start from the oldest record.
+     * @param cutoffDate The first date to keep raw records of.
+     * @return The date, or null if no record is left before the cutoff.
+     */
+    private String nextDateWithRecords(String afterDate, String cutoffDate)
+            throws ExecutionException, InterruptedException {
+        Query query = db.collection("users").document(userId).collection("records")
+                .whereLessThan("date", cutoffDate);
+        if (afterDate != null) {
+            query = query.whereGreaterThan("date", afterDate);
+        }
+        QuerySnapshot snapshot = Tasks.await(query.orderBy("date").limit(1).get(Source.SERVER));
+        return snapshot.isEmpty() ? null : snapshot.getDocuments().get(0).getString("date");
+    }
+
+    /**
+     * Folds the raw records of a date into its aggregate and deletes them, if the aggregate
+     * matches them.
+     *
+     * @param date The date in "yyyy-MM-dd" format.
+     * @return True if the day was compacted, false if it was skipped.
+     */
+    private boolean compactDay(String date) throws ExecutionException, InterruptedException {
+        DocumentReference userRef = db.collection("users").document(userId);
+        List<DocumentSnapshot> records = Tasks.await(userRef.collection("records")
+                .whereEqualTo("date", date)
+                .get(Source.SERVER)).getDocuments();
+        if (records.size() > MAX_RECORDS_PER_DAY) {
+            Log.w("RecordCompactor", "Too many records on " + date + " to compact at once, skipped");
+            return false;
+        }
+        SimpleDateFormat legacyFormat = new SimpleDateFormat("yyyy-MM-dd hh:mm a", Locale.getDefault());
+        DocumentReference dailyRef = userRef.collection("daily").document(date);
+        boolean compacted = Tasks.await(db.runTransaction(transaction -> {
+            DocumentSnapshot daily = transaction.get(dailyRef);
+            Long total = daily.getLong("total");
+            Long count = daily.getLong("count");
+            if (total == null || count == null) {
+                return false;
+            }
+            DaySummary summary = DaySummary.fromFields(daily.getData());
+            for (DocumentSnapshot record : records) {
+                Long amount = record.getLong("amount");
+                Long timestamp = recordTimestamp(record, legacyFormat);
+                if (amount == null || timestamp == null) {
+                    // Not counted by the aggregate the same way; leave the day as it is
+                    return false;
+                }
+                summary.add(timestamp, amount.intValue());
+            }
+            if (!summary.matches(total, count)) {
+                return false;
+            }
+            transaction.update(dailyRef, summary.toFields());
+            for (DocumentSnapshot record : records) {
+                transaction.delete(record.getReference());
+            }
+            return true;
+        }));
+        if (!compacted) {
+            Log.w("RecordCompactor", "Aggregate of " + date + " does not match its records, skipped");
+        }
+        return compacted;
+    }
+
+    /**
+     * Gets the time of a record. Records written by earlier versions carry no timestamp, so
+     * theirs is parsed from the date and time fields.
+     *
+     * @return The timestamp in milliseconds, or null if the record has no valid time.
+     */
+    private static Long recordTimestamp(DocumentSnapshot record, SimpleDateFormat legacyFormat) {
+        Long timestamp = record.getLong("timestamp");
+        if (timestamp != null) {
+            return timestamp;
+        }
+        String date = record.getString("date");
+        String time = record.getString("time");
+        if (date == null || time == null) {
+            return null;
+        }
+        try {
+            return legacyFormat.parse(date + " " + time).getTime();
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+}
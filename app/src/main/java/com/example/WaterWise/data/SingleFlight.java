@@ -0,0 +1,162 @@
+package com.example.WaterWise.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SingleFlight coalesces concurrent reads of the same key, such as the path of a Firestore
+ * document: while a read is in flight, later requests for the key wait for it instead of
+ * starting their own, and every waiter gets the same result. A successful result is kept for
+ * {@link #RESULT_TTL_MILLIS}, so reads made just after it also share it. Results can be seeded,
+ * for example from a snapshot listener, and dropped after a write.
+ *
+ * All methods must be called on the same thread, the one results are delivered on.
+ *
+ * @param <T> The type of the result.
+ */
+public class SingleFlight<T> {
+    // Time a successful result is shared with later reads
+    static final long RESULT_TTL_MILLIS = 2000;
+
+    private final Clock clock;
+    // Callbacks waiting for the read in flight, by key
+    private final Map<String, List<Callback<T>>> inFlight = new HashMap<>();
+    // Successful results by key, with the time they arrived
+    private final Map<String, T> results = new HashMap<>();
+    private final Map<String, Long> resultTimes = new HashMap<>();
+
+    private int loads;
+    private int coalesced;
+    private int cacheHits;
+
+    /**
+     * Creates an empty single-flight group.
+     *
+     * @param clock The monotonic clock used to expire results.
+     */
+    public SingleFlight(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Gets the result for a key: the recent result if there is one, the result of the read in
+     * flight if there is one, or else the result of a new read.
+     *
+     * @param key      The key of the read.
+     * @param loader   Starts the read if none is in flight.
+     * @param callback The callback to handle the result, which is null if the read failed.
+     */
+    public void get(String key, Loader<T> loader, Callback<T> callback) {
+        T recent = peek(key);
+        if (recent != null) {
+            cacheHits++;
+            callback.onResult(recent);
+            return;
+        }
+        List<Callback<T>> waiting = inFlight.get(key);
+        if (waiting != null) {
+            coalesced++;
+            waiting.add(callback);
+            return;
+        }
+        waiting = new ArrayList<>();
+        waiting.add(callback);
+        inFlight.put(key, waiting);
+        loads++;
+        loader.load(result -> complete(key, result));
+    }
+
+    /**
+     * Gets the recent result of a key without reading it.
+     *
+     * @param key The key of the read.
+     * @return The result, or null if there is none younger than {@link #RESULT_TTL_MILLIS}.
+     */
+    public T peek(String key) {
+        Long time = resultTimes.get(key);
+        if (time == null || clock.now() - time >= RESULT_TTL_MILLIS) {
+            return null;
+        }
+        return results.get(key);
+    }
+
+    /**
+     * Stores a result obtained elsewhere, such as a snapshot listener, and passes it to the
+     * read in flight for the key, if any.
+     *
+     * @param key    The key of the result.
+     * @param result The result.
+     */
+    public void put(String key, T result) {
+        complete(key, result);
+    }
+
+    /**
+     * Drops the stored result of a key, for example after the document was written. A read in
+     * flight still completes.
+     *
+     * @param key The key of the result.
+     */
+    public void invalidate(String key) {
+        results.remove(key);
+        resultTimes.remove(key);
+    }
+
+    /**
+     * Gets the counters for logging.
+     *
+     * @return A summary of the reads started, coalesced and served from a recent result.
+     */
+    public String getStats() {
+        return loads + " reads, " + coalesced + " coalesced, " + cacheHits + " served from recent results";
+    }
+
+    int getLoads() {
+        return loads;
+    }
+
+    int getCoalesced() {
+        return coalesced;
+    }
+
+    int getCacheHits() {
+        return cacheHits;
+    }
+
+    private void complete(String key, T result) {
+        if (result != null) {
+            results.put(key, result);
+            resultTimes.put(key, clock.now());
+        }
+        List<Callback<T>> waiting = inFlight.remove(key);
+        if (waiting == null) {
+            return;
+        }
+        for (Callback<T> callback : waiting) {
+            callback.onResult(result);
+        }
+    }
+
+    /**
+     * A monotonic clock in milliseconds.
+     */
+    public interface Clock {
+        long now();
+    }
+
+    /**
+     * Starts a read and passes its result, or null on failure, to the callback.
+     */
+    public interface Loader<T> {
+        void load(Callback<T> callback);
+    }
+
+    /**
+     * Callback interface to handle the result of a read.
+     */
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+}
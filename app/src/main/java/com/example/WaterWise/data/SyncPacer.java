@@ -0,0 +1,44 @@
+package com.example.WaterWise.data;
+
+import java.util.List;
+
+/**
+ * SyncPacer picks the delay before the next background sync from the user's logging pace.
+ * While water is logged often, syncs follow each other at about the average gap between
+ * records, down to {@link #MIN_DELAY_MILLIS}. Once logging stops, the delay grows with the
+ * time since the last record, up to {@link #MAX_DELAY_MILLIS}, so an idle device rarely wakes
+ * its radio.
+ */
+public class SyncPacer {
+    // The shortest interval WorkManager allows for periodic work, kept for one-off syncs too
+    static final long MIN_DELAY_MILLIS = 15 * 60 * 1000L;
+    static final long MAX_DELAY_MILLIS = 6 * 60 * 60 * 1000L;
+    // Records older than this do not tell the current pace
+    static final long PACE_WINDOW_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private SyncPacer() {
+    }
+
+    /**
+     * Gets the delay before the next background sync.
+     *
+     * @param recordTimestamps The times of the recent records, in ascending order.
+     * @param now              The current time in milliseconds since the epoch.
+     * @return The delay in milliseconds.
+     */
+    public static long nextDelayMillis(List<Long> recordTimestamps, long now) {
+        int first = 0;
+        while (first < recordTimestamps.size() && now - recordTimestamps.get(first) > PACE_WINDOW_MILLIS) {
+            first++;
+        }
+        int count = recordTimestamps.size() - first;
+        if (count < 2) {
+            return MAX_DELAY_MILLIS;
+        }
+        long last = recordTimestamps.get(recordTimestamps.size() - 1);
+        long averageGap = (last - recordTimestamps.get(first)) / (count - 1);
+        // Half the idle time, so a pause is not mistaken for the end of the day too soon
+        long delay = Math.max(averageGap, (now - last) / 2);
+        return Math.max(MIN_DELAY_MILLIS, Math.min(MAX_DELAY_MILLIS, delay));
+    }
+}
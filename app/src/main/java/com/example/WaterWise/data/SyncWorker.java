@@ -0,0 +1,104 @@
+package com.example.WaterWise.data;
+
+import android.app.Application;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.google.firebase.auth.FirebaseAuth;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SyncWorker runs {@link WaterRepository#syncInBackground} while the device is on a network and
+ * its battery is not low: it drains the records waiting in the outbox, refreshes today's intake
+ * counter and syncs the history past its watermark. Each run schedules the next one after the
+ * delay chosen by {@link SyncPacer}, so syncs are frequent while water is logged often and rare
+ * once the device is idle.
+ */
+public class SyncWorker extends Worker {
+    // Unique name of the chain of syncs, so at most one is scheduled
+    private static final String WORK_NAME = "background_sync";
+    // Time a run waits for the sync, below the ten minutes WorkManager gives a worker
+    private static final long TIMEOUT_MINUTES = 9;
+
+    public SyncWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Schedules a sync unless one is already scheduled.
+     *
+     * @param context The application context.
+     */
+    public static void schedule(Context context) {
+        enqueue(context, SyncPacer.MIN_DELAY_MILLIS, ExistingWorkPolicy.KEEP);
+    }
+
+    /**
+     * Replaces the scheduled sync with one that runs as soon as its constraints are met, for
+     * example when the app goes to the background with records not sent yet.
+     *
+     * @param context The application context.
+     */
+    public static void syncSoon(Context context) {
+        enqueue(context, 0, ExistingWorkPolicy.REPLACE);
+    }
+
+    private static void enqueue(Context context, long delayMillis, ExistingWorkPolicy policy) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .setRequiresBatteryNotLow(true)
+                .build();
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(SyncWorker.class)
+                .setConstraints(constraints)
+                .setInitialDelay(delayMillis, TimeUnit.MILLISECONDS)
+                .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(WORK_NAME, policy, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        if (FirebaseAuth.getInstance().getCurrentUser() == null) {
+            // Scheduled again by the repository after the next sign-in
+            return Result.success();
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        boolean[] synced = new boolean[1];
+        long[] nextDelayMillis = new long[1];
+        Application application = (Application) getApplicationContext();
+        new Handler(Looper.getMainLooper()).post(() -> WaterRepository.getInstance(application)
+                .syncInBackground((success, delayMillis) -> {
+                    synced[0] = success;
+                    nextDelayMillis[0] = delayMillis;
+                    done.countDown();
+                }));
+        try {
+            if (!done.await(TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+                Log.w("SyncWorker", "Background sync timed out");
+                return Result.retry();
+            }
+        } catch (InterruptedException e) {
+            return Result.retry();
+        }
+        if (!synced[0]) {
+            return Result.retry();
+        }
+        // Appended, so it starts once this run has finished
+        enqueue(application, nextDelayMillis[0], ExistingWorkPolicy.APPEND_OR_REPLACE);
+        Log.d("SyncWorker", "Next background sync in " + nextDelayMillis[0] / 60000 + " minutes");
+        return Result.success();
+    }
+}
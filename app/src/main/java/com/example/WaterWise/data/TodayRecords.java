@@ -0,0 +1,125 @@
+package com.example.WaterWise.data;
+
+import com.example.WaterWise.home.IntakeRecord;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * TodayRecords holds today's intake records: the ones added on this device, read from the
+ * intake log, and the ones added elsewhere, received as changes from a Firestore listener.
+ * Changes are applied one record at a time, so a record added on another device is inserted
+ * without reloading the list.
+ *
+ * Records written by this device come back from the listener too. They are recognized by their
+ * ID, which starts with the installation ID, or for records written by earlier versions without
+ * such an ID, by their time and amount.
+ */
+public class TodayRecords {
+    // Types of a change received from the listener
+    public static final int ADDED = 0;
+    public static final int MODIFIED = 1;
+    public static final int REMOVED = 2;
+
+    private final String localIdPrefix;
+    private final List<IntakeRecord> localRecords;
+    // Records added on other devices, by document ID
+    private final Map<String, IntakeRecord> remoteRecords = new HashMap<>();
+    // Local records matched to a document written without a client-generated ID
+    private final Set<IntakeRecord> matchedLocalRecords = new HashSet<>();
+    private final Set<String> matchedIds = new HashSet<>();
+
+    /**
+     * Creates the records of today.
+     *
+     * @param installId    The installation ID that prefixes the IDs of records written here.
+     * @param localRecords Today's records added on this device.
+     */
+    public TodayRecords(String installId, List<IntakeRecord> localRecords) {
+        this.localIdPrefix = installId + "-";
+        this.localRecords = new ArrayList<>(localRecords);
+    }
+
+    /**
+     * Adds a record added on this device.
+     *
+     * @param record The new record.
+     */
+    public void addLocal(IntakeRecord record) {
+        localRecords.add(record);
+    }
+
+    /**
+     * Applies a change received from the listener.
+     *
+     * @param type   The type of change: {@link #ADDED}, {@link #MODIFIED} or {@link #REMOVED}.
+     * @param id     The document ID of the record.
+     * @param record The record, as read from the document.
+     * @param legacy Whether the document was written without a client-generated ID.
+     * @return True if the records changed.
+     */
+    public boolean apply(int type, String id, IntakeRecord record, boolean legacy) {
+        if (id.startsWith(localIdPrefix) || matchedIds.contains(id)) {
+            // Already in the local records
+            return false;
+        }
+        if (type == REMOVED) {
+            return remoteRecords.remove(id) != null;
+        }
+        if (legacy && type == ADDED && matchLocal(record)) {
+            matchedIds.add(id);
+            return false;
+        }
+        IntakeRecord previous = remoteRecords.put(id, record);
+        return previous == null || previous.getAmount() != record.getAmount()
+                || previous.getTimestamp() != record.getTimestamp();
+    }
+
+    /**
+     * Gets all of today's records, ordered by time.
+     *
+     * @return A new list of the records.
+     */
+    public List<IntakeRecord> getRecords() {
+        List<IntakeRecord> all = new ArrayList<>(localRecords);
+        all.addAll(remoteRecords.values());
+        Collections.sort(all, (a, b) -> Long.compare(a.getTimestamp(), b.getTimestamp()));
+        return all;
+    }
+
+    /**
+     * Gets the total amount of today's records.
+     *
+     * @return The total in milliliters.
+     */
+    public int getTotal() {
+        int total = 0;
+        for (IntakeRecord record : localRecords) {
+            total += record.getAmount();
+        }
+        for (IntakeRecord record : remoteRecords.values()) {
+            total += record.getAmount();
+        }
+        return total;
+    }
+
+    /**
+     * Finds a local record with the same time and amount that is not matched yet, and marks it
+     * as matched.
+     */
+    private boolean matchLocal(IntakeRecord record) {
+        for (IntakeRecord local : localRecords) {
+            if (!matchedLocalRecords.contains(local) && local.getAmount() == record.getAmount()
+                    && local.getTime().equals(record.getTime())) {
+                matchedLocalRecords.add(local);
+                return true;
+            }
+        }
+        return false;
+    }
+}
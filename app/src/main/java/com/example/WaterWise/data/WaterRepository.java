@@ -0,0 +1,1606 @@
+package com.example.WaterWise.data;
+
+import android.app.Application;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.WaterWise.history.DailyIntakeBuckets;
+import com.example.WaterWise.history.HistoryPage;
+import com.example.WaterWise.history.HistoryPager;
+import com.example.WaterWise.history.HistoryRowFormatter;
+import com.example.WaterWise.home.IntakeRecord;
+import com.example.WaterWise.utils.FutureScope;
+import com.example.WaterWise.utils.Futures;
+import com.example.WaterWise.utils.HistoryUtils;
+import com.example.WaterWise.utils.HomeUtils;
+import com.example.WaterWise.utils.StartupTrace;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WaterRepository is the single, process-wide owner of the signed-in user's data. It keeps the
+ * profile and today's records in memory as LiveData, which the DataModel of every screen exposes,
+ * so navigating between screens does not reload anything. The history is loaded a page at a time
+ * for the screen showing it, through a {@link DailyTotalsCache} in front of a local store that is
+ * synced incrementally past a persisted watermark. It reads from the local store and intake log on a background thread
+ * and uses Firestore as a sync target; network refreshes are skipped while the in-memory data is
+ * fresh. Today's intake is an {@link IntakeCounter} merged with the one of the daily aggregate,
+ * so devices logging at the same time converge without overwriting each other.
+ *
+ * Startup is staged: the LiveData fields are exposed right away with a loading state, local data is
+ * loaded in the background, and network refreshes start only after the first frame. Each stage is
+ * timed in a shared {@link StartupTrace}.
+ */
+public class WaterRepository {
+    // Firebase Firestore helper for handling Firestore operations
+    private FirestoreHelper firestoreHelper;
+
+    // Legacy SharedPreferences keys, read once to migrate into the local store
+    private static final String KEY_GOAL = "key_goal";
+    private static final String KEY_INTAKE = "key_intake";
+    private static final String KEY_RECORDS = "key_records";
+    private static final String KEY_NAME = "key_name";
+    private static final String KEY_WEIGHT = "key_weight";
+    private static final String KEY_GENDER = "key_gender";
+    private static final String KEY_SIGN_UP_DATE = "key_sign_up_date";
+    private static final String KEY_LAST_RESET_DATE = "key_last_reset_date";
+    private static final String KEY_DAILY_AGGREGATES_READY = "key_daily_aggregates_ready";
+
+    // Default values for user properties
+    public static final int DEFAULT_GOAL = 2000;
+    public static final int DEFAULT_INTAKE = 0;
+    public static final int DEFAULT_WEIGHT = 40;
+    public static final String DEFAULT_NAME = "User";
+    public static final String DEFAULT_GENDER = "Female";
+    public static final String DEFAULT_SIGN_UP_DATE = "2024-01-01";
+
+    // Data fetched from Firestore within this time is not fetched again
+    static final long FRESHNESS_MILLIS = 5 * 60 * 1000;
+
+    // The repository of the signed-in user
+    private static WaterRepository instance;
+
+    private final Application application;
+    // Local SQLite store for the profile and bookkeeping values
+    private final LocalStore localStore;
+    private final String userId;
+
+    // Append-only log of intake records
+    private IntakeLog intakeLog;
+    // Memory-mapped daily totals
+    private DailyTotalsStore dailyTotalsStore;
+    // Sends the records waiting in the intake log to Firestore, used on the disk thread
+    private IntakeOutbox outbox;
+    // Oldest unsynced record time last stored for the compaction worker, used on the disk thread
+    private long storedOldestUnsyncedTimestamp = -1;
+    // Random ID of this installation, prefixing the IDs of the records written here
+    private volatile String installId;
+    // Single thread for all local reads and writes, so they stay ordered and off the main thread
+    private static final ScheduledExecutorService diskExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Coalesces profile edits into merged writes of the user document
+    private final ProfileWriter profileWriter;
+    // Timings of the cold start, measured from the process start
+    private static final StartupTrace startupTrace = new StartupTrace(Process.getStartElapsedRealtime());
+
+    // LiveData fields for reactive UI updates
+    private MutableLiveData<Integer> goal = new MutableLiveData<>();
+    private MutableLiveData<Integer> intake = new MutableLiveData<>();
+    private MutableLiveData<String> name = new MutableLiveData<>();
+    private MutableLiveData<Integer> weight = new MutableLiveData<>();
+    private MutableLiveData<String> gender = new MutableLiveData<>();
+    private MutableLiveData<List<IntakeRecord>> records = new MutableLiveData<>(new ArrayList<>());
+    private MutableLiveData<String> signUpDate = new MutableLiveData<>();
+    private MutableLiveData<Boolean> loading = new MutableLiveData<>(true);
+    private MutableLiveData<Integer> pendingSyncCount = new MutableLiveData<>(0);
+    private MutableLiveData<Integer> failedSyncCount = new MutableLiveData<>(0);
+
+    // Network work waits until the local data is loaded and the first frame is drawn
+    private boolean localDataLoaded;
+    private boolean firstFrameDrawn;
+    private final List<Runnable> pendingNetworkWork = new ArrayList<>();
+    // Work waiting only for the local data, such as a background sync
+    private final List<Runnable> pendingLocalWork = new ArrayList<>();
+    // The day the local data was loaded for, to reload it after midnight
+    private long loadedEpochDay;
+
+    // When the sign-up date was last fetched from Firestore, or -1 if never
+    private long profileRefreshedAt = -1;
+    // Daily totals of the history, in memory in front of the daily totals store
+    private final DailyTotalsCache historyCache = new DailyTotalsCache(this::loadDailyTotals);
+    // Whether a history sync is waiting for Firestore
+    private boolean historySyncing;
+    // Run once the history sync in progress has finished
+    private final List<Runnable> historySyncCallbacks = new ArrayList<>();
+
+    // Today's records from this device and others, or null until the local data is loaded
+    private TodayRecords todayRecords;
+    // Today's intake from this device and others, or null until the local data is loaded
+    private IntakeCounter todayCounter;
+    // Firestore listeners, attached while the app is in the foreground
+    private ListenerRegistration userListener;
+    // Whether the user document listener has received a snapshot from the server
+    private boolean userDataFromServer;
+    // Whether the sign-up date fetch waits for the user document listener's server snapshot
+    private boolean signUpDateCheckPending;
+    private ListenerRegistration recordsListener;
+    private long listeningEpochDay;
+    // Whether the records listener has received a snapshot from the server since it was attached
+    private boolean recordsFromServer;
+    private ListenerRegistration dailyCounterListener;
+    // Attaches and detaches the listeners as the app moves between the foreground and the background
+    private final AppForeground.Listener foregroundListener = new AppForeground.Listener() {
+        @Override
+        public void onForeground() {
+            WaterRepository.this.onForeground();
+        }
+
+        @Override
+        public void onBackground() {
+            WaterRepository.this.onBackground();
+        }
+    };
+
+    // Whether the users/{uid}/daily aggregates are known to exist
+    private volatile boolean dailyAggregatesReady;
+    // Reads waiting for the one-time backfill of the daily aggregates to finish
+    private final List<Runnable> pendingAggregateReads = new ArrayList<>();
+
+    /**
+     * Gets the repository of the signed-in user, creating it on first use. If a different user
+     * signed in since the last call, the previous user's repository is closed and replaced.
+     * Must be called on the main thread.
+     *
+     * @param application The application instance.
+     * @return The repository of the signed-in user.
+     */
+    public static WaterRepository getInstance(Application application) {
+        String userId = FirebaseAuth.getInstance().getCurrentUser().getUid();
+        if (instance == null || !instance.userId.equals(userId)) {
+            if (instance != null) {
+                instance.close();
+            }
+            instance = new WaterRepository(application, userId);
+        }
+        return instance;
+    }
+
+    /**
+     * Creates the repository of a user. Initializes the local store and Firestore helper, then
+     * loads the local data on a background thread. Syncing with Firestore starts once the data is
+     * loaded and the first frame is drawn.
+     *
+     * @param application The application instance.
+     * @param userId      The Firebase user ID.
+     */
+    private WaterRepository(Application application, String userId) {
+        this.application = application;
+        this.userId = userId;
+        firestoreHelper = new FirestoreHelper();
+        profileWriter = new ProfileWriter(new ProfileWriter.Scheduler() {
+            @Override
+            public void schedule(Runnable task, long delayMillis) {
+                mainHandler.postDelayed(task, delayMillis);
+            }
+
+            @Override
+            public void cancel(Runnable task) {
+                mainHandler.removeCallbacks(task);
+            }
+        }, this::writeProfileFields);
+        localStore = LocalStore.getInstance(application, userId);
+        AppForeground.getInstance().addListener(foregroundListener);
+        RecordCompactionWorker.schedule(application);
+        SyncWorker.schedule(application);
+        diskExecutor.execute(() -> {
+            traceBegin(StartupTrace.STAGE_LOCAL_STORE_OPEN);
+            openIntakeLog();
+            openOutbox();
+            openDailyTotalsStore();
+            migrateFromPreferences();
+            traceEnd(StartupTrace.STAGE_LOCAL_STORE_OPEN);
+        });
+        loadLocalData();
+        // Resend the records left unsynced by earlier runs
+        whenReadyForNetwork(() -> diskExecutor.execute(() -> {
+            if (outbox != null) {
+                outbox.flush();
+            }
+        }));
+    }
+
+    /**
+     * Starts a new day if needed and loads the profile and today's records from local storage
+     * on the disk thread, then publishes that the local data is loaded.
+     */
+    private void loadLocalData() {
+        long epochDay = todayEpochDay();
+        diskExecutor.execute(() -> {
+            // Reset intake data if a new day starts
+            checkAndResetDataIfNeeded();
+            // Load data from the local store
+            loadAllData();
+            IntakeCounter counter = loadTodayCounter(epochDay);
+            mainHandler.post(() -> {
+                loadedEpochDay = epochDay;
+                localDataLoaded = true;
+                loading.setValue(false);
+                todayRecords = new TodayRecords(installId, records.getValue());
+                todayCounter = counter;
+                intake.setValue((int) counter.total());
+                List<Runnable> localWork = new ArrayList<>(pendingLocalWork);
+                pendingLocalWork.clear();
+                for (Runnable work : localWork) {
+                    work.run();
+                }
+                if (recordsListener != null && listeningEpochDay != epochDay) {
+                    // The listeners still follow the previous day
+                    stopListeningToFirestore();
+                    startListeningToFirestore();
+                }
+                runPendingNetworkWork();
+            });
+        });
+    }
+
+    /**
+     * Closes the local files of this repository, after any pending disk work.
+     */
+    private void close() {
+        AppForeground.getInstance().removeListener(foregroundListener);
+        stopListeningToFirestore();
+        // Send the pending profile edits to the previous user's document right away
+        profileWriter.flush();
+        diskExecutor.execute(() -> {
+            if (outbox != null) {
+                outbox.close();
+            }
+            try {
+                if (intakeLog != null) {
+                    intakeLog.close();
+                }
+                if (dailyTotalsStore != null) {
+                    dailyTotalsStore.close();
+                }
+            } catch (IOException e) {
+                Log.w("WaterRepository", "Failed to close local files", e);
+            }
+        });
+    }
+
+    /**
+     * Called by each activity once its first frame has been drawn. Network refreshes wait for
+     * this, so they do not compete with the first frame, and are skipped while the data in
+     * memory is fresh. If the day changed since the local data was loaded, it is reloaded.
+     */
+    public void onFirstFrame() {
+        traceMark(StartupTrace.STAGE_FIRST_RENDER);
+        firstFrameDrawn = true;
+        reloadIfDayChanged();
+        pendingNetworkWork.add(this::refreshProfileIfStale);
+        runPendingNetworkWork();
+    }
+
+    /**
+     * Called when the first activity of the app is started. Reloads the local data if the day
+     * changed while the app was in the background, and attaches the Firestore listeners again.
+     */
+    private void onForeground() {
+        reloadIfDayChanged();
+        whenReadyForNetwork(this::startListeningToFirestore);
+    }
+
+    /**
+     * Called when the last started activity of the app is stopped. Detaches the Firestore
+     * listeners, so no snapshots are received in the background, and sends pending profile edits.
+     */
+    private void onBackground() {
+        stopListeningToFirestore();
+        profileWriter.flush();
+        Integer pending = pendingSyncCount.getValue();
+        if (pending != null && pending > 0) {
+            // Sent by the background sync once the device is online
+            SyncWorker.syncSoon(application);
+        }
+    }
+
+    /**
+     * Reloads the local data if the day changed since it was loaded. Must be called on the main thread.
+     */
+    private void reloadIfDayChanged() {
+        if (localDataLoaded && loadedEpochDay != todayEpochDay()) {
+            localDataLoaded = false;
+            loading.setValue(true);
+            loadLocalData();
+        }
+    }
+
+    /**
+     * Attaches the Firestore listeners, and fetches the sign-up date unless it was fetched recently.
+     * While the user document listener is attached, the fetch waits for its first snapshot from
+     * the server, which the fetch then reads instead of requesting the document again.
+     */
+    private void refreshProfileIfStale() {
+        startListeningToFirestore();
+        long now = SystemClock.elapsedRealtime();
+        if (profileRefreshedAt >= 0 && now - profileRefreshedAt < FRESHNESS_MILLIS) {
+            return;
+        }
+        profileRefreshedAt = now;
+        if (userListener != null && !userDataFromServer) {
+            signUpDateCheckPending = true;
+        } else {
+            checkAndFetchSignUpDate();
+        }
+    }
+
+    /**
+     * Runs network work once the local data is loaded and the first frame is drawn, or queues
+     * it until then. Must be called on the main thread.
+     *
+     * @param work The network work to run.
+     */
+    private void whenReadyForNetwork(Runnable work) {
+        if (localDataLoaded && firstFrameDrawn) {
+            work.run();
+        } else {
+            pendingNetworkWork.add(work);
+        }
+    }
+
+    /**
+     * Runs the given work once the local data is loaded, without waiting for a first frame,
+     * since background work may run without any activity. Must be called on the main thread.
+     *
+     * @param work The work to run.
+     */
+    private void whenLocalDataLoaded(Runnable work) {
+        if (localDataLoaded) {
+            work.run();
+        } else {
+            pendingLocalWork.add(work);
+        }
+    }
+
+    /**
+     * Syncs with Firestore for the {@link SyncWorker}: sends every record waiting in the outbox,
+     * merges the counter of today's daily aggregate and syncs the history past its watermark,
+     * so the screens find everything in the local state. Must be called on the main thread.
+     *
+     * @param callback The callback to indicate whether the sync succeeded and when to run the
+     *                 next one, called on the main thread.
+     */
+    public void syncInBackground(BackgroundSyncCallback callback) {
+        whenLocalDataLoaded(() -> diskExecutor.execute(() -> {
+            if (outbox == null) {
+                mainHandler.post(() -> refreshInBackground(false, callback));
+                return;
+            }
+            outbox.drain(drained -> mainHandler.post(() -> refreshInBackground(drained, callback)));
+        }));
+    }
+
+    /**
+     * Refreshes today's intake counter and the history once the outbox was drained, then
+     * reports the end of the background sync with the delay before the next one.
+     */
+    private void refreshInBackground(boolean drained, BackgroundSyncCallback callback) {
+        long epochDay = loadedEpochDay;
+        firestoreHelper.fetchDailyCounter(HistoryUtils.formatEpochDay(epochDay), (counter, fromCache) -> {
+            if (counter != null && todayCounter != null && loadedEpochDay == epochDay && todayCounter.merge(counter)) {
+                publishTodayCounter();
+            }
+            Runnable finish = () -> diskExecutor.execute(() -> {
+                long nextDelayMillis = SyncPacer.nextDelayMillis(loadRecentTimestamps(), System.currentTimeMillis());
+                mainHandler.post(() -> callback.onBackgroundSyncComplete(drained && counter != null, nextDelayMillis));
+            });
+            long startEpochDay;
+            try {
+                startEpochDay = HistoryUtils.toEpochDay(signUpDate.getValue());
+            } catch (IllegalArgumentException e) {
+                finish.run();
+                return;
+            }
+            syncHistoryIfStale(startEpochDay, null, null);
+            whenHistorySynced(finish);
+        });
+    }
+
+    /**
+     * Gets the times of the records logged within {@link SyncPacer#PACE_WINDOW_MILLIS}, in the
+     * order they were logged. Runs on the disk thread.
+     *
+     * @return The timestamps, empty if the intake log cannot be read.
+     */
+    private List<Long> loadRecentTimestamps() {
+        List<Long> timestamps = new ArrayList<>();
+        if (intakeLog == null) {
+            return timestamps;
+        }
+        try {
+            for (IntakeLog.Entry entry : intakeLog.readSince(System.currentTimeMillis() - SyncPacer.PACE_WINDOW_MILLIS)) {
+                timestamps.add(entry.timestamp);
+            }
+        } catch (IOException e) {
+            Log.w("WaterRepository", "Failed to read intake log", e);
+        }
+        return timestamps;
+    }
+
+    /**
+     * Runs the network work queued by whenReadyForNetwork, if it can run now.
+     */
+    private void runPendingNetworkWork() {
+        if (!localDataLoaded || !firstFrameDrawn) {
+            return;
+        }
+        List<Runnable> work = new ArrayList<>(pendingNetworkWork);
+        pendingNetworkWork.clear();
+        for (Runnable pendingWork : work) {
+            pendingWork.run();
+        }
+    }
+
+    /**
+     * Returns the trace of the app's cold start.
+     *
+     * @return The startup trace, with offsets measured from the process start.
+     */
+    public static StartupTrace getStartupTrace() {
+        return startupTrace;
+    }
+
+    private static void traceBegin(String stage) {
+        startupTrace.begin(stage, SystemClock.elapsedRealtime());
+    }
+
+    private static void traceEnd(String stage) {
+        if (startupTrace.end(stage, SystemClock.elapsedRealtime())) {
+            Log.i("StartupTrace", startupTrace.describe(stage));
+        }
+    }
+
+    private static void traceMark(String stage) {
+        if (startupTrace.mark(stage, SystemClock.elapsedRealtime())) {
+            Log.i("StartupTrace", startupTrace.describe(stage));
+        }
+    }
+
+    /**
+     * Marks the first values shown from the local Firestore cache or confirmed by the server,
+     * to compare cache-served and server-served first paints.
+     */
+    private static void tracePaint(boolean fromCache) {
+        traceMark(fromCache ? StartupTrace.STAGE_FIRST_CACHE_PAINT : StartupTrace.STAGE_FIRST_SERVER_PAINT);
+    }
+
+    /**
+     * Opens the user's intake log. Runs on the disk thread.
+     */
+    private void openIntakeLog() {
+        try {
+            intakeLog = new IntakeLog(new File(application.getFilesDir(), "intake_" + userId + ".log"));
+        } catch (IOException e) {
+            Log.e("WaterRepository", "Failed to open intake log", e);
+        }
+    }
+
+    /**
+     * Creates the outbox sending the records of the intake log to Firestore. Firestore callbacks
+     * arrive on the main thread and are handed back to the disk thread. Runs on the disk thread.
+     */
+    private void openOutbox() {
+        installId = localStore.getMetadata(LocalStore.META_INSTALL_ID);
+        if (installId == null) {
+            installId = UUID.randomUUID().toString();
+            localStore.setMetadata(LocalStore.META_INSTALL_ID, installId);
+        }
+        if (intakeLog == null) {
+            return;
+        }
+        outbox = new IntakeOutbox(intakeLog, installId,
+                (task, delayMillis) -> diskExecutor.schedule(task, delayMillis, TimeUnit.MILLISECONDS),
+                new IntakeOutbox.Sink() {
+                    @Override
+                    public void write(Map<String, IntakeLog.Entry> recordsById, FirestoreHelper.SaveCallback callback) {
+                        firestoreHelper.saveWaterIntakeRecords(recordsById, installId,
+                                success -> diskExecutor.execute(() -> callback.onSaved(success)));
+                    }
+
+                    @Override
+                    public void findExisting(List<String> recordIds, IntakeOutbox.ExistingRecordsCallback callback) {
+                        firestoreHelper.fetchExistingRecordIds(recordIds,
+                                existingIds -> diskExecutor.execute(() -> callback.onExistingLoaded(existingIds)));
+                    }
+                },
+                (pendingCount, failedCount) -> {
+                    pendingSyncCount.postValue(pendingCount);
+                    failedSyncCount.postValue(failedCount);
+                    storeOldestUnsyncedTimestamp();
+                });
+    }
+
+    /**
+     * Stores the time of the oldest record the outbox may still send, empty if there is none,
+     * so the {@link RecordCompactionWorker} keeps the raw records from that day on. Runs on the
+     * disk thread.
+     */
+    private void storeOldestUnsyncedTimestamp() {
+        if (outbox == null) {
+            return;
+        }
+        long oldest = outbox.getOldestUnsyncedTimestamp();
+        if (oldest == storedOldestUnsyncedTimestamp) {
+            return;
+        }
+        storedOldestUnsyncedTimestamp = oldest;
+        localStore.setMetadata(LocalStore.META_OLDEST_UNSYNCED_TIMESTAMP,
+                oldest == Long.MAX_VALUE ? "" : Long.toString(oldest));
+    }
+
+    /**
+     * Opens the user's daily totals store. If it lost its totals, the history watermark is
+     * cleared so the next sync fetches the whole history again. Runs on the disk thread.
+     */
+    private void openDailyTotalsStore() {
+        try {
+            dailyTotalsStore = new DailyTotalsStore(new File(application.getFilesDir(), "daily_totals_" + userId + ".bin"));
+        } catch (IOException e) {
+            Log.e("WaterRepository", "Failed to open daily totals", e);
+            return;
+        }
+        String storedWatermark = localStore.getMetadata(LocalStore.META_HISTORY_WATERMARK);
+        HistorySyncWatermark watermark = HistorySyncWatermark.decode(storedWatermark, dailyTotalsStore);
+        if (storedWatermark != null && !watermark.isSynced()) {
+            Log.w("WaterRepository", "Daily totals were reset, the history will be fetched again");
+            localStore.setMetadata(LocalStore.META_HISTORY_WATERMARK, null);
+            historyCache.setWatermark(watermark);
+        }
+    }
+
+    /**
+     * Starts a new day if the last reset happened on an earlier date: yesterday's synced records
+     * are dropped from the intake log. Today's intake needs
+     * no reset, since it is the daily total stored for today. Runs on the disk thread.
+     */
+    private void checkAndResetDataIfNeeded() {
+        String currentDate = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
+        String lastResetDate = localStore.getMetadata(LocalStore.META_LAST_RESET_DATE);
+
+        if (lastResetDate == null || !lastResetDate.equals(currentDate)) {
+            compactIntakeLog();
+            localStore.setMetadata(LocalStore.META_LAST_RESET_DATE, currentDate);
+        } else{
+            Log.d("WaterRepository", "No reset needed.");
+        }
+    }
+
+    /**
+     * Returns a MutableLiveData object that holds the user's daily water intake goal.
+     * This value is observed to update the UI when the goal changes.
+     *
+     * @return MutableLiveData<Integer> representing the user's water intake goal in milliliters.
+     */
+    public MutableLiveData<Integer> getGoal() { return goal; }
+
+    /**
+     * Returns a MutableLiveData object that holds the user's current water intake.
+     * This value is observed to update the UI when the intake changes.
+     *
+     * @return MutableLiveData<Integer> representing the user's current water intake in milliliters.
+     */
+    public MutableLiveData<Integer> getIntake() { return intake; }
+
+    /**
+     * Returns a MutableLiveData object that holds the user's name.
+     * This value is observed to update the UI when the user's name changes.
+     *
+     * @return MutableLiveData<String> representing the user's name.
+     */
+    public MutableLiveData<String> getName() { return name; }
+
+    /**
+     * Returns a MutableLiveData object that holds the user's weight.
+     * This value is observed to update the UI when the user's weight changes.
+     *
+     * @return MutableLiveData<Integer> representing the user's weight (in kilograms).
+     */
+    public MutableLiveData<Integer> getWeight() { return weight; }
+
+    /**
+     * Returns a MutableLiveData object that holds the user's gender.
+     * This value is observed to update the UI when the user's gender changes.
+     *
+     * @return MutableLiveData<String> representing the user's gender.
+     */
+    public MutableLiveData<String> getGender() { return gender; }
+
+    /**
+     * Returns a MutableLiveData object that holds a list of IntakeRecord objects.
+     * These records represent individual instances of water intake throughout the day.
+     * This value is observed to update the UI when the intake records change.
+     *
+     * @return MutableLiveData<List<IntakeRecord>> representing the list of intake records.
+     */
+    public MutableLiveData<List<IntakeRecord>> getRecords() { return records; }
+
+    /**
+     * Returns a MutableLiveData object that is true until the local data has been loaded.
+     * The other LiveData fields hold their initial values while this is true.
+     *
+     * @return MutableLiveData<Boolean> representing whether the local data is still loading.
+     */
+    public MutableLiveData<Boolean> isLoading() { return loading; }
+
+    /**
+     * Returns a MutableLiveData object that holds the user's sign-up date.
+     * This value is observed to update the UI when the sign-up date changes.
+     *
+     * @return MutableLiveData<String> representing the user's sign-up date.
+     */
+    public MutableLiveData<String> getSignUpDate() { return signUpDate; }
+
+    /**
+     * Returns a MutableLiveData object that holds the number of intake records not yet synced
+     * with Firestore, including those being sent.
+     *
+     * @return MutableLiveData<Integer> representing the number of pending records.
+     */
+    public MutableLiveData<Integer> getPendingSyncCount() { return pendingSyncCount; }
+
+    /**
+     * Returns a MutableLiveData object that holds the number of intake records whose last sync
+     * attempt failed and that wait for a retry.
+     *
+     * @return MutableLiveData<Integer> representing the number of failed records.
+     */
+    public MutableLiveData<Integer> getFailedSyncCount() { return failedSyncCount; }
+
+    /**
+     * Sets the user's name, updates the local store, and queues the change for Firestore.
+     *
+     * @param nameValue The new name of the user.
+     */
+    public void setName(String nameValue) {
+        name.setValue(nameValue);
+        diskExecutor.execute(() -> localStore.updateProfile(LocalStore.COLUMN_NAME, nameValue));
+        profileWriter.set("name", nameValue);
+    }
+
+    /**
+     * Sets the user's weight, updates the local store, and queues the change for Firestore.
+     *
+     * @param weightValue The new weight of the user.
+     */
+    public void setWeight(int weightValue) {
+        weight.setValue(weightValue);
+        diskExecutor.execute(() -> localStore.updateProfile(LocalStore.COLUMN_WEIGHT, weightValue));
+        profileWriter.set("weight", weightValue);
+    }
+
+    /**
+     * Sets the user's gender, updates the local store, and queues the change for Firestore.
+     *
+     * @param genderValue The new gender of the user.
+     */
+    public void setGender(String genderValue) {
+        gender.setValue(genderValue);
+        diskExecutor.execute(() -> localStore.updateProfile(LocalStore.COLUMN_GENDER, genderValue));
+        profileWriter.set("gender", genderValue);
+    }
+
+    /**
+     * Sets the user's intake records. Records are persisted one at a time by addRecord.
+     *
+     * @param newRecords The new list of intake records.
+     */
+    public void setRecords(List<IntakeRecord> newRecords) {
+        records.setValue(newRecords);
+    }
+
+    /**
+     * Sets the user's daily water intake goal, updates the local store, and queues the change for Firestore.
+     *
+     * @param goalValue The new daily intake goal.
+     */
+    public void setGoal(int goalValue) {
+        goal.setValue(goalValue);
+        diskExecutor.execute(() -> localStore.updateProfile(LocalStore.COLUMN_GOAL, goalValue));
+        profileWriter.set("goal", goalValue);
+    }
+
+    /**
+     * Publishes the total of today's intake counter and stores the counter, with the total as
+     * today's daily total.
+     */
+    private void publishTodayCounter() {
+        long epochDay = loadedEpochDay;
+        int total = (int) todayCounter.total();
+        String encoded = epochDay + "/" + todayCounter.encode();
+        // Queued before observers run, so a history page they reload already sees the new total
+        diskExecutor.execute(() -> {
+            writeDailyTotal(epochDay, total);
+            localStore.setMetadata(LocalStore.META_TODAY_COUNTER, encoded);
+        });
+        intake.setValue(total);
+    }
+
+    /**
+     * Adds a new water intake record, updates the LiveData list and appends it to the intake log.
+     * The outbox sends it to Firestore with any other record added around the same time, and
+     * keeps retrying until Firestore confirms the write. The amount is added to this device's
+     * slot of today's intake counter, so it is never lost to a total read from elsewhere.
+     *
+     * @param record The new intake record to be added.
+     */
+    public void addRecord(IntakeRecord record) {
+        if (todayCounter != null) {
+            todayCounter.add(installId, record.getAmount());
+            publishTodayCounter();
+        }
+        List<IntakeRecord> currentRecords = records.getValue();
+        if (todayRecords != null) {
+            todayRecords.addLocal(record);
+            setRecords(todayRecords.getRecords());
+        } else if (currentRecords != null) {
+            currentRecords.add(record);
+            setRecords(currentRecords);
+        }
+        diskExecutor.execute(() -> {
+            if (intakeLog == null || outbox == null) {
+                Log.e("WaterRepository", "Intake log is not available, record not saved");
+                return;
+            }
+            try {
+                intakeLog.append(record.getTimestamp(), record.getAmount(), IntakeLog.STATE_PENDING);
+                outbox.onRecordAdded();
+            } catch (IOException e) {
+                Log.e("WaterRepository", "Failed to append intake record", e);
+            }
+        });
+    }
+
+    /**
+     * Drops synced entries from previous days out of the intake log. Their amounts are already
+     * counted in the daily totals and in Firestore. Runs on the disk thread.
+     */
+    private void compactIntakeLog() {
+        IntakeLog log = intakeLog;
+        if (log == null) {
+            return;
+        }
+        try {
+            log.compact(HomeUtils.startOfDay(System.currentTimeMillis()));
+        } catch (IOException e) {
+            Log.w("WaterRepository", "Failed to compact intake log", e);
+        }
+    }
+
+    /**
+     * Sets the user's sign-up date, saves it to the local store and to Firestore.
+     *
+     * @param signUpDateValue The sign-up date of the user.
+     */
+    public void setSignUpDate(String signUpDateValue) {
+        signUpDate.setValue(signUpDateValue);
+        diskExecutor.execute(() -> localStore.updateProfile(LocalStore.COLUMN_SIGN_UP_DATE, signUpDateValue));
+        firestoreHelper.saveSignUpDate(signUpDateValue);
+    }
+
+    /**
+     * Checks if the sign-up date is available in LiveData.
+     * If not, it attempts to fetch the sign-up date from Firestore.
+     * The fetched sign-up date is then saved to LiveData and the local store, without writing it back to Firestore.
+     */
+    private void checkAndFetchSignUpDate() {
+        // Check if sign-up date is already available in LiveData
+        if (getSignUpDate().getValue() == null || getSignUpDate().getValue().isEmpty() ||
+                getSignUpDate().getValue().equals(DEFAULT_SIGN_UP_DATE)) {
+
+            // Sign-up date is not available, so we fetch it from Firestore
+            // The cached date is shown first; the server's is passed only if it differs
+            firestoreHelper.fetchSignUpDate((fetchedSignUpDateStr, fromCache) -> {
+                traceMark(StartupTrace.STAGE_FIRST_FIRESTORE_RESPONSE);
+                if (fetchedSignUpDateStr != null) {
+                    tracePaint(fromCache);
+                    if (fetchedSignUpDateStr.equals(signUpDate.getValue())) {
+                        return;
+                    }
+                    // If a valid sign-up date is fetched, save it to LiveData and the local store
+                    signUpDate.setValue(fetchedSignUpDateStr);
+                    diskExecutor.execute(() ->
+                            localStore.updateProfile(LocalStore.COLUMN_SIGN_UP_DATE, fetchedSignUpDateStr));
+                } else {
+                    // Log an error if fetching the sign-up date from Firestore failed
+                    Log.e("WaterRepository", "Failed to fetch sign-up date from Firestore.");
+                }
+            });
+        } else {
+            // Sign-up date is already available, so log this information
+            Log.d("WaterRepository", "Sign-up date is already available: " + getSignUpDate().getValue());
+        }
+    }
+
+
+    /**
+     * Loads all data from the local store and intake log. Runs on the disk thread.
+     */
+    private void loadAllData() {
+        LocalStore.Profile profile = localStore.loadProfile();
+        if (profile == null) {
+            profile = new LocalStore.Profile();
+        }
+        goal.postValue(profile.goal != null ? profile.goal : DEFAULT_GOAL);
+        loadRecords();
+        name.postValue(profile.name != null && !profile.name.isEmpty() ? profile.name : DEFAULT_NAME);
+        weight.postValue(profile.weight != null ? profile.weight : DEFAULT_WEIGHT);
+        gender.postValue(profile.gender != null && !profile.gender.isEmpty() ? profile.gender : DEFAULT_GENDER);
+        signUpDate.postValue(readSignUpDate(profile));
+        dailyAggregatesReady = Boolean.parseBoolean(localStore.getMetadata(LocalStore.META_DAILY_AGGREGATES_READY));
+        historyCache.setWatermark(HistorySyncWatermark.decode(localStore.getMetadata(LocalStore.META_HISTORY_WATERMARK)));
+    }
+
+    /**
+     * Loads today's intake counter: the counter stored for today, with this device's slot
+     * raised to the total of today's records in the intake log. Runs on the disk thread.
+     *
+     * @param epochDay The epoch day of today.
+     * @return The counter, with only this device's slot if none was stored for today.
+     */
+    private IntakeCounter loadTodayCounter(long epochDay) {
+        IntakeCounter counter = new IntakeCounter();
+        String stored = localStore.getMetadata(LocalStore.META_TODAY_COUNTER);
+        String prefix = epochDay + "/";
+        if (stored != null && stored.startsWith(prefix)) {
+            counter = IntakeCounter.decode(stored.substring(prefix.length()));
+        }
+        if (intakeLog != null) {
+            try {
+                long ownTotal = 0;
+                for (IntakeLog.Entry entry : intakeLog.readSince(HomeUtils.startOfDay(System.currentTimeMillis()))) {
+                    ownTotal += entry.amount;
+                }
+                counter.raise(installId, ownTotal);
+            } catch (IOException e) {
+                Log.e("WaterRepository", "Failed to read intake log", e);
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Loads today's water intake records from the intake log with a sequential scan.
+     * Runs on the disk thread.
+     */
+    private void loadRecords() {
+        traceBegin(StartupTrace.STAGE_RECORDS_DECODE);
+        List<IntakeRecord> savedRecords = new ArrayList<>();
+        if (intakeLog != null) {
+            try {
+                long startOfToday = HomeUtils.startOfDay(System.currentTimeMillis());
+                for (IntakeLog.Entry entry : intakeLog.readSince(startOfToday)) {
+                    savedRecords.add(HomeUtils.createIntakeRecord(entry.timestamp, entry.amount));
+                }
+            } catch (IOException e) {
+                Log.e("WaterRepository", "Failed to read intake log", e);
+            }
+        }
+        traceEnd(StartupTrace.STAGE_RECORDS_DECODE);
+        records.postValue(savedRecords);
+    }
+
+    /**
+     * Copies the data kept by earlier versions in the per-user SharedPreferences file into the
+     * local store and intake log, then deletes that file. Runs once, on the disk thread.
+     */
+    private void migrateFromPreferences() {
+        if (localStore.getMetadata(LocalStore.META_PREFERENCES_MIGRATED) != null) {
+            return;
+        }
+        String sharedPrefsName = "waterwise_prefs_" + userId;
+        SharedPreferences sharedPreferences = application.getSharedPreferences(sharedPrefsName, Context.MODE_PRIVATE);
+        ContentValues profile = new ContentValues();
+        if (sharedPreferences.contains(KEY_NAME)) {
+            profile.put(LocalStore.COLUMN_NAME, sharedPreferences.getString(KEY_NAME, DEFAULT_NAME));
+        }
+        if (sharedPreferences.contains(KEY_GOAL)) {
+            profile.put(LocalStore.COLUMN_GOAL, sharedPreferences.getInt(KEY_GOAL, DEFAULT_GOAL));
+        }
+        if (sharedPreferences.contains(KEY_WEIGHT)) {
+            profile.put(LocalStore.COLUMN_WEIGHT, sharedPreferences.getInt(KEY_WEIGHT, DEFAULT_WEIGHT));
+        }
+        if (sharedPreferences.contains(KEY_GENDER)) {
+            profile.put(LocalStore.COLUMN_GENDER, sharedPreferences.getString(KEY_GENDER, DEFAULT_GENDER));
+        }
+        if (sharedPreferences.contains(KEY_SIGN_UP_DATE)) {
+            profile.put(LocalStore.COLUMN_SIGN_UP_DATE, sharedPreferences.getString(KEY_SIGN_UP_DATE, DEFAULT_SIGN_UP_DATE));
+        }
+        if (profile.size() > 0) {
+            localStore.updateProfile(profile);
+        }
+        String currentDate = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
+        String lastResetDate = sharedPreferences.getString(KEY_LAST_RESET_DATE, null);
+        if (currentDate.equals(lastResetDate)) {
+            // The stored intake belongs to today
+            writeDailyTotal(todayEpochDay(), sharedPreferences.getInt(KEY_INTAKE, DEFAULT_INTAKE));
+        }
+        if (sharedPreferences.getBoolean(KEY_DAILY_AGGREGATES_READY, false)) {
+            localStore.setMetadata(LocalStore.META_DAILY_AGGREGATES_READY, "true");
+        }
+        migrateRecordsFromPreferences(sharedPreferences);
+        localStore.setMetadata(LocalStore.META_PREFERENCES_MIGRATED, "true");
+        application.deleteSharedPreferences(sharedPrefsName);
+    }
+
+    /**
+     * Moves records stored as a JSON list under {@link #KEY_RECORDS} into the intake log.
+     * Those records were already sent to Firestore, so they are logged as synced. A record whose
+     * time cannot be read is logged at the start of its date, and one without a readable date is
+     * skipped, rather than being counted in today's intake. If a previous migration was
+     * interrupted the key is still present, so the partial log is discarded first.
+     *
+     * @param sharedPreferences The legacy preferences holding the records.
+     */
+    private void migrateRecordsFromPreferences(SharedPreferences sharedPreferences) {
+        String json = sharedPreferences.getString(KEY_RECORDS, null);
+        if (json == null || intakeLog == null) {
+            return;
+        }
+        Type type = new TypeToken<List<IntakeRecord>>() {}.getType();
+        List<IntakeRecord> savedRecords = new Gson().fromJson(json, type);
+        SimpleDateFormat dateTimeFormat = new SimpleDateFormat("yyyy-MM-dd hh:mm a", Locale.getDefault());
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        try {
+            intakeLog.clear();
+            int skipped = 0;
+            if (savedRecords != null) {
+                for (IntakeRecord record : savedRecords) {
+                    long timestamp = legacyTimestamp(record, dateTimeFormat, dateFormat);
+                    if (timestamp < 0) {
+                        skipped++;
+                        continue;
+                    }
+                    intakeLog.append(timestamp, record.getAmount(), IntakeLog.STATE_SYNCED);
+                }
+            }
+            if (skipped > 0) {
+                Log.w("WaterRepository", "Skipped " + skipped + " legacy records without a readable date");
+            }
+            sharedPreferences.edit().remove(KEY_RECORDS).commit();
+        } catch (IOException e) {
+            Log.e("WaterRepository", "Failed to migrate records into the intake log", e);
+        }
+    }
+
+    /**
+     * Gets the time of a legacy record from its stored date and time, or the start of its date
+     * if the time cannot be read.
+     *
+     * @param record         The legacy record, possibly null.
+     * @param dateTimeFormat The format of the stored date and time.
+     * @param dateFormat     The format of the stored date.
+     * @return The time in milliseconds since the epoch, or -1 if the date cannot be read.
+     */
+    private static long legacyTimestamp(IntakeRecord record, SimpleDateFormat dateTimeFormat, SimpleDateFormat dateFormat) {
+        if (record == null || record.getDate() == null) {
+            return -1;
+        }
+        if (record.getTime() != null) {
+            try {
+                return dateTimeFormat.parse(record.getDate() + " " + record.getTime()).getTime();
+            } catch (ParseException e) {
+                // Kept on its date below
+            }
+        }
+        try {
+            return dateFormat.parse(record.getDate()).getTime();
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Attaches snapshot listeners to the user document, today's records and today's daily
+     * aggregate, unless they are attached already or the app is in the background. Profile
+     * changes are hydrated, so nothing is written back to Firestore, and each changed record is
+     * applied to today's records on its own. The aggregate's intake counter is merged into
+     * today's, so intake logged on other devices is added without overwriting this device's.
+     */
+    private void startListeningToFirestore() {
+        long epochDay = todayEpochDay();
+        if (!AppForeground.getInstance().isInForeground() || todayRecords == null
+                || (recordsListener != null && listeningEpochDay == epochDay)) {
+            return;
+        }
+        stopListeningToFirestore();
+        listeningEpochDay = epochDay;
+        userListener = firestoreHelper.listenToUserData((profile, fromCache) -> {
+            traceMark(StartupTrace.STAGE_FIRST_FIRESTORE_RESPONSE);
+            hydrateProfile(profile);
+            tracePaint(fromCache);
+            userDataFromServer |= !fromCache;
+            if (userDataFromServer && signUpDateCheckPending) {
+                signUpDateCheckPending = false;
+                checkAndFetchSignUpDate();
+            }
+        });
+        recordsListener = firestoreHelper.listenToRecordsForDate(HistoryUtils.formatEpochDay(epochDay),
+                new FirestoreHelper.RecordChangesCallback() {
+                    private boolean changed;
+
+                    @Override
+                    public void onRecordChanged(int type, String id, IntakeRecord record, boolean legacy) {
+                        if (todayRecords.apply(type, id, record, legacy)) {
+                            changed = true;
+                        }
+                    }
+
+                    @Override
+                    public void onChangesApplied(boolean fromCache) {
+                        if (changed) {
+                            changed = false;
+                            setRecords(todayRecords.getRecords());
+                        }
+                        recordsFromServer |= !fromCache;
+                        tracePaint(!recordsFromServer);
+                    }
+                });
+        dailyCounterListener = firestoreHelper.listenToDailyCounter(HistoryUtils.formatEpochDay(epochDay), (counter, fromCache) -> {
+            // Merging only raises slots, so a snapshot from the cache cannot lower the total
+            if (todayCounter != null && loadedEpochDay == epochDay && todayCounter.merge(counter)) {
+                publishTodayCounter();
+            }
+        });
+    }
+
+    /**
+     * Detaches the Firestore listeners, if they are attached.
+     */
+    private void stopListeningToFirestore() {
+        if (userListener != null) {
+            userListener.remove();
+            userListener = null;
+        }
+        if (recordsListener != null) {
+            recordsListener.remove();
+            recordsListener = null;
+        }
+        if (dailyCounterListener != null) {
+            dailyCounterListener.remove();
+            dailyCounterListener = null;
+        }
+        recordsFromServer = false;
+        userDataFromServer = false;
+        if (signUpDateCheckPending) {
+            // Fetch it on the next start instead
+            signUpDateCheckPending = false;
+            profileRefreshedAt = -1;
+        }
+    }
+
+    /**
+     * Applies profile fields read from Firestore to the LiveData fields and the local store.
+     * Fields with an edit that has not been written yet keep the local value, and fields equal
+     * to the value shown are left alone, so a server snapshot confirming the cached one changes
+     * nothing.
+     *
+     * @param profile The profile fields read from the user document.
+     */
+    private void hydrateProfile(Map<String, Object> profile) {
+        ContentValues values = new ContentValues();
+        for (Map.Entry<String, Object> field : profileWriter.hydrate(profile, this::currentProfileValue).entrySet()) {
+            if (field.getValue().equals(currentProfileValue(field.getKey()))) {
+                // Revalidated with the same value, so observers are not notified again
+                continue;
+            }
+            switch (field.getKey()) {
+                case "name":
+                    name.setValue((String) field.getValue());
+                    values.put(LocalStore.COLUMN_NAME, (String) field.getValue());
+                    break;
+                case "goal":
+                    goal.setValue((Integer) field.getValue());
+                    values.put(LocalStore.COLUMN_GOAL, (Integer) field.getValue());
+                    break;
+                case "weight":
+                    weight.setValue((Integer) field.getValue());
+                    values.put(LocalStore.COLUMN_WEIGHT, (Integer) field.getValue());
+                    break;
+                case "gender":
+                    gender.setValue((String) field.getValue());
+                    values.put(LocalStore.COLUMN_GENDER, (String) field.getValue());
+                    break;
+            }
+        }
+        if (values.size() > 0) {
+            diskExecutor.execute(() -> localStore.updateProfile(values));
+        }
+    }
+
+    /**
+     * Gets the value of a profile field currently shown.
+     *
+     * @param field The name of the field on the user document.
+     * @return The current value, or null if the field is unknown or not loaded.
+     */
+    private Object currentProfileValue(String field) {
+        switch (field) {
+            case "name":
+                return name.getValue();
+            case "goal":
+                return goal.getValue();
+            case "weight":
+                return weight.getValue();
+            case "gender":
+                return gender.getValue();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Sends a merged update of profile fields to Firestore for the profile writer, and logs how
+     * many writes the writer has avoided so far.
+     *
+     * @param fields   The profile fields to write.
+     * @param callback The callback to indicate whether the write was committed.
+     */
+    private void writeProfileFields(Map<String, Object> fields, FirestoreHelper.SaveCallback callback) {
+        firestoreHelper.updateUserFields(fields, success -> {
+            Log.d("WaterRepository", "Profile write " + (success ? "committed" : "failed")
+                    + ": " + profileWriter.getWritesSent() + " writes for " + profileWriter.getEditCount()
+                    + " edits, " + profileWriter.getWritesAvoided() + " writes avoided");
+            callback.onSaved(success);
+        });
+    }
+
+    /**
+     * Sets the range of a history pager to the days from the sign-up date to today, then syncs
+     * the stored history with Firestore unless it was synced recently. Does nothing until the
+     * sign-up date is loaded; call it again once it changes. Must be called on the main thread.
+     *
+     * @param pager The pager backing the history list.
+     * @param scope The scope of the history screen, cancelled when it goes away.
+     */
+    public void loadHistoryRecords(HistoryPager pager, FutureScope scope) {
+        String signUpDateStr = signUpDate.getValue();
+        if (signUpDateStr == null) {
+            return;
+        }
+        long startEpochDay;
+        try {
+            startEpochDay = HistoryUtils.toEpochDay(signUpDateStr);
+        } catch (IllegalArgumentException e) {
+            Log.e("WaterRepository", "Invalid sign-up date: " + signUpDateStr, e);
+            pager.setRange(0, -1);
+            return;
+        }
+        pager.setRange(startEpochDay, todayEpochDay());
+        whenReadyForNetwork(() -> syncHistoryIfStale(startEpochDay, pager, scope));
+    }
+
+    /**
+     * Loads the daily totals of a page of history from the history cache, formats them into rows
+     * on the disk thread and delivers the rows on the main thread. The cache is kept up to date by
+     * {@link #loadHistoryRecords}.
+     *
+     * @param startEpochDay The first day of the page.
+     * @param endEpochDay   The last day of the page.
+     * @param goal          The goal the rows are formatted for.
+     * @param formatter     Formats the rows, on the disk thread.
+     * @param callback      The callback to handle the rows.
+     */
+    public void loadHistoryPage(long startEpochDay, long endEpochDay, int goal, HistoryRowFormatter formatter,
+                                HistoryPager.PageCallback callback) {
+        diskExecutor.execute(() -> {
+            HistoryPage rows = formatter.format(historyCache.get(startEpochDay, endEpochDay), goal);
+            mainHandler.post(() -> callback.onPageLoaded(rows));
+        });
+    }
+
+    /**
+     * Loads the daily totals of the most recent days, up to today, from the history cache on the
+     * disk thread and delivers them on the main thread. The cache is kept up to date by
+     * {@link #loadHistoryRecords}.
+     *
+     * @param days     The number of days, including today.
+     * @param callback The callback to handle the totals.
+     */
+    public void loadRecentDailyTotals(int days, FirestoreHelper.DailyTotalsCallback callback) {
+        diskExecutor.execute(() -> {
+            long todayEpochDay = todayEpochDay();
+            DailyIntakeBuckets totals = historyCache.get(todayEpochDay - days + 1, todayEpochDay);
+            mainHandler.post(() -> callback.onDailyTotalsLoaded(totals));
+        });
+    }
+
+    /**
+     * Syncs the stored history with Firestore if the history cache misses some past days or
+     * today's total expired, unless a sync is already running. Days that changed are reloaded
+     * in the pager, if there is one. Cancelling the scope, if there is one, stops the sync.
+     */
+    private void syncHistoryIfStale(long startEpochDay, HistoryPager pager, FutureScope scope) {
+        if (historySyncing) {
+            return;
+        }
+        historySyncing = true;
+        diskExecutor.execute(() -> {
+            long todayEpochDay = todayEpochDay();
+            if (!historyCache.needsSync(startEpochDay, todayEpochDay, todayEpochDay, SystemClock.elapsedRealtime())) {
+                mainHandler.post(this::finishHistorySync);
+                return;
+            }
+            HistorySyncWatermark watermark = HistorySyncWatermark.decode(localStore.getMetadata(LocalStore.META_HISTORY_WATERMARK));
+            mainHandler.post(() -> whenDailyAggregatesReady(startEpochDay, () -> fetchHistoryChanges(startEpochDay, watermark, pager, scope)));
+        });
+    }
+
+    /**
+     * Runs the given work once the history sync in progress has finished, or right away if none
+     * is running.
+     *
+     * @param work The work to run.
+     */
+    private void whenHistorySynced(Runnable work) {
+        if (historySyncing) {
+            historySyncCallbacks.add(work);
+        } else {
+            work.run();
+        }
+    }
+
+    /**
+     * Marks the history sync as finished and runs the work waiting for it.
+     */
+    private void finishHistorySync() {
+        historySyncing = false;
+        List<Runnable> callbacks = new ArrayList<>(historySyncCallbacks);
+        historySyncCallbacks.clear();
+        for (Runnable callback : callbacks) {
+            callback.run();
+        }
+    }
+
+    /**
+     * Fetches the history that may have changed since the last sync and stores it. Past days
+     * are final, so only the days after the watermark are fetched by date, which is usually just
+     * today, and older days are fetched only if their aggregate was updated since the last sync,
+     * for example by another device that was offline. A first sync fetches the whole history,
+     * and the time of the latest aggregate update, from which the next sync fetches changes.
+     * The days fetched by date arrive in windows, newest first, and each window is stored and
+     * shown as soon as it arrives, so the most recent days show after one round trip however long
+     * the history is. A window that still fails after its retries does not hold back the others,
+     * but the watermark only advances once every query succeeded, so the next load fetches the
+     * missing days again. The sync ends once every window has been stored or has failed, so a
+     * later sync never fetches the same windows alongside it. Cancelling the scope stops the
+     * sync the same way.
+     *
+     * @param startEpochDay The first day of the history.
+     * @param watermark     The watermark of the last sync.
+     * @param pager         The pager to notify of changed days.
+     * @param scope         The scope of the screen that asked for the sync, or null.
+     */
+    private void fetchHistoryChanges(long startEpochDay, HistorySyncWatermark watermark, HistoryPager pager,
+                                     FutureScope scope) {
+        long todayEpochDay = todayEpochDay();
+        List<long[]> ranges = watermark.rangesToFetch(startEpochDay, todayEpochDay);
+        if (ranges.isEmpty() && !watermark.isSynced()) {
+            // The history starts after today, so there is nothing to sync
+            finishHistorySync();
+            return;
+        }
+
+        // Issued before the windows, so a first sync takes the latest update time from before
+        // it read the history, and an update made while the windows are read is fetched next time
+        CompletableFuture<FirestoreHelper.UpdatedTotals> updates = track(scope, watermark.isSynced()
+                ? firestoreHelper.fetchDailyTotalsUpdatedSinceAsync(watermark.getLastUpdateMillis())
+                : firestoreHelper.fetchLatestDailyUpdateAsync());
+        List<CompletableFuture<Integer>> storedWindows = new ArrayList<>();
+        // The ranges are oldest first, so start with the newest, which holds the days on screen
+        for (int r = ranges.size() - 1; r >= 0; r--) {
+            for (CompletableFuture<DailyIntakeBuckets> window
+                    : firestoreHelper.fetchIntakeWindowsAsync(ranges.get(r)[0], ranges.get(r)[1])) {
+                storedWindows.add(settled(track(scope, window)
+                        .thenCompose(fetched -> storeHistoryWindow(fetched, todayEpochDay, pager))));
+            }
+        }
+        // Every window has been stored or has failed by then, so no fetch of this sync is left
+        // running when the next one can start
+        Futures.allAsList(storedWindows).thenCombine(settled(updates), (changedCounts, updated) -> {
+            if (updated == null || changedCounts.contains(null)) {
+                Log.d("WaterRepository", "History sync incomplete, keeping the windows stored so far.");
+                finishHistorySync();
+            } else {
+                storeHistoryChanges(startEpochDay, todayEpochDay, changedCounts, updated.getTotals(),
+                        updated.getLatestMillis(), watermark, pager);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Gets a future completed with the result of another once it completes, or with null if it
+     * fails or is cancelled, so waiting on several of them never stops at the first failure.
+     */
+    private static <T> CompletableFuture<T> settled(CompletableFuture<T> future) {
+        return future.handle((result, e) -> {
+            if (e != null) {
+                Log.d("WaterRepository", "History sync step failed", e);
+                return null;
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Tracks a future in a scope, if there is one.
+     */
+    private static <T> CompletableFuture<T> track(FutureScope scope, CompletableFuture<T> future) {
+        return scope != null ? scope.track(future) : future;
+    }
+
+    /**
+     * Merges a window of fetched history into the daily totals store and reloads its changed
+     * days in the pager. Days with records not synced yet keep their local total if it is
+     * larger, since the server does not have those records yet.
+     *
+     * @param fetched       The daily totals of the window.
+     * @param todayEpochDay The epoch day of today.
+     * @param pager         The pager to notify of changed days, or null.
+     * @return A future of the number of changed days, completed on the main thread.
+     */
+    private CompletableFuture<Integer> storeHistoryWindow(DailyIntakeBuckets fetched, long todayEpochDay,
+                                                         HistoryPager pager) {
+        traceMark(StartupTrace.STAGE_FIRST_FIRESTORE_RESPONSE);
+        CompletableFuture<Integer> stored = new CompletableFuture<>();
+        diskExecutor.execute(() -> {
+            DailyTotalsStore store = dailyTotalsStore;
+            List<Long> changedDays;
+            try {
+                if (store == null) {
+                    throw new IOException("Daily totals store is not open");
+                }
+                changedDays = store.merge(fetched, loadUnsyncedDays(todayEpochDay));
+            } catch (IOException | IllegalArgumentException e) {
+                Log.w("WaterRepository", "Failed to store daily totals", e);
+                mainHandler.post(() -> stored.completeExceptionally(e));
+                return;
+            }
+            historyCache.invalidate(changedDays);
+            mainHandler.post(() -> {
+                Log.d("WaterRepository", "History window from " + HistoryUtils.formatEpochDay(fetched.getStartEpochDay())
+                        + " stored, " + changedDays.size() + " of " + fetched.size() + " days changed");
+                if (pager != null) {
+                    for (long epochDay : changedDays) {
+                        pager.invalidate(epochDay);
+                    }
+                }
+                stored.complete(changedDays.size());
+            });
+        });
+        return stored;
+    }
+
+    /**
+     * Merges the days updated since the last sync into the daily totals store, advances the
+     * watermark and reloads the changed days in the pager, once every window was stored.
+     */
+    private void storeHistoryChanges(long startEpochDay, long todayEpochDay, List<Integer> changedCounts,
+                                     Map<Long, Integer> updatedDays, long lastUpdateMillis,
+                                     HistorySyncWatermark watermark, HistoryPager pager) {
+        diskExecutor.execute(() -> {
+            DailyTotalsStore store = dailyTotalsStore;
+            Set<Long> changedDays = new HashSet<>();
+            boolean stored = store != null;
+            if (store != null) {
+                try {
+                    changedDays.addAll(store.merge(updatedDays, loadUnsyncedDays(todayEpochDay)));
+                } catch (IOException | IllegalArgumentException e) {
+                    Log.w("WaterRepository", "Failed to store daily totals", e);
+                    stored = false;
+                }
+            }
+            if (stored) {
+                watermark.advance(startEpochDay, todayEpochDay, lastUpdateMillis);
+                localStore.setMetadata(LocalStore.META_HISTORY_WATERMARK, watermark.encode());
+                historyCache.onSynced(watermark, changedDays, SystemClock.elapsedRealtime());
+            }
+            int changedCount = changedDays.size();
+            for (int count : changedCounts) {
+                changedCount += count;
+            }
+            int totalChanged = changedCount;
+            mainHandler.post(() -> {
+                finishHistorySync();
+                Log.d("WaterRepository", "History sync read " + changedCounts.size() + " windows and "
+                        + updatedDays.size() + " updated days, " + totalChanged + " days changed; cache "
+                        + historyCache.getStats());
+                for (long epochDay : changedDays) {
+                    if (pager != null) {
+                        pager.invalidate(epochDay);
+                    }
+                }
+            });
+        });
+    }
+
+    /**
+     * Gets the days whose local total may be ahead of Firestore: today, and the days of records
+     * in the intake log that are not synced yet. Runs on the disk thread.
+     *
+     * @param todayEpochDay The epoch day of today.
+     * @return The epoch days with unsynced records.
+     */
+    private Set<Long> loadUnsyncedDays(long todayEpochDay) {
+        Set<Long> unsyncedDays = new HashSet<>();
+        unsyncedDays.add(todayEpochDay);
+        if (intakeLog == null) {
+            return unsyncedDays;
+        }
+        try {
+            for (IntakeLog.Entry entry : intakeLog.readAll()) {
+                if (entry.syncState != IntakeLog.STATE_SYNCED) {
+                    unsyncedDays.add(epochDayOf(entry.timestamp));
+                }
+            }
+        } catch (IOException e) {
+            Log.w("WaterRepository", "Failed to read intake log", e);
+        }
+        return unsyncedDays;
+    }
+
+    /**
+     * Runs the given read once the users/{uid}/daily aggregates are known to exist. The first
+     * time this is called for a user, the aggregates are backfilled from the raw records and
+     * all reads requested meanwhile are queued until the backfill completes. The outbox is held
+     * during the backfill, since a record and its aggregate increment committed after the
+     * records were read would be overwritten by the backfilled total.
+     *
+     * @param startEpochDay The first day of the history, from which the aggregates are built.
+     * @param read          The read that depends on the daily aggregates.
+     */
+    private void whenDailyAggregatesReady(long startEpochDay, Runnable read) {
+        if (dailyAggregatesReady) {
+            read.run();
+            return;
+        }
+        pendingAggregateReads.add(read);
+        if (pendingAggregateReads.size() > 1) {
+            return; // A backfill is already running
+        }
+        holdOutbox(() -> firestoreHelper.backfillDailyAggregates(HistoryUtils.formatEpochDay(startEpochDay),
+                HistoryUtils.formatEpochDay(todayEpochDay()), success -> {
+            diskExecutor.execute(() -> {
+                if (outbox != null) {
+                    outbox.release();
+                }
+            });
+            if (success) {
+                dailyAggregatesReady = true;
+                diskExecutor.execute(() -> localStore.setMetadata(LocalStore.META_DAILY_AGGREGATES_READY, "true"));
+            } else {
+                // Reads still run, the backfill is retried by the next read
+                Log.e("WaterRepository", "Failed to backfill daily aggregates.");
+            }
+            List<Runnable> reads = new ArrayList<>(pendingAggregateReads);
+            pendingAggregateReads.clear();
+            for (Runnable pendingRead : reads) {
+                pendingRead.run();
+            }
+        }));
+    }
+
+    /**
+     * Holds the outbox and runs the given task on the main thread once no batch is in flight.
+     * The caller releases the outbox on the disk thread when done.
+     *
+     * @param task The task to run while the outbox is held.
+     */
+    private void holdOutbox(Runnable task) {
+        diskExecutor.execute(() -> {
+            if (outbox != null) {
+                outbox.hold(() -> mainHandler.post(task));
+            } else {
+                mainHandler.post(task);
+            }
+        });
+    }
+
+    /**
+     * Copies the daily totals of an inclusive range of days out of the daily totals store.
+     * Runs on the disk thread.
+     *
+     * @param startEpochDay The first day of the range.
+     * @param endEpochDay   The last day of the range.
+     * @return The daily totals, all 0 if the store is not available.
+     */
+    private DailyIntakeBuckets loadDailyTotals(long startEpochDay, long endEpochDay) {
+        DailyTotalsStore store = dailyTotalsStore;
+        return store != null ? store.load(startEpochDay, endEpochDay) : new DailyIntakeBuckets(startEpochDay, endEpochDay);
+    }
+
+    /**
+     * Stores the total intake of a single day. Runs on the disk thread.
+     *
+     * @param epochDay The day to update.
+     * @param total    The total intake in milliliters.
+     */
+    private void writeDailyTotal(long epochDay, int total) {
+        DailyTotalsStore store = dailyTotalsStore;
+        if (store == null) {
+            return;
+        }
+        try {
+            store.set(epochDay, total);
+            historyCache.put(epochDay, total);
+        } catch (IOException | IllegalArgumentException e) {
+            Log.w("WaterRepository", "Failed to store daily total", e);
+        }
+    }
+
+    /**
+     * Gets the sign-up date of a stored profile, falling back to the default.
+     *
+     * @param profile The stored profile, or null.
+     * @return The sign-up date in "yyyy-MM-dd" format.
+     */
+    private static String readSignUpDate(LocalStore.Profile profile) {
+        return profile != null && profile.signUpDate != null && !profile.signUpDate.isEmpty()
+                ? profile.signUpDate : DEFAULT_SIGN_UP_DATE;
+    }
+
+    /**
+     * Gets the epoch day of today in the default time zone.
+     *
+     * @return The epoch day of today.
+     */
+    private static long todayEpochDay() {
+        return epochDayOf(System.currentTimeMillis());
+    }
+
+    /**
+     * Gets the epoch day of a point in time in the default time zone.
+     *
+     * @param timestamp The time in milliseconds since the epoch.
+     * @return The epoch day containing that time.
+     */
+    static long epochDayOf(long timestamp) {
+        return HistoryUtils.toEpochDay(new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date(timestamp)));
+    }
+
+    /**
+     * Callback interface to handle the end of a background sync.
+     */
+    public interface BackgroundSyncCallback {
+        void onBackgroundSyncComplete(boolean success, long nextDelayMillis);
+    }
+}
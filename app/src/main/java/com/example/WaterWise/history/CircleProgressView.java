@@ -1,26 +1,60 @@
 package com.example.WaterWise.history;
 
 import android.content.Context;
+import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Path;
 import android.graphics.RectF;
 import android.util.AttributeSet;
+import android.view.Choreographer;
 import android.view.View;
 
+import com.example.WaterWise.R;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * CircleProgressView is a custom view that displays a circular progress indicator.
- * It consists of a background circle and a progress arc that is drawn based on the
- * provided percentage value.
+ * It consists of a background circle, the track, and a progress arc that is drawn based on the
+ * provided sweep angle. Its colors and stroke width come from the styleable attributes of
+ * {@code R.styleable.CircleProgressView}.
+ *
+ * A history list shows many of these at once, so drawing is kept cheap: views with the same
+ * style share their {@link Paint}s, the track is a path built once per size, and changes of the
+ * progress are animated by a single {@link Choreographer} callback that advances every animating
+ * view on each frame, instead of one animator per view. All methods must be called on the main
+ * thread.
  */
 public class CircleProgressView extends View {
-    // Paint objects for drawing the background circle and progress arc
-    private Paint circlePaint;
-    private Paint arcPaint;
-    // RectF defining the bounds for the arc
-    private RectF arcBounds;
-    // The percentage of progress to display, ranges from 0 to 100
-    private float percentage = 0f;
+    // Defaults of the styleable attributes
+    private static final int DEFAULT_TRACK_COLOR = Color.LTGRAY;
+    private static final int DEFAULT_PROGRESS_COLOR = Color.BLUE;
+    private static final float DEFAULT_STROKE_WIDTH = 8f;
+    private static final int DEFAULT_ANIMATION_MILLIS = 300;
+    // Space between the stroke and the edges of the view
+    private static final int PADDING = 2;
+    // Paints shared by the views of a style, keyed by color and stroke width
+    private static final Map<Long, Paint> sharedPaints = new HashMap<>();
+    // Advances the progress of every animating view on each frame
+    private static final ProgressAnimator animator = new ProgressAnimator();
+
+    private final Paint trackPaint;
+    private final Paint progressPaint;
+    private final long animationNanos;
+    // RectF defining the bounds for the arc, and the track drawn in it
+    private final RectF arcBounds = new RectF();
+    private final Path trackPath = new Path();
+    // The angle of the progress arc in degrees, 360 for a full circle, as drawn
+    private float sweepAngle = 0f;
+    // The angle the animation started from and ends on, and when it started
+    private float fromSweepAngle;
+    private float targetSweepAngle;
+    private long animationStartNanos;
 
     /**
      * Constructor for initializing the CircleProgressView.
@@ -29,35 +63,37 @@ public class CircleProgressView extends View {
      */
     public CircleProgressView(Context context, AttributeSet attrs) {
         super(context, attrs);
-        init(); // Initialize paint objects and arc bounds
+        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.CircleProgressView);
+        try {
+            float strokeWidth = a.getDimension(R.styleable.CircleProgressView_strokeWidth, DEFAULT_STROKE_WIDTH);
+            trackPaint = sharedPaint(a.getColor(R.styleable.CircleProgressView_trackColor, DEFAULT_TRACK_COLOR), strokeWidth);
+            progressPaint = sharedPaint(a.getColor(R.styleable.CircleProgressView_progressColor, DEFAULT_PROGRESS_COLOR), strokeWidth);
+            animationNanos = a.getInt(R.styleable.CircleProgressView_progressAnimationDuration, DEFAULT_ANIMATION_MILLIS) * 1000000L;
+        } finally {
+            a.recycle();
+        }
     }
 
     /**
-     * Initializes the paints for the background circle and progress arc,
-     * and sets up the initial bounds for the arc.
+     * Gets the paint of a style, creating it the first time the style is used. Only views on
+     * the main thread draw with it, so it is never changed after creation.
      */
-    private void init() {
-        // Initialize the paint for the background circle
-        circlePaint = new Paint();
-        circlePaint.setStyle(Paint.Style.STROKE); // Only draw the stroke of the circle
-        circlePaint.setStrokeWidth(8f); // Set the width of the circle stroke
-        circlePaint.setAntiAlias(true); // Enable anti-aliasing for smoother edges
-        circlePaint.setColor(Color.LTGRAY); // Background circle color
-
-        // Initialize the paint for the progress arc
-        arcPaint = new Paint();
-        arcPaint.setStyle(Paint.Style.STROKE); // Only draw the stroke of the arc
-        arcPaint.setStrokeWidth(8f); // Set the width of the arc stroke
-        arcPaint.setAntiAlias(true); // Enable anti-aliasing for smoother edges
-        arcPaint.setColor(Color.BLUE); // Progress color
-
-        // Initialize the arc bounds
-        arcBounds = new RectF();
+    private static Paint sharedPaint(int color, float strokeWidth) {
+        long key = ((long) color << 32) | (Float.floatToIntBits(strokeWidth) & 0xffffffffL);
+        Paint paint = sharedPaints.get(key);
+        if (paint == null) {
+            paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            paint.setStyle(Paint.Style.STROKE); // Only draw the stroke of the circle and arc
+            paint.setStrokeWidth(strokeWidth);
+            paint.setColor(color);
+            sharedPaints.put(key, paint);
+        }
+        return paint;
     }
 
     /**
      * Called when the size of the view changes, for example, when the view is first drawn
-     * or when the screen orientation changes.
+     * or when the screen orientation changes. Builds the track once for the new size.
      * @param w The new width of the view.
      * @param h The new height of the view.
      * @param oldw The old width of the view.
@@ -67,27 +103,36 @@ public class CircleProgressView extends View {
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
         // Define the bounds for the arc, adding padding to the view's dimensions
-        int padding = 2;
-        arcBounds.set(padding, padding, w - padding, h - padding);
+        arcBounds.set(PADDING, PADDING, w - PADDING, h - PADDING);
+        trackPath.reset();
+        trackPath.addOval(arcBounds, Path.Direction.CW);
     }
 
     /**
-     * Called when the view is drawn on the screen. Draws the background circle and
-     * the progress arc based on the current percentage.
-     * @param canvas The canvas on which the background circle and progress arc are drawn.
+     * Called when the view is drawn on the screen. Draws the track and the progress arc based
+     * on the current sweep angle, without allocating.
+     * @param canvas The canvas on which the track and progress arc are drawn.
      */
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+        canvas.drawPath(trackPath, trackPaint);
+        if (sweepAngle != 0f) {
+            // Draw the progress arc, starting from the top (-90 degrees)
+            canvas.drawArc(arcBounds, -90, sweepAngle, false, progressPaint);
+        }
+    }
 
-        // Draw the background circle
-        canvas.drawOval(arcBounds, circlePaint);
-
-        // Calculate the sweep angle based on the percentage (0 to 360 degrees)
-        float sweepAngle = (percentage / 100f) * 360f;
-
-        // Draw the progress arc, starting from the top (-90 degrees)
-        canvas.drawArc(arcBounds, -90, sweepAngle, false, arcPaint);
+    /**
+     * Stops the animation of a view that leaves the screen, for example when its row is
+     * recycled, and shows its final value.
+     */
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (animator.remove(this)) {
+            sweepAngle = targetSweepAngle;
+        }
     }
 
     /**
@@ -95,7 +140,104 @@ public class CircleProgressView extends View {
      * @param percentage The progress percentage to display (0-100).
      */
     public void setPercentage(float percentage) {
-        this.percentage = percentage;
-        invalidate(); // Redraw the view with the new percentage
+        // Calculate the sweep angle based on the percentage (0 to 360 degrees)
+        setSweepAngle((percentage / 100f) * 360f);
+    }
+
+    /**
+     * Sets the angle of the progress arc at once, precomputed for example by
+     * {@link HistoryRowFormatter}, and invalidates the view if it changed. Used when the view
+     * shows a different day, so a recycled row does not animate from the previous day's value.
+     * @param sweepAngle The angle in degrees, 360 for a full circle.
+     */
+    public void setSweepAngle(float sweepAngle) {
+        animator.remove(this);
+        targetSweepAngle = sweepAngle;
+        if (this.sweepAngle == sweepAngle) {
+            return;
+        }
+        this.sweepAngle = sweepAngle;
+        invalidate(); // Redraw the view with the new angle
+    }
+
+    /**
+     * Animates the progress arc from its current angle to a new one, for example when the total
+     * or the goal of the day shown changed. Jumps to the angle if the view is not on screen or
+     * animations are disabled.
+     * @param sweepAngle The angle in degrees, 360 for a full circle.
+     */
+    public void animateSweepAngle(float sweepAngle) {
+        if (animationNanos <= 0 || !isAttachedToWindow() || this.sweepAngle == sweepAngle) {
+            setSweepAngle(sweepAngle);
+            return;
+        }
+        if (targetSweepAngle == sweepAngle && animator.isRunning(this)) {
+            return;
+        }
+        fromSweepAngle = this.sweepAngle;
+        targetSweepAngle = sweepAngle;
+        animationStartNanos = -1;
+        animator.add(this);
+    }
+
+    /**
+     * Moves the animation of this view to a frame.
+     *
+     * @param frameTimeNanos The time of the frame, from {@link Choreographer}.
+     * @return True if the animation has finished.
+     */
+    private boolean onAnimationFrame(long frameTimeNanos) {
+        if (animationStartNanos < 0) {
+            // Started on this frame, so the first frame draws the starting angle
+            animationStartNanos = frameTimeNanos;
+        }
+        float fraction = Math.min(1f, (frameTimeNanos - animationStartNanos) / (float) animationNanos);
+        // Decelerate, so the arc settles on its value
+        float eased = 1f - (1f - fraction) * (1f - fraction);
+        sweepAngle = fromSweepAngle + (targetSweepAngle - fromSweepAngle) * eased;
+        invalidate();
+        return fraction >= 1f;
+    }
+
+    /**
+     * ProgressAnimator drives the animations of all the views from a single frame callback,
+     * posted only while some view is animating.
+     */
+    private static class ProgressAnimator implements Choreographer.FrameCallback {
+        private final List<CircleProgressView> running = new ArrayList<>();
+        private boolean posted;
+
+        void add(CircleProgressView view) {
+            if (!running.contains(view)) {
+                running.add(view);
+            }
+            if (!posted) {
+                posted = true;
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+
+        boolean remove(CircleProgressView view) {
+            return running.remove(view);
+        }
+
+        boolean isRunning(CircleProgressView view) {
+            return running.contains(view);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            posted = false;
+            // Backwards, so finished views can be removed while iterating
+            for (int i = running.size() - 1; i >= 0; i--) {
+                if (running.get(i).onAnimationFrame(frameTimeNanos)) {
+                    running.remove(i);
+                }
+            }
+            if (!running.isEmpty()) {
+                posted = true;
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
     }
 }
@@ -0,0 +1,137 @@
+package com.example.WaterWise.history;
+
+import com.example.WaterWise.utils.HistoryUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DailyIntakeBuckets accumulates water intake amounts into one bucket per day for a fixed
+ * range of dates. The buckets are a preallocated array indexed by the day's offset from the
+ * start of the range, so adding an amount is O(1) and the result is already in date order.
+ * Positions count from the most recent day, so the buckets can back a list directly.
+ */
+public class DailyIntakeBuckets {
+    // The epoch day of the first bucket
+    private final long startEpochDay;
+    // Total intake per day in milliliters, indexed by (epochDay - startEpochDay)
+    private final int[] totals;
+
+    /**
+     * Creates buckets for every day between the start and end dates, inclusive.
+     *
+     * @param startEpochDay The first day of the range.
+     * @param endEpochDay   The last day of the range.
+     */
+    public DailyIntakeBuckets(long startEpochDay, long endEpochDay) {
+        this.startEpochDay = startEpochDay;
+        this.totals = new int[(int) Math.max(0, endEpochDay - startEpochDay + 1)];
+    }
+
+    /**
+     * Creates buckets over an existing array of daily totals. The array is used as is, not copied.
+     *
+     * @param startEpochDay The epoch day of the first element.
+     * @param totals        Total intake per day in milliliters, oldest day first.
+     */
+    public DailyIntakeBuckets(long startEpochDay, int[] totals) {
+        this.startEpochDay = startEpochDay;
+        this.totals = totals;
+    }
+
+    /**
+     * Adds an amount to the bucket for the given date.
+     *
+     * @param date   The date in "yyyy-MM-dd" format.
+     * @param amount The amount of water in milliliters.
+     * @return True if the date falls inside the range, false if it was ignored.
+     */
+    public boolean add(String date, int amount) {
+        if (date == null) {
+            return false;
+        }
+        try {
+            return add(HistoryUtils.toEpochDay(date), amount);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Adds an amount to the bucket for the given epoch day.
+     *
+     * @param epochDay The day the amount belongs to.
+     * @param amount   The amount of water in milliliters.
+     * @return True if the day falls inside the range, false if it was ignored.
+     */
+    public boolean add(long epochDay, int amount) {
+        long index = epochDay - startEpochDay;
+        if (index < 0 || index >= totals.length) {
+            return false;
+        }
+        totals[(int) index] += amount;
+        return true;
+    }
+
+    /**
+     * Gets the total intake for the given epoch day.
+     *
+     * @param epochDay The day to look up.
+     * @return The total intake in milliliters, or 0 if the day is outside the range.
+     */
+    public int getTotal(long epochDay) {
+        long index = epochDay - startEpochDay;
+        return index < 0 || index >= totals.length ? 0 : totals[(int) index];
+    }
+
+    /**
+     * Gets the number of days covered by these buckets.
+     *
+     * @return The number of days in the range.
+     */
+    public int size() {
+        return totals.length;
+    }
+
+    /**
+     * Gets the first day covered by these buckets.
+     *
+     * @return The epoch day of the oldest bucket.
+     */
+    public long getStartEpochDay() {
+        return startEpochDay;
+    }
+
+    /**
+     * Gets the epoch day at a position, where position 0 is the most recent day.
+     *
+     * @param position The position, between 0 and size() - 1.
+     * @return The epoch day at that position.
+     */
+    public long getEpochDayAt(int position) {
+        return startEpochDay + totals.length - 1 - position;
+    }
+
+    /**
+     * Gets the total intake at a position, where position 0 is the most recent day.
+     *
+     * @param position The position, between 0 and size() - 1.
+     * @return The total intake in milliliters.
+     */
+    public int getTotalAt(int position) {
+        return totals[totals.length - 1 - position];
+    }
+
+    /**
+     * Converts the buckets into HistoryRecords, one per day, with the most recent day first.
+     *
+     * @return The list of history records in descending date order.
+     */
+    public List<HistoryRecord> toHistoryRecords() {
+        List<HistoryRecord> records = new ArrayList<>(totals.length);
+        for (int i = totals.length - 1; i >= 0; i--) {
+            records.add(new HistoryRecord(HistoryUtils.formatEpochDay(startEpochDay + i), totals[i]));
+        }
+        return records;
+    }
+}
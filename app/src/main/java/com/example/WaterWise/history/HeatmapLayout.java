@@ -0,0 +1,116 @@
+package com.example.WaterWise.history;
+
+/**
+ * HeatmapLayout places the days of a calendar heatmap on a grid with one column per week and one
+ * row per weekday, Sunday at the top, and maps percentages of the goal to color buckets. It holds
+ * only arithmetic, so {@link YearHeatmapView} can place, color and hit-test cells without
+ * allocating.
+ */
+public class HeatmapLayout {
+    public static final int DAYS_PER_WEEK = 7;
+    // Columns of a year starting on a Saturday, the widest a year of days can be
+    public static final int MAX_COLUMNS = 54;
+    // Color buckets, from no intake to the goal reached
+    public static final int BUCKET_NONE = 0;
+    public static final int BUCKET_LOW = 1;
+    public static final int BUCKET_HIGH = 2;
+    public static final int BUCKET_GOAL = 3;
+    public static final int BUCKET_COUNT = 4;
+
+    private final long firstEpochDay;
+    private final int dayCount;
+    // Row of the first day, 0 for a Sunday
+    private final int firstRow;
+
+    /**
+     * Creates the layout of a range of days.
+     *
+     * @param firstEpochDay The first day, in the top-left column.
+     * @param dayCount      The number of days.
+     */
+    public HeatmapLayout(long firstEpochDay, int dayCount) {
+        this.firstEpochDay = firstEpochDay;
+        this.dayCount = dayCount;
+        // 1970-01-01 was a Thursday
+        this.firstRow = (int) Math.floorMod(firstEpochDay + 4, (long) DAYS_PER_WEEK);
+    }
+
+    /**
+     * Gets the first day, in the top-left column.
+     *
+     * @return The epoch day.
+     */
+    public long getFirstEpochDay() {
+        return firstEpochDay;
+    }
+
+    /**
+     * Gets the number of days.
+     *
+     * @return The number of days laid out.
+     */
+    public int getDayCount() {
+        return dayCount;
+    }
+
+    /**
+     * Gets the number of columns the days take.
+     *
+     * @return The number of weeks the range touches.
+     */
+    public int getColumnCount() {
+        return (firstRow + dayCount + DAYS_PER_WEEK - 1) / DAYS_PER_WEEK;
+    }
+
+    /**
+     * Gets the column of a day.
+     *
+     * @param index The index of the day from the first day.
+     * @return The column, 0 for the first week.
+     */
+    public int columnOf(int index) {
+        return (firstRow + index) / DAYS_PER_WEEK;
+    }
+
+    /**
+     * Gets the row of a day.
+     *
+     * @param index The index of the day from the first day.
+     * @return The row, 0 for Sunday.
+     */
+    public int rowOf(int index) {
+        return (firstRow + index) % DAYS_PER_WEEK;
+    }
+
+    /**
+     * Gets the day in a cell of the grid.
+     *
+     * @param column The column of the cell.
+     * @param row    The row of the cell.
+     * @return The index of the day from the first day, or -1 if the cell holds no day.
+     */
+    public int indexAt(int column, int row) {
+        if (column < 0 || row < 0 || row >= DAYS_PER_WEEK) {
+            return -1;
+        }
+        int index = column * DAYS_PER_WEEK + row - firstRow;
+        return index >= 0 && index < dayCount ? index : -1;
+    }
+
+    /**
+     * Gets the color bucket of a percentage of the goal.
+     *
+     * @param percentage The percentage of the goal achieved, 0 or more.
+     * @return One of the BUCKET_ constants.
+     */
+    public static int bucketOf(float percentage) {
+        if (percentage <= 0f) {
+            return BUCKET_NONE;
+        } else if (percentage < 50f) {
+            return BUCKET_LOW;
+        } else if (percentage < 100f) {
+            return BUCKET_HIGH;
+        }
+        return BUCKET_GOAL;
+    }
+}
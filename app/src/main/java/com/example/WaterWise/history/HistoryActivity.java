@@ -15,8 +15,10 @@ import com.example.WaterWise.data.DataModel;
 import com.example.WaterWise.home.MainActivity;
 import com.example.WaterWise.settings.SettingsActivity;
 import com.example.WaterWise.utils.HistoryUtils;
+import com.example.WaterWise.utils.ViewUtils;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 
+import java.text.DateFormatSymbols;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
@@ -24,13 +26,26 @@ import java.util.Locale;
 /**
  * HistoryActivity displays the user's history of water intake along with the current day's
  * date, goal, and remaining water intake to achieve the goal. It uses a RecyclerView to
- * display history records and integrates with the BottomNavigationView for app navigation.
+ * display history records, above which a heatmap shows the last year at a glance, and
+ * integrates with the BottomNavigationView for app navigation.
  */
 public class HistoryActivity extends AppCompatActivity {
+    // Number of days in the heatmap, a leap year's worth
+    private static final int HEATMAP_DAYS = 366;
+
     private DataModel dataModel;
-    private int userGoal;
+    private HistoryRecordAdapter adapter;
     // UI elements for displaying day of the week and current date
     private TextView dayOfWeekTextView, dateTextView;
+    // Heatmap of the last year and the detail of its selected day
+    private YearHeatmapView heatmapView;
+    private TextView heatmapDetailTextView;
+    // Daily totals shown in the heatmap, or null until they are loaded
+    private DailyIntakeBuckets heatmapTotals;
+    // Reloads the heatmap's totals; posted so a burst of changes loads them once
+    private final Runnable reloadHeatmap = this::loadHeatmap;
+    // Weekday and month names of the default locale, for the date of the selected day
+    private final DateFormatSymbols dateFormatSymbols = DateFormatSymbols.getInstance(Locale.getDefault());
 
     /**
      * Called when the activity is first created. Initializes the UI and sets up the RecyclerView,
@@ -44,13 +59,14 @@ public class HistoryActivity extends AppCompatActivity {
         setContentView(R.layout.activity_history);
         // Initialize ViewModel and observe goal
         dataModel = new ViewModelProvider(this).get(DataModel.class);
-        dataModel.getGoal().observe(this, goal -> {userGoal = goal;});
 
         initializeUIElements();
         displayDayOfWeek();
         setUpBottomNavigationBar();
         setUpHistoryRecyclerView();
-        dataModel.loadHistoryRecords();
+        setUpHeatmap();
+        // Let the DataModel start its network refresh once the first frame is on screen
+        ViewUtils.runAfterFirstFrame(getWindow().getDecorView(), dataModel::onFirstFrame);
     }
 
     /**
@@ -64,23 +80,142 @@ public class HistoryActivity extends AppCompatActivity {
 
     /**
      * Sets up the RecyclerView with a LinearLayoutManager and an adapter for displaying history records.
-     * The data is observed from the ViewModel and sorted by date in descending order.
+     * The adapter is created once and binds days by position from the ViewModel's history pager,
+     * most recent day first. It is notified only of the days that changed, so a reloaded page or a
+     * new day rebinds just those rows.
      */
     private void setUpHistoryRecyclerView() {
         RecyclerView recyclerView = findViewById(R.id.recyclerView);
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
-        // Observe the history records from the ViewModel
-        dataModel.getHistoryRecords().observe(this, historyList -> {
-            // Sort history records by date (most recent first)
-            HistoryUtils.sortHistoryRecords(historyList);
-            // Fetch the goal from the data model
-            int goalInMiliLiters = dataModel.getGoal().getValue();
-            // Set the adapter for the RecyclerView
-            HistoryRecordAdapter adapter = new HistoryRecordAdapter(historyList, goalInMiliLiters);
-            recyclerView.setAdapter(adapter);
+        // Its size is set by the layout, so item changes do not lay out the whole screen again
+        recyclerView.setHasFixedSize(true);
+        HistoryPager pager = dataModel.getHistoryPager();
+        Integer goalInMiliLiters = dataModel.getGoal().getValue();
+        // Set before the adapter binds, so the first pages are formatted for the current goal
+        pager.setGoal(goalInMiliLiters != null ? goalInMiliLiters : DataModel.DEFAULT_GOAL);
+        adapter = new HistoryRecordAdapter(pager);
+        recyclerView.setAdapter(adapter);
+        pager.setListener(new HistoryPager.Listener() {
+            @Override
+            public void onDaysChanged(int firstPosition, int count) {
+                adapter.notifyItemRangeChanged(firstPosition, count, HistoryRecordAdapter.PAYLOAD_PERCENTAGE);
+                // Changed totals within the last year, such as from a sync, are shown in the heatmap too
+                if (firstPosition < HEATMAP_DAYS) {
+                    scheduleHeatmapReload();
+                }
+            }
+
+            @Override
+            public void onDaysInserted(int firstPosition, int count) {
+                adapter.notifyItemRangeInserted(firstPosition, count);
+            }
+
+            @Override
+            public void onDaysRemoved(int firstPosition, int count) {
+                adapter.notifyItemRangeRemoved(firstPosition, count);
+            }
+
+            @Override
+            public void onRangeChanged() {
+                adapter.notifyDataSetChanged();
+            }
+        });
+
+        // The pager reformats the loaded pages and reports the days whose percentage changed
+        dataModel.getGoal().observe(this, goal -> pager.setGoal(goal != null ? goal : DataModel.DEFAULT_GOAL));
+        // Today's total is stored before the intake is published, so its page can be reloaded right away
+        dataModel.getIntake().observe(this, intake -> pager.invalidate(pager.getEpochDayAt(0)));
+        // The history starts at the sign-up date, so load it once that is known
+        dataModel.getSignUpDate().observe(this, signUpDate -> dataModel.loadHistoryRecords());
+    }
+
+    /**
+     * Sets up the heatmap of the last year. Selecting a day shows its date and percentage below
+     * the heatmap and scrolls the history list to it. The totals are reloaded from the stored
+     * history when they change, and the percentages are computed again when the goal changes.
+     */
+    private void setUpHeatmap() {
+        heatmapView = findViewById(R.id.heatmapView);
+        heatmapDetailTextView = findViewById(R.id.heatmapDetailTextView);
+        RecyclerView recyclerView = findViewById(R.id.recyclerView);
+        heatmapView.setOnDaySelectedListener((epochDay, percentage) -> {
+            heatmapDetailTextView.setText(HistoryUtils.formatDisplayDate(epochDay, dateFormatSymbols)
+                    + " · " + String.format(Locale.getDefault(), "%.0f%%", percentage));
+            int position = (int) (dataModel.getHistoryPager().getEpochDayAt(0) - epochDay);
+            if (position >= 0 && position < adapter.getItemCount()) {
+                recyclerView.scrollToPosition(position);
+            }
+        });
+
+        dataModel.getGoal().observe(this, goal -> showHeatmap());
+        dataModel.getIntake().observe(this, intake -> scheduleHeatmapReload());
+        dataModel.getSignUpDate().observe(this, signUpDate -> scheduleHeatmapReload());
+    }
+
+    /**
+     * Reloads the heatmap's totals once the current burst of changes has been handled.
+     */
+    private void scheduleHeatmapReload() {
+        heatmapView.removeCallbacks(reloadHeatmap);
+        heatmapView.post(reloadHeatmap);
+    }
+
+    /**
+     * Loads the totals of the last year from the stored history and shows them in the heatmap.
+     */
+    private void loadHeatmap() {
+        dataModel.loadRecentDailyTotals(HEATMAP_DAYS, totals -> {
+            if (isDestroyed()) {
+                return;
+            }
+            heatmapTotals = totals;
+            showHeatmap();
         });
     }
 
+    /**
+     * Shows the loaded totals in the heatmap as percentages of the current goal. Days before the
+     * sign-up date are left out.
+     */
+    private void showHeatmap() {
+        if (heatmapTotals == null) {
+            return;
+        }
+        Integer goalValue = dataModel.getGoal().getValue();
+        int goal = goalValue != null ? goalValue : DataModel.DEFAULT_GOAL;
+        long signUpEpochDay = Long.MIN_VALUE;
+        String signUpDate = dataModel.getSignUpDate().getValue();
+        if (signUpDate != null) {
+            try {
+                signUpEpochDay = HistoryUtils.toEpochDay(signUpDate);
+            } catch (IllegalArgumentException e) {
+                // Shown without a start, like the list
+            }
+        }
+        // Oldest day first, as the heatmap lays them out
+        long firstEpochDay = heatmapTotals.getStartEpochDay();
+        float[] percentages = new float[heatmapTotals.size()];
+        for (int i = 0; i < percentages.length; i++) {
+            long epochDay = firstEpochDay + i;
+            if (epochDay < signUpEpochDay) {
+                percentages[i] = YearHeatmapView.NO_DATA;
+            } else {
+                percentages[i] = goal > 0 ? heatmapTotals.getTotal(epochDay) * 100f / goal : 0f;
+            }
+        }
+        heatmapView.setDays(firstEpochDay, percentages);
+    }
+
+    /**
+     * Called when the activity is destroyed. Detaches the adapter from the history pager, which
+     * outlives the activity in the ViewModel.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        dataModel.getHistoryPager().setListener(null);
+    }
+
     /**
      * Displays the current day of the week and date at the top of the activity.
      */
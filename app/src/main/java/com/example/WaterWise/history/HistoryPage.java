@@ -0,0 +1,48 @@
+package com.example.WaterWise.history;
+
+/**
+ * HistoryPage holds the rows of an inclusive range of days, formatted for a goal by
+ * {@link HistoryRowFormatter}. It is immutable, so it can be built on a background thread and
+ * handed to the main thread as is.
+ */
+public class HistoryPage {
+    private final long startEpochDay;
+    private final int goal;
+    // Rows indexed by day, oldest first
+    private final HistoryRow[] rows;
+
+    HistoryPage(long startEpochDay, int goal, HistoryRow[] rows) {
+        this.startEpochDay = startEpochDay;
+        this.goal = goal;
+        this.rows = rows;
+    }
+
+    /**
+     * Gets the goal the rows were formatted for.
+     *
+     * @return The goal in milliliters.
+     */
+    public int getGoal() {
+        return goal;
+    }
+
+    /**
+     * Checks whether a day is in the page.
+     *
+     * @param epochDay The day.
+     * @return True if the page has a row for the day.
+     */
+    public boolean contains(long epochDay) {
+        return epochDay >= startEpochDay && epochDay - startEpochDay < rows.length;
+    }
+
+    /**
+     * Gets the row of a day.
+     *
+     * @param epochDay The day.
+     * @return The row, or null if the day is outside the page.
+     */
+    public HistoryRow getRow(long epochDay) {
+        return contains(epochDay) ? rows[(int) (epochDay - startEpochDay)] : null;
+    }
+}
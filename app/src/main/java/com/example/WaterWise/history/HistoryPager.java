@@ -0,0 +1,317 @@
+package com.example.WaterWise.history;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * HistoryPager backs the history list with pages of {@link #PAGE_DAYS} days, most recent day
+ * first. The number of days since sign-up is known up front, so the list has its full length
+ * from the start and days whose page is not loaded yet are shown as placeholders. Pages are
+ * loaded when a day near them is bound, and only the {@link #MAX_PAGES} most recently used
+ * pages are kept, so memory stays bounded however long the history is.
+ *
+ * Changes are reported as narrowly as possible, so the list only rebinds the rows that changed:
+ * when the range moves, for example when a new day starts, the days added or removed at either
+ * end are reported as insertions and removals, and the totals of the previous range keep being
+ * served until their pages are reloaded. A reloaded page is compared with what was shown day by
+ * day, and only the days whose total changed are reported.
+ *
+ * Pages hold {@link HistoryRow}s formatted by the loader for the current goal, so binding a day
+ * copies fields without formatting or allocating. Changing the goal reloads the loaded pages.
+ *
+ * All methods must be called on the main thread, and the page loader must deliver its results
+ * asynchronously on the main thread.
+ */
+public class HistoryPager {
+    // Number of days in a page, so the first page covers about a month
+    public static final int PAGE_DAYS = 30;
+    // Number of days ahead of a bound day whose page is loaded in advance
+    static final int PREFETCH_DAYS = 10;
+    // Number of pages kept in memory
+    static final int MAX_PAGES = 6;
+    // Total returned for a day whose page is not loaded yet
+    public static final int PLACEHOLDER = -1;
+
+    private final PageLoader loader;
+    private Listener listener;
+    // Goal the rows are formatted for
+    private int goal;
+    // Range of days in the list, empty until setRange is called
+    private long startEpochDay;
+    private long endEpochDay = -1;
+    // Incremented when the range changes, so results for the previous range are dropped
+    private int generation;
+    // Loaded pages by page number, least recently used first
+    private final LinkedHashMap<Integer, HistoryPage> pages = new LinkedHashMap<Integer, HistoryPage>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, HistoryPage> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+    private final Set<Integer> loadingPages = new HashSet<>();
+    // Pages of the previous range, served by day until the pages of the current range load
+    private final List<HistoryPage> previousPages = new ArrayList<>();
+
+    /**
+     * Creates a pager with an empty range.
+     *
+     * @param loader Loads the rows of a page.
+     */
+    public HistoryPager(PageLoader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Sets the listener notified when days change, replacing any previous one.
+     *
+     * @param listener The listener, or null to remove it.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets the goal the rows are formatted for. If it changed, the loaded pages are loaded again
+     * and the days whose percentage changed are reported.
+     *
+     * @param goal The goal in milliliters.
+     */
+    public void setGoal(int goal) {
+        if (this.goal == goal) {
+            return;
+        }
+        this.goal = goal;
+        Set<Integer> stale = new HashSet<>(pages.keySet());
+        stale.addAll(loadingPages);
+        for (int page : stale) {
+            requestPage(page);
+        }
+    }
+
+    /**
+     * Sets the range of days in the list and loads the first page. Loaded pages are kept if the
+     * range did not change. If the new range overlaps the previous one, only the days added or
+     * removed at either end are reported to the listener.
+     *
+     * @param startEpochDay The first day of the history, usually the sign-up date.
+     * @param endEpochDay   The last day of the history, usually today.
+     */
+    public void setRange(long startEpochDay, long endEpochDay) {
+        if (startEpochDay == this.startEpochDay && endEpochDay == this.endEpochDay) {
+            return;
+        }
+        long previousStart = this.startEpochDay;
+        long previousEnd = this.endEpochDay;
+        boolean overlaps = previousStart <= previousEnd && startEpochDay <= endEpochDay
+                && startEpochDay <= previousEnd && endEpochDay >= previousStart;
+        this.startEpochDay = startEpochDay;
+        this.endEpochDay = endEpochDay;
+        generation++;
+        // Pages are numbered from the most recent day, so they no longer line up with positions
+        previousPages.clear();
+        if (overlaps) {
+            previousPages.addAll(pages.values());
+        }
+        pages.clear();
+        loadingPages.clear();
+        if (listener != null) {
+            if (overlaps) {
+                notifyRangeMoved(previousStart, previousEnd);
+            } else {
+                listener.onRangeChanged();
+            }
+        }
+        loadPage(0);
+    }
+
+    /**
+     * Reports the days added or removed at each end of the list when the range moved from an
+     * overlapping one. The most recent days are at the top of the list.
+     */
+    private void notifyRangeMoved(long previousStart, long previousEnd) {
+        if (endEpochDay > previousEnd) {
+            listener.onDaysInserted(0, (int) (endEpochDay - previousEnd));
+        } else if (endEpochDay < previousEnd) {
+            listener.onDaysRemoved(0, (int) (previousEnd - endEpochDay));
+        }
+        // Position of the day after the previous first day, now that the top is up to date
+        int bottom = (int) (endEpochDay - previousStart + 1);
+        if (startEpochDay < previousStart) {
+            listener.onDaysInserted(bottom, (int) (previousStart - startEpochDay));
+        } else if (startEpochDay > previousStart) {
+            listener.onDaysRemoved(size(), (int) (startEpochDay - previousStart));
+        }
+    }
+
+    /**
+     * Gets the number of days in the list, loaded or not.
+     *
+     * @return The number of days.
+     */
+    public int size() {
+        return (int) Math.max(0, endEpochDay - startEpochDay + 1);
+    }
+
+    /**
+     * Gets the epoch day at a position, where position 0 is the most recent day.
+     *
+     * @param position The position, between 0 and size() - 1.
+     * @return The epoch day at that position.
+     */
+    public long getEpochDayAt(int position) {
+        return endEpochDay - position;
+    }
+
+    /**
+     * Gets the row at a position, loading its page and the pages within {@link #PREFETCH_DAYS}
+     * of it if needed. Does not allocate once the pages are loaded.
+     *
+     * @param position The position, between 0 and size() - 1.
+     * @return The row, or null if the page is not loaded yet.
+     */
+    public HistoryRow getRowAt(int position) {
+        int page = position / PAGE_DAYS;
+        loadPage(page);
+        loadPage((position + PREFETCH_DAYS) / PAGE_DAYS);
+        if (position >= PREFETCH_DAYS) {
+            loadPage((position - PREFETCH_DAYS) / PAGE_DAYS);
+        }
+        HistoryPage rows = pages.get(page);
+        return rows != null ? rows.getRow(getEpochDayAt(position)) : getPreviousRow(getEpochDayAt(position));
+    }
+
+    /**
+     * Gets the total intake at a position, loading pages like {@link #getRowAt(int)}.
+     *
+     * @param position The position, between 0 and size() - 1.
+     * @return The total intake in milliliters, or {@link #PLACEHOLDER} if the page is not loaded yet.
+     */
+    public int getTotalAt(int position) {
+        HistoryRow row = getRowAt(position);
+        return row != null ? row.getTotal() : PLACEHOLDER;
+    }
+
+    /**
+     * Gets the row of a day from the pages of the previous range.
+     *
+     * @param epochDay The day.
+     * @return The row, or null if no previous page holds the day.
+     */
+    private HistoryRow getPreviousRow(long epochDay) {
+        for (HistoryPage rows : previousPages) {
+            if (rows.contains(epochDay)) {
+                return rows.getRow(epochDay);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Loads the page containing a day again, if it is in memory, for example after the day's
+     * total changed.
+     *
+     * @param epochDay The day that changed.
+     */
+    public void invalidate(long epochDay) {
+        if (epochDay < startEpochDay || epochDay > endEpochDay) {
+            return;
+        }
+        int page = (int) ((endEpochDay - epochDay) / PAGE_DAYS);
+        if (pages.containsKey(page) && !loadingPages.contains(page)) {
+            requestPage(page);
+        }
+    }
+
+    /**
+     * Gets the number of pages held in memory.
+     *
+     * @return The number of loaded pages.
+     */
+    int getLoadedPageCount() {
+        return pages.size();
+    }
+
+    private void loadPage(int page) {
+        if (page * PAGE_DAYS >= size() || pages.containsKey(page) || loadingPages.contains(page)) {
+            return;
+        }
+        requestPage(page);
+    }
+
+    private void requestPage(int page) {
+        loadingPages.add(page);
+        int firstPosition = page * PAGE_DAYS;
+        int lastPosition = Math.min(size(), firstPosition + PAGE_DAYS) - 1;
+        int requestGeneration = generation;
+        // The loader may deliver a page more than once
+        loader.loadPage(getEpochDayAt(lastPosition), getEpochDayAt(firstPosition), goal, rows -> {
+            if (requestGeneration != generation || rows.getGoal() != goal) {
+                // Loaded for a previous range or goal, and requested again since
+                return;
+            }
+            if (!loadingPages.remove(page) && !pages.containsKey(page)) {
+                // Evicted since it was first delivered
+                return;
+            }
+            HistoryPage shown = pages.get(page);
+            pages.put(page, rows);
+            if (listener != null) {
+                notifyChangedDays(firstPosition, lastPosition, shown, rows);
+            }
+        });
+    }
+
+    /**
+     * Reports the runs of consecutive positions of a page whose row displays differently from
+     * the row shown before, either from the previous load of the page or from the previous range.
+     */
+    private void notifyChangedDays(int firstPosition, int lastPosition, HistoryPage shown,
+                                   HistoryPage loaded) {
+        int runStart = -1;
+        for (int position = firstPosition; position <= lastPosition + 1; position++) {
+            boolean changed = false;
+            if (position <= lastPosition) {
+                long epochDay = getEpochDayAt(position);
+                HistoryRow before = shown != null ? shown.getRow(epochDay) : getPreviousRow(epochDay);
+                changed = !loaded.getRow(epochDay).looksLike(before);
+            }
+            if (changed && runStart < 0) {
+                runStart = position;
+            } else if (!changed && runStart >= 0) {
+                listener.onDaysChanged(runStart, position - runStart);
+                runStart = -1;
+            }
+        }
+    }
+
+    /**
+     * Loads the rows of a range of days, formatted for a goal.
+     */
+    public interface PageLoader {
+        void loadPage(long startEpochDay, long endEpochDay, int goal, PageCallback callback);
+    }
+
+    /**
+     * Callback interface to handle the rows of a page.
+     */
+    public interface PageCallback {
+        void onPageLoaded(HistoryPage rows);
+    }
+
+    /**
+     * Listens for changes of the days in the list.
+     */
+    public interface Listener {
+        void onDaysChanged(int firstPosition, int count);
+
+        void onDaysInserted(int firstPosition, int count);
+
+        void onDaysRemoved(int firstPosition, int count);
+
+        void onRangeChanged();
+    }
+}
@@ -1,6 +1,5 @@
 package com.example.WaterWise.history;
 
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -10,29 +9,36 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.WaterWise.R;
+import com.example.WaterWise.utils.HistoryUtils;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.text.DateFormatSymbols;
 import java.util.List;
 import java.util.Locale;
 /**
  * Adapter class for displaying history records in a RecyclerView. Each item represents
- * a single history record, displaying the date and the percentage of the goal achieved.
+ * a single day, displaying the date and the percentage of the goal achieved. Items are bound
+ * by position from a {@link HistoryPager}, most recent day first; a day whose page is not loaded
+ * yet shows its date with an empty progress circle until the page arrives. Item IDs are the
+ * epoch days, so rows keep their views when days are inserted at the top, and changes that only
+ * affect the percentage are bound with {@link #PAYLOAD_PERCENTAGE}, leaving the date alone.
+ * Rows come formatted from the pager, so binding a loaded day only copies fields into the views.
  */
 public class HistoryRecordAdapter extends RecyclerView.Adapter<HistoryRecordAdapter.HistoryViewHolder> {
-    // List of history records to be displayed in the RecyclerView
-    private List<HistoryRecord> historyList;
-    private int goal;
+    // Payload of a change that only affects the percentage of a day, such as a new total or goal
+    public static final Object PAYLOAD_PERCENTAGE = new Object();
+    // Pages of history rows to be displayed in the RecyclerView
+    private final HistoryPager pager;
+    // Weekday and month names of the default locale, for the dates of days not loaded yet
+    private final DateFormatSymbols dateFormatSymbols = DateFormatSymbols.getInstance(Locale.getDefault());
+
     /**
      * Constructor for the HistoryRecordAdapter.
      *
-     * @param historyList List of history records to be displayed.
-     * @param goal        The goal for calculating the percentage of completion.
+     * @param pager The pager providing the rows to be displayed, formatted for the current goal.
      */
-    public HistoryRecordAdapter(List<HistoryRecord> historyList, int goal) {
-        this.historyList = historyList;
-        this.goal = goal;
+    public HistoryRecordAdapter(HistoryPager pager) {
+        this.pager = pager;
+        setHasStableIds(true);
     }
 
     /**
@@ -59,48 +65,81 @@ public class HistoryRecordAdapter extends RecyclerView.Adapter<HistoryRecordAdap
      */
     @Override
     public void onBindViewHolder(@NonNull HistoryViewHolder holder, int position) {
-        // Get the history record at the current position
-        HistoryRecord record = historyList.get(position);
-        // Set the date text
-        holder.dateTextView.setText(record.getDate());
-        // Calculate the percentage of goal achieved
-        float percentage = record.calculatePercentage(goal);
-        // Check if the percentage is a whole number or requires a decimal place
-        if (percentage % 1 == 0) {
-            holder.percentageTextView.setText(String.format("%.0f%%", percentage)); // No decimal places
+        HistoryRow row = pager.getRowAt(position);
+        if (row != null) {
+            holder.dateTextView.setText(row.getDateLabel());
         } else {
-            holder.percentageTextView.setText(String.format("%.1f%%", percentage)); // One decimal place
+            // Format the date as "Mon, Aug 30, 2024" straight from the epoch day
+            holder.dateTextView.setText(HistoryUtils.formatDisplayDate(pager.getEpochDayAt(position), dateFormatSymbols));
         }
+        bindPercentage(holder, row, false);
+    }
 
-        // Adjust the background based on percentage
-        holder.circleProgressView.setPercentage(percentage);
-        // Format the date for better readability
-        String rawDate = record.getDate();
-        SimpleDateFormat inputFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-        // Format as "Mon, Aug 30, 2024"
-        SimpleDateFormat outputFormat = new SimpleDateFormat("EEE, MMM dd, yyyy", Locale.getDefault());
-        String formattedDate = "";
-        try {
-            // Parse the date from the original format and reformat it
-            Date date = inputFormat.parse(rawDate);
-            formattedDate = outputFormat.format(date);
-        } catch (ParseException e) {
-            // Handle potential parsing errors
-            e.printStackTrace();
+    /**
+     * Called by RecyclerView to update an item that is already bound. If every change only
+     * affects the percentage, the date is kept as it is.
+     *
+     * @param holder   The ViewHolder of the item.
+     * @param position The position of the item within the adapter's data set.
+     * @param payloads The payloads of the changes since the item was last bound.
+     */
+    @Override
+    public void onBindViewHolder(@NonNull HistoryViewHolder holder, int position, @NonNull List<Object> payloads) {
+        for (Object payload : payloads) {
+            if (payload != PAYLOAD_PERCENTAGE) {
+                onBindViewHolder(holder, position);
+                return;
+            }
+        }
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+        } else {
+            bindPercentage(holder, pager.getRowAt(position), true);
         }
-        // Set the formatted date in the TextView
-        holder.dateTextView.setText(formattedDate);
     }
 
     /**
-     * Returns the total number of items in the history list.
+     * Binds the percentage of the goal achieved on the day of a row.
      *
-     * @return The size of the history list.
+     * @param holder  The ViewHolder of the item.
+     * @param row     The row, or null if its page is not loaded yet.
+     * @param animate Whether the progress moves from the value shown, which is only meaningful
+     *                when the holder still shows the same day.
+     */
+    private void bindPercentage(HistoryViewHolder holder, HistoryRow row, boolean animate) {
+        if (row == null) {
+            // Bound again once the page is loaded
+            holder.percentageTextView.setText("");
+            holder.circleProgressView.setSweepAngle(0f);
+            return;
+        }
+        holder.percentageTextView.setText(row.getPercentageText());
+        if (animate) {
+            holder.circleProgressView.animateSweepAngle(row.getSweepAngle());
+        } else {
+            holder.circleProgressView.setSweepAngle(row.getSweepAngle());
+        }
+    }
+
+    /**
+     * Returns the total number of days in the history, including days not loaded yet.
+     *
+     * @return The number of days.
      */
     @Override
     public int getItemCount() {
-        Log.d("HistoryAdapter", "Total items to display: " + historyList.size());
-        return historyList.size();
+        return pager.size();
+    }
+
+    /**
+     * Returns the epoch day at a position, which identifies the day whatever its position.
+     *
+     * @param position The position of the item.
+     * @return The epoch day of the item.
+     */
+    @Override
+    public long getItemId(int position) {
+        return pager.getEpochDayAt(position);
     }
 
     /**
@@ -0,0 +1,86 @@
+package com.example.WaterWise.history;
+
+/**
+ * HistoryRow is the immutable model of a row of the history list: a day with its total, already
+ * formatted for display against the goal it was built for. Rows are built off the main thread by
+ * {@link HistoryRowFormatter}, so binding a row only copies its fields into the views.
+ */
+public class HistoryRow {
+    private final long epochDay;
+    private final int total;
+    private final String dateLabel;
+    private final String percentageText;
+    private final float sweepAngle;
+
+    /**
+     * Creates a row.
+     *
+     * @param epochDay       The day of the row.
+     * @param total          The total intake of the day in milliliters.
+     * @param dateLabel      The date as displayed, e.g. "Fri, Aug 30, 2024".
+     * @param percentageText The percentage of the goal achieved as displayed, e.g. "42.5%".
+     * @param sweepAngle     The angle of the progress arc in degrees.
+     */
+    public HistoryRow(long epochDay, int total, String dateLabel, String percentageText, float sweepAngle) {
+        this.epochDay = epochDay;
+        this.total = total;
+        this.dateLabel = dateLabel;
+        this.percentageText = percentageText;
+        this.sweepAngle = sweepAngle;
+    }
+
+    /**
+     * Gets the day of the row.
+     *
+     * @return The epoch day.
+     */
+    public long getEpochDay() {
+        return epochDay;
+    }
+
+    /**
+     * Gets the total intake of the day.
+     *
+     * @return The total in milliliters.
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * Gets the date as displayed.
+     *
+     * @return The date label.
+     */
+    public String getDateLabel() {
+        return dateLabel;
+    }
+
+    /**
+     * Gets the percentage of the goal achieved as displayed.
+     *
+     * @return The percentage text.
+     */
+    public String getPercentageText() {
+        return percentageText;
+    }
+
+    /**
+     * Gets the angle of the progress arc.
+     *
+     * @return The angle in degrees.
+     */
+    public float getSweepAngle() {
+        return sweepAngle;
+    }
+
+    /**
+     * Checks whether a row displays the same as this one, so it does not need to be bound again.
+     *
+     * @param other The other row, or null for a placeholder.
+     * @return True if both rows show the same total and percentage.
+     */
+    public boolean looksLike(HistoryRow other) {
+        return other != null && other.total == total && other.percentageText.equals(percentageText);
+    }
+}
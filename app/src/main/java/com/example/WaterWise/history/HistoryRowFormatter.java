@@ -0,0 +1,59 @@
+package com.example.WaterWise.history;
+
+import com.example.WaterWise.utils.HistoryUtils;
+
+import java.text.DateFormatSymbols;
+
+/**
+ * HistoryRowFormatter turns the daily totals of a page into {@link HistoryRow}s: the date label,
+ * the percentage of the goal achieved and the sweep angle of the progress arc. It is meant to run
+ * on a background thread when a page is loaded or the goal changes, so the list binds rows
+ * without formatting anything.
+ */
+public class HistoryRowFormatter {
+    // Weekday and month names of the display locale
+    private final DateFormatSymbols symbols;
+
+    /**
+     * Creates a formatter.
+     *
+     * @param symbols The date format symbols of the display locale.
+     */
+    public HistoryRowFormatter(DateFormatSymbols symbols) {
+        this.symbols = symbols;
+    }
+
+    /**
+     * Formats the rows of every day of a page.
+     *
+     * @param totals The daily totals of the page.
+     * @param goal   The goal for calculating the percentage of completion.
+     * @return The page of rows.
+     */
+    public HistoryPage format(DailyIntakeBuckets totals, int goal) {
+        HistoryRow[] rows = new HistoryRow[totals.size()];
+        for (int i = 0; i < rows.length; i++) {
+            long epochDay = totals.getStartEpochDay() + i;
+            rows[i] = formatRow(epochDay, totals.getTotal(epochDay), goal);
+        }
+        return new HistoryPage(totals.getStartEpochDay(), goal, rows);
+    }
+
+    /**
+     * Formats the row of a day.
+     *
+     * @param epochDay The day.
+     * @param total    The total intake of the day in milliliters.
+     * @param goal     The goal for calculating the percentage of completion.
+     * @return The row.
+     */
+    public HistoryRow formatRow(long epochDay, int total, int goal) {
+        float percentage = goal > 0 ? (total * 100f / goal) : 0f;
+        // Whole percentages are shown without a decimal place
+        String percentageText = percentage % 1 == 0
+                ? String.format("%.0f%%", percentage)
+                : String.format("%.1f%%", percentage);
+        return new HistoryRow(epochDay, total, HistoryUtils.formatDisplayDate(epochDay, symbols),
+                percentageText, percentage / 100f * 360f);
+    }
+}
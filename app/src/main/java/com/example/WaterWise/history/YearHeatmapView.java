@@ -0,0 +1,197 @@
+package com.example.WaterWise.history;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+
+import com.example.WaterWise.R;
+
+/**
+ * YearHeatmapView shows up to a year of history at a glance, one cell per day laid out by
+ * {@link HeatmapLayout}: a column per week and a row per weekday. Each cell is colored by the
+ * percentage of the goal achieved that day, and tapping a cell selects its day.
+ *
+ * The whole grid is drawn in a single pass from primitive arrays: the cell positions are computed
+ * when the size or the days change, and the color bucket of each day when its percentage is set,
+ * so {@link #onDraw(Canvas)} only draws rectangles and allocates nothing.
+ */
+public class YearHeatmapView extends View {
+    // Percentage of a day outside the history, such as before the sign-up date, which is not drawn
+    public static final float NO_DATA = -1f;
+    // Part of a cell's pitch left empty between cells
+    private static final float GAP_FRACTION = 0.2f;
+
+    // One paint per color bucket, and the outline of the selected day
+    private final Paint[] bucketPaints = new Paint[HeatmapLayout.BUCKET_COUNT];
+    private final Paint selectionPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private HeatmapLayout layout = new HeatmapLayout(0, 0);
+    // Percentage and color bucket of each day, from the first day
+    private float[] percentages = new float[0];
+    private byte[] buckets = new byte[0];
+    // Top-left corner of each day's cell, and the size of a cell
+    private float[] cellLefts = new float[0];
+    private float[] cellTops = new float[0];
+    private float cellSize;
+    private float pitch;
+    private int selectedIndex = -1;
+    private OnDaySelectedListener listener;
+
+    /**
+     * Constructor for initializing the YearHeatmapView.
+     * @param context The context of the application.
+     * @param attrs The attribute set from the XML layout.
+     */
+    public YearHeatmapView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        int[] colors = {
+                context.getColor(R.color.gray_light),
+                context.getColor(R.color.blue_light),
+                context.getColor(R.color.blue),
+                context.getColor(R.color.blue_dark)
+        };
+        for (int bucket = 0; bucket < bucketPaints.length; bucket++) {
+            bucketPaints[bucket] = new Paint();
+            bucketPaints[bucket].setColor(colors[bucket]);
+        }
+        selectionPaint.setStyle(Paint.Style.STROKE);
+        selectionPaint.setStrokeWidth(2 * getResources().getDisplayMetrics().density);
+        selectionPaint.setColor(context.getColor(R.color.black));
+    }
+
+    /**
+     * Sets the listener notified when the user selects a day.
+     *
+     * @param listener The listener, or null to remove it.
+     */
+    public void setOnDaySelectedListener(OnDaySelectedListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets the days shown and their percentages of the goal, and redraws the grid. The selected
+     * day stays selected if it is still shown.
+     *
+     * @param firstEpochDay The first day, in the top-left column.
+     * @param percentages   The percentage of the goal achieved on each day from the first one, or
+     *                      {@link #NO_DATA} for days outside the history. The view keeps the array.
+     */
+    public void setDays(long firstEpochDay, float[] percentages) {
+        long selectedDay = selectedIndex >= 0 ? layout.getFirstEpochDay() + selectedIndex : Long.MIN_VALUE;
+        if (firstEpochDay != layout.getFirstEpochDay() || percentages.length != layout.getDayCount()) {
+            layout = new HeatmapLayout(firstEpochDay, percentages.length);
+            buckets = new byte[percentages.length];
+            cellLefts = new float[percentages.length];
+            cellTops = new float[percentages.length];
+            computeCells();
+        }
+        this.percentages = percentages;
+        for (int i = 0; i < percentages.length; i++) {
+            buckets[i] = (byte) HeatmapLayout.bucketOf(percentages[i]);
+        }
+        long index = selectedDay - firstEpochDay;
+        selectedIndex = index >= 0 && index < percentages.length && percentages[(int) index] != NO_DATA ? (int) index : -1;
+        invalidate();
+    }
+
+    /**
+     * Measures the view to fill the given width, with square cells for the widest year, so the
+     * height does not change with the days shown.
+     */
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec);
+        float cellPitch = (width - getPaddingLeft() - getPaddingRight()) / (float) HeatmapLayout.MAX_COLUMNS;
+        int height = (int) Math.ceil(cellPitch * HeatmapLayout.DAYS_PER_WEEK) + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(width, resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        computeCells();
+    }
+
+    /**
+     * Computes the position of every cell for the current size and days.
+     */
+    private void computeCells() {
+        float contentWidth = getWidth() - getPaddingLeft() - getPaddingRight();
+        float contentHeight = getHeight() - getPaddingTop() - getPaddingBottom();
+        int columns = Math.max(HeatmapLayout.MAX_COLUMNS, layout.getColumnCount());
+        pitch = Math.max(0f, Math.min(contentWidth / columns, contentHeight / HeatmapLayout.DAYS_PER_WEEK));
+        cellSize = pitch * (1f - GAP_FRACTION);
+        for (int i = 0; i < cellLefts.length; i++) {
+            cellLefts[i] = getPaddingLeft() + layout.columnOf(i) * pitch;
+            cellTops[i] = getPaddingTop() + layout.rowOf(i) * pitch;
+        }
+    }
+
+    /**
+     * Draws every day's cell in its color, then the outline of the selected day.
+     * @param canvas The canvas on which the cells are drawn.
+     */
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        for (int i = 0; i < buckets.length; i++) {
+            if (percentages[i] == NO_DATA) {
+                continue;
+            }
+            canvas.drawRect(cellLefts[i], cellTops[i], cellLefts[i] + cellSize, cellTops[i] + cellSize, bucketPaints[buckets[i]]);
+        }
+        if (selectedIndex >= 0) {
+            canvas.drawRect(cellLefts[selectedIndex], cellTops[selectedIndex],
+                    cellLefts[selectedIndex] + cellSize, cellTops[selectedIndex] + cellSize, selectionPaint);
+        }
+    }
+
+    /**
+     * Selects the day under a tap and notifies the listener.
+     * @param event The touch event.
+     * @return True, so the view receives the rest of the gesture.
+     */
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (event.getActionMasked() == MotionEvent.ACTION_UP) {
+            int index = indexAt(event.getX(), event.getY());
+            if (index >= 0 && percentages[index] != NO_DATA) {
+                selectedIndex = index;
+                invalidate();
+                if (listener != null) {
+                    listener.onDaySelected(layout.getFirstEpochDay() + index, percentages[index]);
+                }
+            }
+            performClick();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean performClick() {
+        return super.performClick();
+    }
+
+    /**
+     * Finds the day whose cell contains a point, including the gap after it.
+     *
+     * @param x The horizontal position in the view.
+     * @param y The vertical position in the view.
+     * @return The index of the day from the first day, or -1 if there is none.
+     */
+    private int indexAt(float x, float y) {
+        if (pitch <= 0f || x < getPaddingLeft() || y < getPaddingTop()) {
+            return -1;
+        }
+        return layout.indexAt((int) ((x - getPaddingLeft()) / pitch), (int) ((y - getPaddingTop()) / pitch));
+    }
+
+    /**
+     * Listens for the selection of a day.
+     */
+    public interface OnDaySelectedListener {
+        void onDaySelected(long epochDay, float percentage);
+    }
+}
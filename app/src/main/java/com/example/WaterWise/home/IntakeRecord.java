@@ -4,24 +4,36 @@ package com.example.WaterWise.home;
  * This class represents a water intake record, containing information about the time, date, and amount of water consumed.
  */
 public class IntakeRecord {
-    // Fields to store the time of intake, date of intake, and the amount of water consumed
+    // Fields to store the moment of intake, time of intake, date of intake, and the amount of water consumed
+    private final long timestamp;
     private final String time;
     private final String date;
     private final int amount;
 
     /**
-     * Constructor to initialize an intake record with time, date, and amount.
+     * Constructor to initialize an intake record with timestamp, time, date, and amount.
      *
-     * @param time   The time of intake in a specific format (e.g., "hh:mm a").
-     * @param date   The date of intake in a specific format (e.g., "yyyy-MM-dd").
-     * @param amount The amount of water consumed, in milliliters.
+     * @param timestamp The moment of intake in milliseconds since the epoch.
+     * @param time      The time of intake in a specific format (e.g., "hh:mm a").
+     * @param date      The date of intake in a specific format (e.g., "yyyy-MM-dd").
+     * @param amount    The amount of water consumed, in milliliters.
      */
-    public IntakeRecord(String time, String date, int amount) {
+    public IntakeRecord(long timestamp, String time, String date, int amount) {
+        this.timestamp = timestamp;
         this.time = time;
         this.date = date;
         this.amount = amount;
     }
 
+    /**
+     * Getter for the moment of the intake record.
+     *
+     * @return The moment of intake in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
     /**
      * Getter for the date of the intake record.
      *
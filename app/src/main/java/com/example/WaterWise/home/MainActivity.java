@@ -16,6 +16,7 @@ import com.example.WaterWise.data.DataModel;
 import com.example.WaterWise.history.HistoryActivity;
 import com.example.WaterWise.settings.SettingsActivity;
 import com.example.WaterWise.utils.HomeUtils;
+import com.example.WaterWise.utils.ViewUtils;
 import com.github.mikephil.charting.charts.PieChart;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 
@@ -63,6 +64,8 @@ public class MainActivity extends AppCompatActivity {
         observeDataModel();
         updatePieChart();
         setupBottomNavigation();
+        // Let the DataModel start its network refresh once the first frame is on screen
+        ViewUtils.runAfterFirstFrame(getWindow().getDecorView(), dataModel::onFirstFrame);
     }
 
     /**
@@ -111,7 +114,6 @@ public class MainActivity extends AppCompatActivity {
      */
     private void addWater(int amount) {
         intake += amount;
-        dataModel.setIntake(intake);
         // Update the PieChart with the new intake and goal
         updatePieChart();
         // Create a new record for the intake
@@ -137,13 +139,8 @@ public class MainActivity extends AppCompatActivity {
      */
     private void observeDataModel() {
         dataModel.getRecords().observe(this, records -> {
-
-            if (records.isEmpty()) {
-                // Show a message if there are no records
-                recordsMessage.setText("Stay hydrated!");
-            } else {
-                // Hide the message if records are available
-                recordsMessage.setVisibility(View.GONE);
+            updateRecordsMessage();
+            if (!records.isEmpty()) {
                 // Update the adapter with the fetched records
                 adapter.setRecords(records);
                 // Notify the adapter that the data has changed
@@ -151,6 +148,10 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
+        dataModel.isLoading().observe(this, loading -> updateRecordsMessage());
+        dataModel.getPendingSyncCount().observe(this, pendingCount -> updateRecordsMessage());
+        dataModel.getFailedSyncCount().observe(this, failedCount -> updateRecordsMessage());
+
         dataModel.getGoal().observe(this, goalFromDataModel -> {
             goal = goalFromDataModel != null ? goalFromDataModel : DataModel.DEFAULT_GOAL;
             updatePieChart();
@@ -164,6 +165,34 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    /**
+     * Shows a loading message until the local data is loaded, then a reminder if there are
+     * no records yet, and hides the message once records are available. While records are
+     * waiting to be synced with Firestore, their number is shown instead.
+     */
+    private void updateRecordsMessage() {
+        List<IntakeRecord> currentRecords = dataModel.getRecords().getValue();
+        Integer pendingCount = dataModel.getPendingSyncCount().getValue();
+        Integer failedCount = dataModel.getFailedSyncCount().getValue();
+        if (Boolean.TRUE.equals(dataModel.isLoading().getValue())) {
+            recordsMessage.setVisibility(View.VISIBLE);
+            recordsMessage.setText("Loading...");
+        } else if (failedCount != null && failedCount > 0) {
+            recordsMessage.setVisibility(View.VISIBLE);
+            recordsMessage.setText(failedCount + (failedCount == 1 ? " record" : " records") + " not synced yet, retrying...");
+        } else if (pendingCount != null && pendingCount > 0) {
+            recordsMessage.setVisibility(View.VISIBLE);
+            recordsMessage.setText(pendingCount + (pendingCount == 1 ? " record" : " records") + " waiting to sync");
+        } else if (currentRecords == null || currentRecords.isEmpty()) {
+            // Show a message if there are no records
+            recordsMessage.setVisibility(View.VISIBLE);
+            recordsMessage.setText("Stay hydrated!");
+        } else {
+            // Hide the message if records are available
+            recordsMessage.setVisibility(View.GONE);
+        }
+    }
+
     /**
      * Updates the PieChart with the current goal and intake values.
      */
@@ -20,6 +20,7 @@ import com.example.WaterWise.data.DataModel;
 import com.example.WaterWise.history.HistoryActivity;
 import com.example.WaterWise.home.MainActivity;
 import com.example.WaterWise.utils.SettingsUtils;
+import com.example.WaterWise.utils.ViewUtils;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.firebase.auth.FirebaseAuth;
 
@@ -51,6 +52,8 @@ public class SettingsActivity extends AppCompatActivity {
         observeDataModel();         // Observe DataModel values and update UI accordingly
         setupBottomNavigation();    // Set up bottom navigation
         setupListeners();           // Set up listeners for UI inputs and signOut Button
+        // Let the DataModel start its network refresh once the first frame is on screen
+        ViewUtils.runAfterFirstFrame(getWindow().getDecorView(), dataModel::onFirstFrame);
     }
 
     /**
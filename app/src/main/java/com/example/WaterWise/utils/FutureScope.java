@@ -0,0 +1,64 @@
+package com.example.WaterWise.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * FutureScope ties futures to the lifetime of their owner, such as the ViewModel of a screen.
+ * Cancelling the scope when the owner goes away cancels every future still running in it, and
+ * futures tracked afterwards are cancelled right away. Completed futures are dropped, so the
+ * scope only holds the work in progress.
+ */
+public class FutureScope {
+    private final Set<CompletableFuture<?>> running = new LinkedHashSet<>();
+    private boolean cancelled;
+
+    /**
+     * Tracks a future until it completes.
+     *
+     * @param future The future.
+     * @return The same future.
+     */
+    public <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+        synchronized (this) {
+            if (!cancelled) {
+                running.add(future);
+                future.whenComplete((ignored, e) -> remove(future));
+                return future;
+            }
+        }
+        future.cancel(false);
+        return future;
+    }
+
+    /**
+     * Cancels every future in progress and every future tracked from now on.
+     */
+    public void cancel() {
+        List<CompletableFuture<?>> toCancel;
+        synchronized (this) {
+            cancelled = true;
+            toCancel = new ArrayList<>(running);
+            running.clear();
+        }
+        for (CompletableFuture<?> future : toCancel) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Gets the number of futures in progress.
+     *
+     * @return The number of tracked futures that have not completed.
+     */
+    public synchronized int size() {
+        return running.size();
+    }
+
+    private synchronized void remove(CompletableFuture<?> future) {
+        running.remove(future);
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.WaterWise.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Futures holds the helpers used to compose the {@link CompletableFuture}s returned by the
+ * Firestore reads: waiting for a list of reads, running a large fan-out a few reads at a time,
+ * retrying a failed read and giving up on a read after a timeout. Cancelling a composed future cancels the reads it
+ * waits for, so a screen that goes away stops the work it started.
+ */
+public class Futures {
+
+    private Futures() {
+    }
+
+    /**
+     * Waits for every future of a list. Fails as soon as one of them fails, and cancelling the
+     * result cancels all of them.
+     *
+     * @param futures The futures to wait for.
+     * @return A future of the results, in the order of the futures.
+     */
+    public static <T> CompletableFuture<List<T>> allAsList(List<CompletableFuture<T>> futures) {
+        CompletableFuture<List<T>> result = new CompletableFuture<>();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, e) -> {
+            if (e != null) {
+                result.completeExceptionally(e);
+                return;
+            }
+            List<T> values = new ArrayList<>(futures.size());
+            for (CompletableFuture<T> future : futures) {
+                values.add(future.join());
+            }
+            result.complete(values);
+        });
+        for (CompletableFuture<T> future : futures) {
+            // Fail fast instead of waiting for the remaining futures
+            future.whenComplete((ignored, e) -> {
+                if (e != null) {
+                    result.completeExceptionally(e);
+                }
+            });
+        }
+        cancelOnCancel(result, futures);
+        return result;
+    }
+
+    /**
+     * Starts a future for each item, with at most the given number running at once; the next
+     * one starts when one completes. Fails as soon as one of them fails, without starting the
+     * rest, and cancelling the result cancels the running ones.
+     *
+     * @param items         The items to start a future for.
+     * @param maxConcurrent The largest number of futures running at once, at least 1.
+     * @param start         Starts the future of an item.
+     * @return A future of the results, in the order of the items.
+     */
+    public static <T, R> CompletableFuture<List<R>> mapBounded(List<T> items, int maxConcurrent,
+                                                               Function<T, CompletableFuture<R>> start) {
+        CompletableFuture<List<R>> result = new CompletableFuture<>();
+        if (items.isEmpty()) {
+            result.complete(new ArrayList<>());
+            return result;
+        }
+        AtomicInteger nextIndex = new AtomicInteger();
+        AtomicInteger remaining = new AtomicInteger(items.size());
+        Object[] values = new Object[items.size()];
+        List<CompletableFuture<R>> started = Collections.synchronizedList(new ArrayList<>());
+        Runnable[] startNext = new Runnable[1];
+        startNext[0] = () -> {
+            int index = nextIndex.getAndIncrement();
+            if (index >= items.size() || result.isDone()) {
+                return;
+            }
+            CompletableFuture<R> future = start.apply(items.get(index));
+            started.add(future);
+            future.whenComplete((value, e) -> {
+                if (e != null) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+                values[index] = value;
+                if (remaining.decrementAndGet() > 0) {
+                    startNext[0].run();
+                    return;
+                }
+                List<R> ordered = new ArrayList<>(values.length);
+                for (Object v : values) {
+                    @SuppressWarnings("unchecked")
+                    R item = (R) v;
+                    ordered.add(item);
+                }
+                result.complete(ordered);
+            });
+        };
+        for (int i = 0; i < Math.min(maxConcurrent, items.size()); i++) {
+            startNext[0].run();
+        }
+        cancelOnCancel(result, started);
+        return result;
+    }
+
+    /**
+     * Fails a future with a {@link TimeoutException} if it has not completed in time.
+     *
+     * @param future        The future.
+     * @param timeoutMillis The time to wait in milliseconds.
+     * @param scheduler     Schedules the timeout on the thread the future completes on.
+     * @return The same future.
+     */
+    public static <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, long timeoutMillis, Scheduler scheduler) {
+        Runnable timeout = () -> future.completeExceptionally(new TimeoutException("Timed out after " + timeoutMillis + " ms"));
+        scheduler.schedule(timeout, timeoutMillis);
+        future.whenComplete((ignored, e) -> scheduler.cancel(timeout));
+        return future;
+    }
+
+    /**
+     * Starts a future again when it fails, waiting twice as long before each new attempt.
+     * Cancelling the result cancels the attempt in progress and any attempt not started yet.
+     *
+     * @param attempt          Starts an attempt.
+     * @param maxAttempts      The largest number of attempts, at least 1.
+     * @param firstDelayMillis The time to wait before the second attempt in milliseconds.
+     * @param scheduler        Schedules the next attempt.
+     * @return A future of the result of the first attempt that succeeded, or of the error of the
+     * last attempt.
+     */
+    public static <T> CompletableFuture<T> retry(Supplier<CompletableFuture<T>> attempt, int maxAttempts,
+                                                 long firstDelayMillis, Scheduler scheduler) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        List<CompletableFuture<T>> current = Collections.synchronizedList(new ArrayList<>());
+        Runnable[] startAttempt = new Runnable[1];
+        AtomicInteger attempts = new AtomicInteger();
+        startAttempt[0] = () -> {
+            if (result.isDone()) {
+                return;
+            }
+            int number = attempts.incrementAndGet();
+            CompletableFuture<T> future = attempt.get();
+            current.clear();
+            current.add(future);
+            future.whenComplete((value, e) -> {
+                if (e == null) {
+                    result.complete(value);
+                } else if (number >= maxAttempts || future.isCancelled()) {
+                    result.completeExceptionally(e);
+                } else {
+                    scheduler.schedule(startAttempt[0], firstDelayMillis << (number - 1));
+                }
+            });
+        };
+        startAttempt[0].run();
+        result.whenComplete((ignored, e) -> {
+            if (result.isCancelled()) {
+                scheduler.cancel(startAttempt[0]);
+            }
+        });
+        cancelOnCancel(result, current);
+        return result;
+    }
+
+    private static <T> void cancelOnCancel(CompletableFuture<?> result, List<CompletableFuture<T>> futures) {
+        result.whenComplete((ignored, e) -> {
+            if (result.isCancelled()) {
+                List<CompletableFuture<T>> toCancel;
+                synchronized (futures) {
+                    toCancel = new ArrayList<>(futures);
+                }
+                for (CompletableFuture<T> future : toCancel) {
+                    future.cancel(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Schedules and cancels delayed tasks.
+     */
+    public interface Scheduler {
+        void schedule(Runnable task, long delayMillis);
+
+        void cancel(Runnable task);
+    }
+}
@@ -2,8 +2,11 @@ package com.example.WaterWise.utils;
 
 import com.example.WaterWise.history.HistoryRecord;
 
+import java.text.DateFormatSymbols;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -26,5 +29,144 @@ public class HistoryUtils {
             }
         });
     }
-}
 
+    /**
+     * Converts a "yyyy-MM-dd" date string into the number of days since 1970-01-01.
+     * The conversion is pure arithmetic on the calendar fields, so it does not depend on the
+     * device time zone and does not allocate a Date or Calendar.
+     *
+     * @param date The date in "yyyy-MM-dd" format.
+     * @return The epoch day of the date.
+     * @throws IllegalArgumentException If the date is not in "yyyy-MM-dd" format.
+     */
+    public static long toEpochDay(String date) {
+        if (date == null || date.length() != 10 || date.charAt(4) != '-' || date.charAt(7) != '-') {
+            throw new IllegalArgumentException("Invalid date: " + date);
+        }
+        int year = parseDigits(date, 0, 4);
+        int month = parseDigits(date, 5, 7);
+        int day = parseDigits(date, 8, 10);
+        if (month < 1 || month > 12 || day < 1 || day > 31) {
+            throw new IllegalArgumentException("Invalid date: " + date);
+        }
+        // Days-from-civil over 400 year eras, with years starting in March
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153L * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Formats an epoch day as a "yyyy-MM-dd" date string, the inverse of {@link #toEpochDay(String)}.
+     *
+     * @param epochDay The number of days since 1970-01-01.
+     * @return The date in "yyyy-MM-dd" format.
+     */
+    public static String formatEpochDay(long epochDay) {
+        int civil = toCivil(epochDay);
+        char[] chars = new char[10];
+        writeDigits(chars, 0, civil / 10000, 4);
+        chars[4] = '-';
+        writeDigits(chars, 5, civil / 100 % 100, 2);
+        chars[7] = '-';
+        writeDigits(chars, 8, civil % 100, 2);
+        return new String(chars);
+    }
+
+    /**
+     * Formats an epoch day for display, e.g. "Fri, Aug 30, 2024", using the given locale symbols
+     * instead of parsing and formatting through SimpleDateFormat.
+     *
+     * @param epochDay The number of days since 1970-01-01.
+     * @param symbols  The date format symbols of the display locale.
+     * @return The date in "EEE, MMM dd, yyyy" format.
+     */
+    public static String formatDisplayDate(long epochDay, DateFormatSymbols symbols) {
+        int civil = toCivil(epochDay);
+        // 1970-01-01 was a Thursday; weekday names are indexed from Calendar.SUNDAY
+        int dayOfWeek = (int) Math.floorMod(epochDay + 4, 7L) + Calendar.SUNDAY;
+        char[] digits = new char[4];
+        StringBuilder builder = new StringBuilder(17);
+        builder.append(symbols.getShortWeekdays()[dayOfWeek]).append(", ")
+                .append(symbols.getShortMonths()[civil / 100 % 100 - 1]).append(' ');
+        writeDigits(digits, 0, civil % 100, 2);
+        builder.append(digits, 0, 2).append(", ");
+        writeDigits(digits, 0, civil / 10000, 4);
+        return builder.append(digits, 0, 4).toString();
+    }
+
+    /**
+     * Splits the inclusive range of epoch days into consecutive windows of at most
+     * {@code windowDays} days. Windows are returned newest first so callers can show
+     * the most recent days as soon as the first window arrives.
+     *
+     * @param startEpochDay The first day of the range (inclusive).
+     * @param endEpochDay   The last day of the range (inclusive).
+     * @param windowDays    The maximum number of days in a single window.
+     * @return A list of {start, end} pairs of epoch days, newest window first.
+     */
+    public static List<long[]> splitIntoWindows(long startEpochDay, long endEpochDay, int windowDays) {
+        return splitIntoWindows(startEpochDay, endEpochDay, windowDays, windowDays);
+    }
+
+    /**
+     * Splits the inclusive range of epoch days like {@link #splitIntoWindows(long, long, int)},
+     * except that the first, newest window has its own size, for example a single screen of
+     * days, so it can be read and shown before the larger windows.
+     *
+     * @param startEpochDay   The first day of the range (inclusive).
+     * @param endEpochDay     The last day of the range (inclusive).
+     * @param firstWindowDays The maximum number of days in the newest window.
+     * @param windowDays      The maximum number of days in the other windows.
+     * @return A list of {start, end} pairs of epoch days, newest window first.
+     */
+    public static List<long[]> splitIntoWindows(long startEpochDay, long endEpochDay, int firstWindowDays, int windowDays) {
+        if (firstWindowDays <= 0 || windowDays <= 0) {
+            throw new IllegalArgumentException("windowDays must be positive");
+        }
+        List<long[]> windows = new ArrayList<>();
+        int days = firstWindowDays;
+        for (long end = endEpochDay; end >= startEpochDay; end -= days, days = windowDays) {
+            long start = Math.max(startEpochDay, end - days + 1);
+            windows.add(new long[]{start, end});
+        }
+        return windows;
+    }
+
+    /**
+     * Converts an epoch day into its civil date, packed as year * 10000 + month * 100 + day.
+     */
+    private static int toCivil(long epochDay) {
+        long z = epochDay + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+        return year * 10000 + month * 100 + day;
+    }
+
+    private static int parseDigits(String value, int from, int to) {
+        int result = 0;
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Invalid date: " + value);
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private static void writeDigits(char[] chars, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
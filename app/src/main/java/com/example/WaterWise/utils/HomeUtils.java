@@ -8,6 +8,7 @@ import com.github.mikephil.charting.data.PieEntry;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
@@ -21,9 +22,37 @@ public class HomeUtils {
      * @return A new IntakeRecord object with the current date and time.
      */
     public static IntakeRecord createIntakeRecord(int amount) {
-        String currentTime = new SimpleDateFormat("hh:mm a", Locale.getDefault()).format(new Date());
-        String currentDate = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
-        return new IntakeRecord(currentTime, currentDate, amount);
+        return createIntakeRecord(System.currentTimeMillis(), amount);
+    }
+
+    /**
+     * Creates an IntakeRecord for the given moment, formatting its date and time.
+     *
+     * @param timestamp The moment of intake in milliseconds since the epoch.
+     * @param amount    The amount of water intake in milliliters.
+     * @return A new IntakeRecord object for the given moment.
+     */
+    public static IntakeRecord createIntakeRecord(long timestamp, int amount) {
+        Date moment = new Date(timestamp);
+        String time = new SimpleDateFormat("hh:mm a", Locale.getDefault()).format(moment);
+        String date = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(moment);
+        return new IntakeRecord(timestamp, time, date, amount);
+    }
+
+    /**
+     * Gets the start of the local day containing the given moment.
+     *
+     * @param timestamp A moment in milliseconds since the epoch.
+     * @return Midnight of that day in the default time zone, in milliseconds since the epoch.
+     */
+    public static long startOfDay(long timestamp) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(timestamp);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
     }
 
     /**
@@ -0,0 +1,131 @@
+package com.example.WaterWise.utils;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * StartupTrace records how long each stage of a cold start takes. A stage is either measured
+ * between begin and end, or marked at a single point and measured from the origin, usually the
+ * time the process started. Each stage is recorded once; later calls for the same stage are
+ * ignored, so only the cold start is measured. All times are in milliseconds on the same clock
+ * as the origin.
+ */
+public class StartupTrace {
+    // Stages of the DataModel startup
+    public static final String STAGE_LOCAL_STORE_OPEN = "local_store_open";
+    public static final String STAGE_RECORDS_DECODE = "records_decode";
+    public static final String STAGE_FIRST_RENDER = "first_render";
+    public static final String STAGE_FIRST_FIRESTORE_RESPONSE = "first_firestore_response";
+    // First values shown from the local Firestore cache and first values confirmed by the server
+    public static final String STAGE_FIRST_CACHE_PAINT = "first_cache_paint";
+    public static final String STAGE_FIRST_SERVER_PAINT = "first_server_paint";
+
+    private final long originMillis;
+    // Start times of stages that have begun but not ended
+    private final Map<String, Long> started = new HashMap<>();
+    // Recorded stages as {end offset from origin, duration}, in the order they ended
+    private final Map<String, long[]> recorded = new LinkedHashMap<>();
+
+    /**
+     * Creates a trace whose offsets are measured from the given origin.
+     *
+     * @param originMillis The origin of the trace, e.g. the process start time.
+     */
+    public StartupTrace(long originMillis) {
+        this.originMillis = originMillis;
+    }
+
+    /**
+     * Starts measuring a stage.
+     *
+     * @param stage      The name of the stage.
+     * @param nowMillis  The current time.
+     */
+    public synchronized void begin(String stage, long nowMillis) {
+        if (!recorded.containsKey(stage) && !started.containsKey(stage)) {
+            started.put(stage, nowMillis);
+        }
+    }
+
+    /**
+     * Finishes measuring a stage. A stage that never began is measured from the origin.
+     *
+     * @param stage     The name of the stage.
+     * @param nowMillis The current time.
+     * @return True if the stage was recorded by this call, false if it was already recorded.
+     */
+    public synchronized boolean end(String stage, long nowMillis) {
+        if (recorded.containsKey(stage)) {
+            return false;
+        }
+        Long startMillis = started.remove(stage);
+        long duration = nowMillis - (startMillis != null ? startMillis : originMillis);
+        recorded.put(stage, new long[]{nowMillis - originMillis, duration});
+        return true;
+    }
+
+    /**
+     * Records a stage that happens at a single point, such as the first frame.
+     *
+     * @param stage     The name of the stage.
+     * @param nowMillis The current time.
+     * @return True if the stage was recorded by this call, false if it was already recorded.
+     */
+    public synchronized boolean mark(String stage, long nowMillis) {
+        started.remove(stage);
+        return end(stage, nowMillis);
+    }
+
+    /**
+     * Gets how long a recorded stage took.
+     *
+     * @param stage The name of the stage.
+     * @return The duration in milliseconds, or -1 if the stage was not recorded.
+     */
+    public synchronized long getDuration(String stage) {
+        long[] times = recorded.get(stage);
+        return times != null ? times[1] : -1;
+    }
+
+    /**
+     * Gets when a recorded stage finished, relative to the origin.
+     *
+     * @param stage The name of the stage.
+     * @return The offset in milliseconds, or -1 if the stage was not recorded.
+     */
+    public synchronized long getOffset(String stage) {
+        long[] times = recorded.get(stage);
+        return times != null ? times[0] : -1;
+    }
+
+    /**
+     * Describes a recorded stage for logging, e.g. "records_decode took 12 ms, done at 340 ms".
+     *
+     * @param stage The name of the stage.
+     * @return The description, or null if the stage was not recorded.
+     */
+    public synchronized String describe(String stage) {
+        long[] times = recorded.get(stage);
+        if (times == null) {
+            return null;
+        }
+        return stage + " took " + times[1] + " ms, done at " + times[0] + " ms";
+    }
+
+    /**
+     * Describes every recorded stage in the order they finished.
+     *
+     * @return One line per stage.
+     */
+    public synchronized String summary() {
+        StringBuilder builder = new StringBuilder();
+        for (String stage : recorded.keySet()) {
+            if (builder.length() > 0) {
+                builder.append('\n');
+            }
+            builder.append(describe(stage));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.WaterWise.utils;
+
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+public class ViewUtils {
+
+    /**
+     * Runs an action once, right after the view has drawn its first frame. Useful for deferring
+     * work that is not needed for the first frame, such as network refreshes.
+     *
+     * @param view   The view to watch, usually the window's decor view.
+     * @param action The action to run on the main thread after the first frame.
+     */
+    public static void runAfterFirstFrame(View view, Runnable action) {
+        view.getViewTreeObserver().addOnDrawListener(new ViewTreeObserver.OnDrawListener() {
+            private boolean drawn;
+
+            @Override
+            public void onDraw() {
+                if (drawn) {
+                    return;
+                }
+                drawn = true;
+                // Listeners can't be removed while they are dispatched, and posting also lets the frame finish first
+                view.post(() -> {
+                    view.getViewTreeObserver().removeOnDrawListener(this);
+                    action.run();
+                });
+            }
+        });
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.WaterWise.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class AppForegroundTest {
+    private final AppForeground foreground = new AppForeground();
+    private final List<String> events = new ArrayList<>();
+    private final AppForeground.Listener listener = new AppForeground.Listener() {
+        @Override
+        public void onForeground() {
+            events.add("foreground");
+        }
+
+        @Override
+        public void onBackground() {
+            events.add("background");
+        }
+    };
+
+    @Test
+    public void testListenerAddedWhileStartedSeesNoBackgroundOnHandOver() {
+        // The login screen is started when the repository is created for the new user
+        foreground.onActivityStarted(null);
+        foreground.addListener(listener);
+
+        // Home starts before login stops
+        foreground.onActivityStarted(null);
+        foreground.onActivityStopped(null);
+
+        assertTrue(foreground.isInForeground());
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void testLastStopAndFirstStartAreReported() {
+        foreground.addListener(listener);
+        foreground.onActivityStarted(null);
+        foreground.onActivityStarted(null);
+        foreground.onActivityStopped(null);
+        foreground.onActivityStopped(null);
+
+        assertFalse(foreground.isInForeground());
+        assertEquals(2, events.size());
+        assertEquals("foreground", events.get(0));
+        assertEquals("background", events.get(1));
+    }
+
+    @Test
+    public void testRemovedListenerIsNotNotified() {
+        foreground.addListener(listener);
+        foreground.removeListener(listener);
+
+        foreground.onActivityStarted(null);
+
+        assertTrue(events.isEmpty());
+    }
+}
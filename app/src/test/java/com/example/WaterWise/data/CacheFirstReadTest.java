@@ -0,0 +1,58 @@
+package com.example.WaterWise.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CacheFirstReadTest {
+
+    @Test
+    public void testSameServerValueIsNotDeliveredAgain() {
+        CacheFirstRead<String> read = new CacheFirstRead<>(100);
+
+        assertTrue(read.onCacheResult("2024-01-05", 105));
+        assertFalse(read.onServerResult("2024-01-05", 400));
+
+        assertTrue(read.isServedFromCache());
+        assertEquals(5, read.getCacheLatencyMillis());
+        assertEquals(300, read.getServerLatencyMillis());
+    }
+
+    @Test
+    public void testChangedServerValueIsDelivered() {
+        CacheFirstRead<String> read = new CacheFirstRead<>(0);
+
+        assertTrue(read.onCacheResult("2024-01-05", 5));
+        assertTrue(read.onServerResult("2023-12-01", 300));
+    }
+
+    @Test
+    public void testCacheMissWaitsForServer() {
+        CacheFirstRead<Integer> read = new CacheFirstRead<>(0);
+
+        assertFalse(read.onCacheResult(null, 5));
+        assertTrue(read.onServerResult(1500, 300));
+        assertFalse(read.isServedFromCache());
+    }
+
+    @Test
+    public void testLateCacheValueIsDropped() {
+        CacheFirstRead<Integer> read = new CacheFirstRead<>(0);
+
+        assertTrue(read.onServerResult(1500, 300));
+        assertFalse(read.onCacheResult(1200, 310));
+    }
+
+    @Test
+    public void testServerFailureIsDeliveredOnlyWithoutCachedValue() {
+        CacheFirstRead<Integer> cached = new CacheFirstRead<>(0);
+        cached.onCacheResult(1200, 5);
+        assertFalse(cached.onServerFailed(50));
+
+        CacheFirstRead<Integer> missed = new CacheFirstRead<>(0);
+        missed.onCacheResult(null, 5);
+        assertTrue(missed.onServerFailed(50));
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.WaterWise.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.WaterWise.history.DailyIntakeBuckets;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class DailyTotalsCacheTest {
+    private final Map<Long, Integer> stored = new HashMap<>();
+    private final List<long[]> diskReads = new ArrayList<>();
+    private final DailyTotalsCache cache = new DailyTotalsCache((startEpochDay, endEpochDay) -> {
+        diskReads.add(new long[]{startEpochDay, endEpochDay});
+        DailyIntakeBuckets buckets = new DailyIntakeBuckets(startEpochDay, endEpochDay);
+        for (long day = startEpochDay; day <= endEpochDay; day++) {
+            Integer total = stored.get(day);
+            if (total != null) {
+                buckets.add(day, total);
+            }
+        }
+        return buckets;
+    });
+
+    @Test
+    public void testSegmentIsReadFromDiskOnce() {
+        stored.put(100L, 500);
+        stored.put(101L, 700);
+
+        DailyIntakeBuckets first = cache.get(100, 101);
+        DailyIntakeBuckets second = cache.get(96, 101);
+
+        assertEquals(500, first.getTotal(100));
+        assertEquals(700, second.getTotal(101));
+        // Days 96 to 127 are one segment
+        assertEquals(1, diskReads.size());
+        assertEquals(96, diskReads.get(0)[0]);
+        assertEquals(1, cache.getMemoryMisses());
+        assertEquals(1, cache.getMemoryHits());
+    }
+
+    @Test
+    public void testRangeAcrossSegments() {
+        stored.put(95L, 300);
+        stored.put(96L, 400);
+
+        DailyIntakeBuckets buckets = cache.get(90, 100);
+
+        assertEquals(11, buckets.size());
+        assertEquals(300, buckets.getTotal(95));
+        assertEquals(400, buckets.getTotal(96));
+        assertEquals(2, diskReads.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedSegmentIsEvicted() {
+        for (int i = 0; i <= DailyTotalsCache.MAX_SEGMENTS; i++) {
+            cache.get(i * DailyTotalsCache.SEGMENT_DAYS, i * DailyTotalsCache.SEGMENT_DAYS);
+        }
+        assertEquals(1, cache.getEvictions());
+
+        cache.get(0, 0);
+        assertEquals(DailyTotalsCache.MAX_SEGMENTS + 2, diskReads.size());
+    }
+
+    @Test
+    public void testWritesGoThroughToMemory() {
+        cache.get(100, 100);
+        cache.put(100, 900);
+
+        assertEquals(900, cache.get(100, 100).getTotal(100));
+        assertEquals(1, diskReads.size());
+    }
+
+    @Test
+    public void testStoredWindowIsReadAgainWithoutCompletingSync() {
+        cache.get(100, 100);
+        stored.put(100L, 600);
+
+        cache.invalidate(Collections.singletonList(100L));
+
+        assertEquals(600, cache.get(100, 100).getTotal(100));
+        assertEquals(2, diskReads.size());
+        // Only a completed sync moves the watermark
+        assertTrue(cache.needsSync(100, 100, 400, 0));
+    }
+
+    @Test
+    public void testPastDaysNeedSyncUntilCoveredByWatermark() {
+        assertTrue(cache.needsSync(100, 400, 400, 0));
+        assertEquals(1, cache.getNetworkMisses());
+
+        HistorySyncWatermark watermark = HistorySyncWatermark.decode(null);
+        watermark.advance(100, 400, 0);
+        cache.onSynced(watermark, Collections.emptyList(), 0);
+
+        assertFalse(cache.needsSync(100, 399, 400, 0));
+        assertFalse(cache.needsSync(100, 400, 400, DailyTotalsCache.TODAY_TTL_MILLIS - 1));
+        // A new day was never synced
+        assertTrue(cache.needsSync(100, 401, 401, 0));
+    }
+
+    @Test
+    public void testTodayIsRevalidatedAfterTtl() {
+        HistorySyncWatermark watermark = HistorySyncWatermark.decode("100,399,0");
+        cache.setWatermark(watermark);
+        assertTrue(cache.needsSync(100, 400, 400, 0));
+
+        cache.onSynced(watermark, Collections.emptyList(), 1000);
+
+        assertFalse(cache.needsSync(100, 400, 400, 1000 + DailyTotalsCache.TODAY_TTL_MILLIS - 1));
+        assertTrue(cache.needsSync(100, 400, 400, 1000 + DailyTotalsCache.TODAY_TTL_MILLIS));
+        // Past days alone never expire
+        assertFalse(cache.needsSync(100, 399, 400, Long.MAX_VALUE / 2));
+        assertEquals(2, cache.getStaleHits());
+    }
+
+    @Test
+    public void testChangedDaysAreReadAgainAfterSync() {
+        stored.put(100L, 500);
+        cache.get(100, 100);
+        stored.put(100L, 800);
+
+        cache.onSynced(HistorySyncWatermark.decode(null), Collections.singletonList(100L), 0);
+
+        assertEquals(800, cache.get(100, 100).getTotal(100));
+        assertEquals(2, diskReads.size());
+    }
+}
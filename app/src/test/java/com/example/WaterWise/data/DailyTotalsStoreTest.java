@@ -0,0 +1,149 @@
+package com.example.WaterWise.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.WaterWise.history.DailyIntakeBuckets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+public class DailyTotalsStoreTest {
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("daily_totals", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testSetAndReopen() throws IOException {
+        try (DailyTotalsStore store = new DailyTotalsStore(file)) {
+            store.set(19000, 1500);
+            store.set(19002, 800);
+            assertEquals(0, store.get(19001));
+        }
+        try (DailyTotalsStore store = new DailyTotalsStore(file)) {
+            assertEquals(1500, store.get(19000));
+            assertEquals(800, store.get(19002));
+            assertEquals(0, store.get(18999));
+            assertEquals(0, store.get(19003));
+        }
+    }
+
+    @Test
+    public void testGrowsPastCapacityAndBeforeFirstDay() throws IOException {
+        try (DailyTotalsStore store = new DailyTotalsStore(file)) {
+            store.set(19000, 100);
+            store.set(19000 + 1000, 200);
+            // Moving the first day earlier keeps every stored total on its day
+            store.set(18500, 300);
+            assertEquals(100, store.get(19000));
+            assertEquals(200, store.get(20000));
+            assertEquals(300, store.get(18500));
+            assertEquals(0, store.get(18501));
+        }
+        try (DailyTotalsStore store = new DailyTotalsStore(file)) {
+            assertEquals(100, store.get(19000));
+            assertEquals(200, store.get(20000));
+            assertEquals(300, store.get(18500));
+        }
+    }
+
+    @Test
+    public void testLoadReturnsRangeNewestFirst() throws IOException {
+        try (DailyTotalsStore store = new DailyTotalsStore(file)) {
+            store.set(100, 1);
+            store.set(101, 2);
+            store.set(102, 3);
+
+            // The range extends past the stored days on both ends
+            DailyIntakeBuckets buckets = store.load(99, 103);
+            assertEquals(5, buckets.size());
+            assertEquals(103, buckets.getEpochDayAt(0));
+            assertEquals(0, buckets.getTotalAt(0));
+            assertEquals(3, buckets.getTotalAt(1));
+            assertEquals(1, buckets.getTotalAt(3));
+            assertEquals(99, buckets.getEpochDayAt(4));
+        }
+    }
+
+    @Test
+    public void testMergeKeepsLargerTotalForUnsyncedDays() throws IOException {
+        try (DailyTotalsStore store = new DailyTotalsStore(file)) {
+            store.set(10, 500);
+            store.set(12, 900);
+            DailyIntakeBuckets fetched = new DailyIntakeBuckets(10, new int[]{0, 300, 400});
+            List<Long> changed = store.merge(fetched, Collections.singleton(12L));
+
+            // Synced days take the server value, today keeps the unsynced local total
+            DailyIntakeBuckets buckets = store.load(10, 12);
+            assertArrayEquals(new int[]{900, 300, 0},
+                    new int[]{buckets.getTotalAt(0), buckets.getTotalAt(1), buckets.getTotalAt(2)});
+            assertEquals(Arrays.asList(10L, 11L), changed);
+        }
+    }
+
+    @Test
+    public void testMergeOfSingleDays() throws IOException {
+        try (DailyTotalsStore store = new DailyTotalsStore(file)) {
+            store.set(100, 500);
+            Map<Long, Integer> fetched = new HashMap<>();
+            fetched.put(90L, 700);
+            fetched.put(100L, 500);
+            fetched.put(105L, 200);
+            List<Long> changed = store.merge(fetched, new HashSet<>(Collections.singletonList(105L)));
+
+            assertEquals(700, store.get(90));
+            assertEquals(0, store.get(95));
+            assertEquals(500, store.get(100));
+            assertEquals(200, store.get(105));
+            assertEquals(new HashSet<>(Arrays.asList(90L, 105L)), new HashSet<>(changed));
+        }
+    }
+
+    @Test
+    public void testCorruptHeaderIsDiscarded() throws IOException {
+        try (DailyTotalsStore store = new DailyTotalsStore(file)) {
+            store.set(19000, 1500);
+        }
+        try (DailyTotalsStore store = new DailyTotalsStore(file)) {
+            assertFalse(store.wasReset());
+        }
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.writeInt(0);
+        }
+        try (DailyTotalsStore store = new DailyTotalsStore(file)) {
+            assertTrue(store.wasReset());
+            assertEquals(0, store.get(19000));
+            store.set(19000, 700);
+            assertEquals(700, store.get(19000));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsRangeLongerThanACentury() throws IOException {
+        try (DailyTotalsStore store = new DailyTotalsStore(file)) {
+            store.set(0, 1);
+            store.set(DailyTotalsStore.MAX_DAYS, 1);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.WaterWise.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+
+public class DaySummaryTest {
+
+    private static long at(int hour, int minute) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(2024, Calendar.MARCH, 10, hour, minute, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    @Test
+    public void testRecordsAreBucketedByHour() {
+        DaySummary summary = DaySummary.fromFields(null);
+        summary.add(at(8, 5), 200);
+        summary.add(at(8, 55), 300);
+        summary.add(at(23, 59), 250);
+
+        assertEquals(500, summary.getHourly(8));
+        assertEquals(250, summary.getHourly(23));
+        assertEquals(0, summary.getHourly(12));
+        assertTrue(summary.matches(750, 3));
+    }
+
+    @Test
+    public void testLateRecordsAreFoldedIntoExistingSummary() {
+        DaySummary first = DaySummary.fromFields(null);
+        first.add(at(9, 0), 400);
+        Map<String, Object> document = new HashMap<>(first.toFields());
+        // Written later by a device that was offline, then counted by the running aggregate
+        document.put("total", 650L);
+        document.put("count", 2L);
+
+        DaySummary second = DaySummary.fromFields(document);
+        assertFalse(second.matches(650, 2));
+        second.add(at(9, 30), 250);
+
+        assertTrue(second.matches(650, 2));
+        assertEquals(650, second.getHourly(9));
+    }
+
+    @Test
+    public void testMismatchIsDetected() {
+        DaySummary summary = DaySummary.fromFields(null);
+        summary.add(at(10, 0), 200);
+
+        assertFalse(summary.matches(450, 2));
+        assertFalse(summary.matches(200, 2));
+    }
+
+    @Test
+    public void testFieldsRoundTrip() {
+        DaySummary summary = DaySummary.fromFields(null);
+        summary.add(at(7, 0), 100);
+        summary.add(at(21, 0), 300);
+
+        DaySummary read = DaySummary.fromFields(summary.toFields());
+
+        assertEquals(400, read.getCompactedTotal());
+        assertEquals(2, read.getCompactedCount());
+        assertEquals(300, read.getHourly(21));
+    }
+}
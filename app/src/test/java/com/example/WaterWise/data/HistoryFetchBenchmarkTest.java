@@ -0,0 +1,164 @@
+package com.example.WaterWise.data;
+
+import static org.junit.Assert.assertEquals;
+
+import com.example.WaterWise.history.DailyIntakeBuckets;
+import com.example.WaterWise.utils.HistoryUtils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares the per-day history fetch, one query on the records per day, against the windowed
+ * fetch of FirestoreHelper.fetchIntakeWindowsAsync, one range query on the daily aggregates per
+ * window of {@link HistoryUtils#splitIntoWindows(long, long, int, int)}. Both run against an
+ * in-memory store that stands in for Firestore and counts every query it serves.
+ *
+ * The tests check the query counts and that both fetches give the same totals. The wall time of
+ * each fetch is measured by {@link #main(String[])}, which is run on its own rather than as part
+ * of the unit tests.
+ */
+public class HistoryFetchBenchmarkTest {
+    private static final int SIPS_PER_DAY = 8;
+    private static final int ROUNDS = 20;
+    private static final long END_EPOCH_DAY = HistoryUtils.toEpochDay("2024-10-01");
+
+    /**
+     * A fake of the user's records and daily aggregates, both ordered by date like the Firestore
+     * indexes on "date".
+     */
+    private static class FakeRecordStore {
+        private final TreeMap<String, List<Integer>> sipsByDate = new TreeMap<>();
+        private final TreeMap<String, Integer> totalsByDate = new TreeMap<>();
+        int requestCount;
+
+        FakeRecordStore(long startEpochDay, long endEpochDay) {
+            for (long day = startEpochDay; day <= endEpochDay; day++) {
+                List<Integer> sips = new ArrayList<>();
+                int total = 0;
+                for (int i = 0; i < SIPS_PER_DAY; i++) {
+                    int amount = 100 + (int) ((day + i) % 7) * 25;
+                    sips.add(amount);
+                    total += amount;
+                }
+                String date = HistoryUtils.formatEpochDay(day);
+                sipsByDate.put(date, sips);
+                totalsByDate.put(date, total);
+            }
+        }
+
+        // collection("records").whereEqualTo("date", date)
+        List<Integer> queryRecords(String date) {
+            requestCount++;
+            List<Integer> sips = sipsByDate.get(date);
+            return sips != null ? new ArrayList<>(sips) : new ArrayList<>();
+        }
+
+        // collection("daily").whereGreaterThanOrEqualTo("date", start).whereLessThanOrEqualTo("date", end).orderBy("date")
+        List<Map.Entry<String, Integer>> queryDaily(String startDate, String endDate) {
+            requestCount++;
+            return new ArrayList<>(totalsByDate.subMap(startDate, true, endDate, true).entrySet());
+        }
+    }
+
+    private static DailyIntakeBuckets fetchPerDay(FakeRecordStore store, long startEpochDay, long endEpochDay) {
+        DailyIntakeBuckets history = new DailyIntakeBuckets(startEpochDay, endEpochDay);
+        for (long day = startEpochDay; day <= endEpochDay; day++) {
+            for (int amount : store.queryRecords(HistoryUtils.formatEpochDay(day))) {
+                history.add(day, amount);
+            }
+        }
+        return history;
+    }
+
+    private static DailyIntakeBuckets fetchByWindows(FakeRecordStore store, long startEpochDay, long endEpochDay) {
+        DailyIntakeBuckets history = new DailyIntakeBuckets(startEpochDay, endEpochDay);
+        for (long[] window : HistoryUtils.splitIntoWindows(startEpochDay, endEpochDay,
+                FirestoreHelper.FIRST_HISTORY_WINDOW_DAYS, FirestoreHelper.HISTORY_WINDOW_DAYS)) {
+            // Bucketed per window like fetchIntakeWindowAsync, then stored with the other windows
+            DailyIntakeBuckets buckets = new DailyIntakeBuckets(window[0], window[1]);
+            for (Map.Entry<String, Integer> day : store.queryDaily(
+                    HistoryUtils.formatEpochDay(window[0]), HistoryUtils.formatEpochDay(window[1]))) {
+                buckets.add(day.getKey(), day.getValue());
+            }
+            for (long day = window[0]; day <= window[1]; day++) {
+                history.add(day, buckets.getTotal(day));
+            }
+        }
+        return history;
+    }
+
+    private static int expectedWindowRequests(int days) {
+        int olderDays = Math.max(0, days - FirestoreHelper.FIRST_HISTORY_WINDOW_DAYS);
+        return 1 + (olderDays + FirestoreHelper.HISTORY_WINDOW_DAYS - 1) / FirestoreHelper.HISTORY_WINDOW_DAYS;
+    }
+
+    private void assertSameHistory(int days) {
+        long startEpochDay = END_EPOCH_DAY - days + 1;
+        FakeRecordStore store = new FakeRecordStore(startEpochDay, END_EPOCH_DAY);
+
+        DailyIntakeBuckets perDay = fetchPerDay(store, startEpochDay, END_EPOCH_DAY);
+        assertEquals(days, store.requestCount);
+        store.requestCount = 0;
+        DailyIntakeBuckets byWindows = fetchByWindows(store, startEpochDay, END_EPOCH_DAY);
+        assertEquals(expectedWindowRequests(days), store.requestCount);
+
+        assertEquals(days, byWindows.size());
+        for (long day = startEpochDay; day <= END_EPOCH_DAY; day++) {
+            assertEquals(perDay.getTotal(day), byWindows.getTotal(day));
+        }
+    }
+
+    @Test
+    public void test30Days() {
+        assertSameHistory(30);
+    }
+
+    @Test
+    public void test365Days() {
+        assertSameHistory(365);
+    }
+
+    @Test
+    public void test1000Days() {
+        assertSameHistory(1000);
+    }
+
+    /**
+     * Reports the query count and the best wall time of both fetches over {@value #ROUNDS}
+     * rounds, for 30, 365 and 1000 days of history.
+     *
+     * @param args Unused.
+     */
+    public static void main(String[] args) {
+        for (int days : new int[]{30, 365, 1000}) {
+            long startEpochDay = END_EPOCH_DAY - days + 1;
+            FakeRecordStore store = new FakeRecordStore(startEpochDay, END_EPOCH_DAY);
+            long perDayNanos = Long.MAX_VALUE;
+            long windowNanos = Long.MAX_VALUE;
+            int perDayRequests = 0;
+            int windowRequests = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                store.requestCount = 0;
+                long begin = System.nanoTime();
+                fetchPerDay(store, startEpochDay, END_EPOCH_DAY);
+                perDayNanos = Math.min(perDayNanos, System.nanoTime() - begin);
+                perDayRequests = store.requestCount;
+
+                store.requestCount = 0;
+                begin = System.nanoTime();
+                fetchByWindows(store, startEpochDay, END_EPOCH_DAY);
+                windowNanos = Math.min(windowNanos, System.nanoTime() - begin);
+                windowRequests = store.requestCount;
+            }
+            System.out.println(String.format(Locale.US,
+                    "history %4d days: per-day %4d requests %8.3f ms | windows %2d requests %8.3f ms",
+                    days, perDayRequests, perDayNanos / 1e6, windowRequests, windowNanos / 1e6));
+        }
+    }
+}
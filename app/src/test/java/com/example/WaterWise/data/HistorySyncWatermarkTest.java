@@ -0,0 +1,105 @@
+package com.example.WaterWise.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+public class HistorySyncWatermarkTest {
+
+    @Test
+    public void testWholeHistoryIsFetchedWithoutWatermark() {
+        HistorySyncWatermark watermark = HistorySyncWatermark.decode(null);
+
+        List<long[]> ranges = watermark.rangesToFetch(100, 400);
+
+        assertFalse(watermark.isSynced());
+        assertNull(watermark.encode());
+        assertEquals(1, ranges.size());
+        assertArrayEquals(new long[]{100, 400}, ranges.get(0));
+    }
+
+    @Test
+    public void testWholeHistoryIsFetchedAfterTotalsAreReset() throws IOException {
+        File file = File.createTempFile("daily_totals", ".bin");
+        try {
+            HistorySyncWatermark synced = HistorySyncWatermark.decode(null);
+            synced.advance(100, 400, 5000L);
+            try (DailyTotalsStore store = new DailyTotalsStore(file)) {
+                store.set(200, 1500);
+            }
+            try (DailyTotalsStore store = new DailyTotalsStore(file)) {
+                assertTrue(HistorySyncWatermark.decode(synced.encode(), store).isSynced());
+            }
+            // A restored backup left the watermark but not the totals it describes
+            try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+                raw.setLength(3);
+            }
+
+            try (DailyTotalsStore store = new DailyTotalsStore(file)) {
+                HistorySyncWatermark watermark = HistorySyncWatermark.decode(synced.encode(), store);
+                List<long[]> ranges = watermark.rangesToFetch(100, 401);
+
+                assertFalse(watermark.isSynced());
+                assertEquals(1, ranges.size());
+                assertArrayEquals(new long[]{100, 401}, ranges.get(0));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testOnlyDaysAfterWatermarkAreFetched() {
+        HistorySyncWatermark watermark = HistorySyncWatermark.decode(null);
+        watermark.advance(100, 400, 5000L);
+
+        // Today was not final at the last sync, so it is fetched again with the new day
+        List<long[]> ranges = watermark.rangesToFetch(100, 401);
+
+        assertEquals(1, ranges.size());
+        assertArrayEquals(new long[]{400, 401}, ranges.get(0));
+        assertEquals(5000L, watermark.getLastUpdateMillis());
+    }
+
+    @Test
+    public void testEarlierStartFetchesMissingDays() {
+        HistorySyncWatermark watermark = HistorySyncWatermark.decode("100,399,5000");
+
+        List<long[]> ranges = watermark.rangesToFetch(80, 400);
+
+        assertEquals(2, ranges.size());
+        assertArrayEquals(new long[]{80, 99}, ranges.get(0));
+        assertArrayEquals(new long[]{400, 400}, ranges.get(1));
+    }
+
+    @Test
+    public void testAdvanceNeverMovesBack() {
+        HistorySyncWatermark watermark = HistorySyncWatermark.decode("80,399,5000");
+
+        watermark.advance(100, 300, 4000L);
+
+        assertEquals("80,399,5000", watermark.encode());
+    }
+
+    @Test
+    public void testRoundTripAndMalformedValue() {
+        HistorySyncWatermark watermark = HistorySyncWatermark.decode(null);
+        watermark.advance(100, 400, 1234L);
+
+        HistorySyncWatermark decoded = HistorySyncWatermark.decode(watermark.encode());
+
+        assertTrue(decoded.isSynced());
+        assertEquals(watermark.encode(), decoded.encode());
+        assertFalse(HistorySyncWatermark.decode("100,x,0").isSynced());
+        assertFalse(HistorySyncWatermark.decode("100").isSynced());
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.WaterWise.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.WaterWise.utils.HistoryUtils;
+
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Checks the windows that FirestoreHelper.fetchIntakeWindowsAsync reads the history in: one range
+ * query per window instead of one query per day.
+ */
+public class HistoryWindowsTest {
+    private static final long END_EPOCH_DAY = HistoryUtils.toEpochDay("2024-10-01");
+
+    private List<long[]> windowsOf(int days) {
+        return HistoryUtils.splitIntoWindows(END_EPOCH_DAY - days + 1, END_EPOCH_DAY,
+                FirestoreHelper.FIRST_HISTORY_WINDOW_DAYS, FirestoreHelper.HISTORY_WINDOW_DAYS);
+    }
+
+    private void assertCoversHistory(int days) {
+        List<long[]> windows = windowsOf(days);
+        int olderDays = Math.max(0, days - FirestoreHelper.FIRST_HISTORY_WINDOW_DAYS);
+        assertEquals(1 + (olderDays + FirestoreHelper.HISTORY_WINDOW_DAYS - 1) / FirestoreHelper.HISTORY_WINDOW_DAYS,
+                windows.size());
+
+        // Newest first, without gaps or overlaps, down to the first day
+        long nextEnd = END_EPOCH_DAY;
+        for (int i = 0; i < windows.size(); i++) {
+            long[] window = windows.get(i);
+            assertEquals(nextEnd, window[1]);
+            assertTrue(window[0] <= window[1]);
+            int maxDays = i == 0 ? FirestoreHelper.FIRST_HISTORY_WINDOW_DAYS : FirestoreHelper.HISTORY_WINDOW_DAYS;
+            assertTrue(window[1] - window[0] + 1 <= maxDays);
+            nextEnd = window[0] - 1;
+        }
+        assertEquals(END_EPOCH_DAY - days, nextEnd);
+    }
+
+    @Test
+    public void testMonthIsReadInOneQuery() {
+        assertCoversHistory(30);
+        assertEquals(1, windowsOf(FirestoreHelper.FIRST_HISTORY_WINDOW_DAYS).size());
+    }
+
+    @Test
+    public void testYearIsReadInFewQueries() {
+        assertCoversHistory(365);
+        assertEquals(FirestoreHelper.FIRST_HISTORY_WINDOW_DAYS, windowsOf(365).get(0)[1] - windowsOf(365).get(0)[0] + 1);
+    }
+
+    @Test
+    public void testTenYearsAreReadInFewQueries() {
+        assertCoversHistory(1000);
+        assertCoversHistory(3653);
+        assertTrue(windowsOf(3653).size() <= 3653 / FirestoreHelper.HISTORY_WINDOW_DAYS + 2);
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.WaterWise.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class IntakeCounterTest {
+    private static final String[] DEVICES = {"phone", "tablet", "watch"};
+
+    private static IntakeCounter counter(String device, long value) {
+        IntakeCounter counter = new IntakeCounter();
+        counter.raise(device, value);
+        return counter;
+    }
+
+    private static IntakeCounter copy(IntakeCounter counter) {
+        return IntakeCounter.decode(counter.encode());
+    }
+
+    @Test
+    public void testConcurrentLogsAreBothKept() {
+        IntakeCounter phone = new IntakeCounter();
+        IntakeCounter tablet = new IntakeCounter();
+        phone.add("phone", 250);
+        tablet.add("tablet", 300);
+
+        assertTrue(phone.merge(tablet));
+        assertTrue(tablet.merge(phone));
+
+        assertEquals(550, phone.total());
+        assertEquals(phone, tablet);
+    }
+
+    @Test
+    public void testStaleCopyDoesNotLowerTotal() {
+        IntakeCounter current = counter("phone", 800);
+        assertFalse(current.merge(counter("phone", 500)));
+        assertEquals(800, current.total());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeAmountIsRejected() {
+        new IntakeCounter().add("phone", -100);
+    }
+
+    @Test
+    public void testAggregateFieldsKeepUnattributedIntake() {
+        Map<String, Object> devices = new HashMap<>();
+        devices.put("phone", 400L);
+        devices.put("tablet", 250L);
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(IntakeCounter.FIELD_DEVICES, devices);
+        // 200 ml logged by a version that does not write device slots
+        fields.put("total", 850L);
+
+        IntakeCounter counter = IntakeCounter.fromFields(fields);
+
+        assertEquals(850, counter.total());
+        assertEquals(200, counter.get(IntakeCounter.UNATTRIBUTED));
+        assertEquals(0, IntakeCounter.fromFields(null).total());
+    }
+
+    @Test
+    public void testEncodingRoundTrip() {
+        IntakeCounter counter = counter("8a1f-42c0", 500);
+        counter.raise(IntakeCounter.UNATTRIBUTED, 120);
+
+        assertEquals(counter, IntakeCounter.decode(counter.encode()));
+        assertEquals(0, IntakeCounter.decode("garbage").total());
+        assertEquals(0, IntakeCounter.decode(null).total());
+    }
+
+    @Test
+    public void testMergeIsCommutativeAssociativeAndIdempotent() {
+        Random random = new Random(7);
+        for (int round = 0; round < 500; round++) {
+            IntakeCounter a = randomCounter(random);
+            IntakeCounter b = randomCounter(random);
+            IntakeCounter c = randomCounter(random);
+
+            IntakeCounter ab = copy(a);
+            ab.merge(b);
+            IntakeCounter ba = copy(b);
+            ba.merge(a);
+            assertEquals(ab, ba);
+
+            IntakeCounter abThenC = copy(ab);
+            abThenC.merge(c);
+            IntakeCounter bc = copy(b);
+            bc.merge(c);
+            IntakeCounter aThenBc = copy(a);
+            aThenBc.merge(bc);
+            assertEquals(abThenC, aThenBc);
+
+            IntakeCounter twice = copy(ab);
+            assertFalse(twice.merge(b));
+            assertEquals(ab, twice);
+        }
+    }
+
+    /**
+     * Simulates devices logging intake while offline and exchanging their counters in random
+     * order, with messages duplicated and delivered late. Once every device has received every
+     * state, all of them must show the sum of everything logged.
+     */
+    @Test
+    public void testRandomInterleavingsConverge() {
+        for (long seed = 0; seed < 200; seed++) {
+            Random random = new Random(seed);
+            Map<String, IntakeCounter> replicas = new HashMap<>();
+            for (String device : DEVICES) {
+                replicas.put(device, new IntakeCounter());
+            }
+            // States sent and not delivered yet, as {recipient, encoded counter}
+            List<String[]> inFlight = new ArrayList<>();
+            long logged = 0;
+            for (int step = 0; step < 60; step++) {
+                String device = DEVICES[random.nextInt(DEVICES.length)];
+                IntakeCounter replica = replicas.get(device);
+                switch (random.nextInt(3)) {
+                    case 0:
+                        int amount = 50 * (1 + random.nextInt(10));
+                        replica.add(device, amount);
+                        logged += amount;
+                        break;
+                    case 1:
+                        String recipient = DEVICES[random.nextInt(DEVICES.length)];
+                        inFlight.add(new String[]{recipient, replica.encode()});
+                        break;
+                    default:
+                        if (!inFlight.isEmpty()) {
+                            String[] message = inFlight.get(random.nextInt(inFlight.size()));
+                            // Left in flight, so it may be delivered again later
+                            replicas.get(message[0]).merge(IntakeCounter.decode(message[1]));
+                        }
+                        break;
+                }
+                for (IntakeCounter counter : replicas.values()) {
+                    assertTrue(counter.total() <= logged);
+                }
+            }
+            Collections.shuffle(inFlight, random);
+            for (String[] message : inFlight) {
+                replicas.get(message[0]).merge(IntakeCounter.decode(message[1]));
+            }
+            // Anti-entropy: every device sends its final state to every other
+            for (String from : DEVICES) {
+                for (String to : DEVICES) {
+                    replicas.get(to).merge(copy(replicas.get(from)));
+                }
+            }
+            for (String device : DEVICES) {
+                assertEquals("seed " + seed, logged, replicas.get(device).total());
+                assertEquals(replicas.get(DEVICES[0]), replicas.get(device));
+            }
+        }
+    }
+
+    private static IntakeCounter randomCounter(Random random) {
+        IntakeCounter counter = new IntakeCounter();
+        for (String device : DEVICES) {
+            if (random.nextBoolean()) {
+                counter.raise(device, random.nextInt(3000));
+            }
+        }
+        return counter;
+    }
+}
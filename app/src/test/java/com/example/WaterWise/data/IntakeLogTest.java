@@ -0,0 +1,145 @@
+package com.example.WaterWise.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+public class IntakeLogTest {
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("intake", ".log");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    @Test
+    public void testAppendAndReopen() throws IOException {
+        try (IntakeLog log = new IntakeLog(file)) {
+            assertEquals(0, log.append(1000L, 200, IntakeLog.STATE_PENDING));
+            assertEquals(1, log.append(2000L, 500, IntakeLog.STATE_SYNCED));
+        }
+        try (IntakeLog log = new IntakeLog(file)) {
+            List<IntakeLog.Entry> entries = log.readAll();
+            assertEquals(2, entries.size());
+            assertEquals(1000L, entries.get(0).timestamp);
+            assertEquals(200, entries.get(0).amount);
+            assertEquals(IntakeLog.STATE_PENDING, entries.get(0).syncState);
+            assertEquals(500, entries.get(1).amount);
+            assertEquals(1, log.readSince(1500L).size());
+        }
+    }
+
+    @Test
+    public void testTornTailIsTruncated() throws IOException {
+        try (IntakeLog log = new IntakeLog(file)) {
+            log.append(1000L, 200, IntakeLog.STATE_SYNCED);
+            log.append(2000L, 500, IntakeLog.STATE_SYNCED);
+        }
+        // Simulate process death in the middle of writing the second entry
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.setLength(IntakeLog.ENTRY_SIZE + 7);
+        }
+        try (IntakeLog log = new IntakeLog(file)) {
+            assertEquals(1, log.size());
+            assertEquals(IntakeLog.ENTRY_SIZE, file.length());
+            // Appending after recovery continues right after the last valid entry
+            log.append(3000L, 1000, IntakeLog.STATE_PENDING);
+        }
+        try (IntakeLog log = new IntakeLog(file)) {
+            assertEquals(2, log.size());
+            assertEquals(1000, log.readAll().get(1).amount);
+        }
+    }
+
+    @Test
+    public void testCorruptEntryIsTruncated() throws IOException {
+        try (IntakeLog log = new IntakeLog(file)) {
+            log.append(1000L, 200, IntakeLog.STATE_SYNCED);
+            log.append(2000L, 500, IntakeLog.STATE_SYNCED);
+            log.append(3000L, 700, IntakeLog.STATE_SYNCED);
+        }
+        // Flip a byte in the amount of the second entry so its checksum no longer matches
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(IntakeLog.ENTRY_SIZE + 9);
+            raw.write(0x7f);
+        }
+        try (IntakeLog log = new IntakeLog(file)) {
+            assertEquals(1, log.size());
+            assertEquals(200, log.readAll().get(0).amount);
+        }
+    }
+
+    @Test
+    public void testSetSyncState() throws IOException {
+        try (IntakeLog log = new IntakeLog(file)) {
+            long index = log.append(1000L, 200, IntakeLog.STATE_PENDING);
+            assertTrue(log.setSyncState(index, 1000L, 0, IntakeLog.STATE_SYNCED));
+            assertFalse(log.setSyncState(index, 9999L, 0, IntakeLog.STATE_SYNCED));
+        }
+        try (IntakeLog log = new IntakeLog(file)) {
+            assertEquals(1, log.size());
+            assertEquals(IntakeLog.STATE_SYNCED, log.readAll().get(0).syncState);
+        }
+    }
+
+    @Test
+    public void testEntriesInTheSameMillisecondAreNumbered() throws IOException {
+        try (IntakeLog log = new IntakeLog(file)) {
+            log.append(1000L, 200, IntakeLog.STATE_PENDING);
+            log.append(1000L, 300, IntakeLog.STATE_PENDING);
+        }
+        try (IntakeLog log = new IntakeLog(file)) {
+            // Numbering carries on after a reopen
+            log.append(1000L, 400, IntakeLog.STATE_PENDING);
+            log.append(2000L, 500, IntakeLog.STATE_PENDING);
+            List<IntakeLog.Entry> entries = log.readAll();
+            assertEquals(0, entries.get(0).sequence);
+            assertEquals(1, entries.get(1).sequence);
+            assertEquals(2, entries.get(2).sequence);
+            assertEquals(0, entries.get(3).sequence);
+
+            // Only the entry with the given sequence is updated
+            assertTrue(log.setSyncState(0, 1000L, 1, IntakeLog.STATE_SYNCED));
+            assertEquals(IntakeLog.STATE_PENDING, log.readAll().get(0).syncState);
+            assertEquals(IntakeLog.STATE_SYNCED, log.readAll().get(1).syncState);
+        }
+    }
+
+    @Test
+    public void testCompactKeepsRecentAndPendingEntries() throws IOException {
+        try (IntakeLog log = new IntakeLog(file)) {
+            log.append(1000L, 100, IntakeLog.STATE_SYNCED);
+            log.append(2000L, 200, IntakeLog.STATE_PENDING);
+            log.append(5000L, 300, IntakeLog.STATE_SYNCED);
+
+            log.compact(4000L);
+
+            List<IntakeLog.Entry> entries = log.readAll();
+            assertEquals(2, entries.size());
+            assertEquals(200, entries.get(0).amount);
+            assertEquals(300, entries.get(1).amount);
+            assertEquals(1, entries.get(1).index);
+            // The pending entry moved from index 1 to 0 and is still found by its timestamp
+            assertTrue(log.setSyncState(1, 2000L, 0, IntakeLog.STATE_SYNCED));
+            assertEquals(IntakeLog.STATE_SYNCED, log.readAll().get(0).syncState);
+            assertEquals(IntakeLog.STATE_SYNCED, log.readAll().get(1).syncState);
+            log.append(6000L, 400, IntakeLog.STATE_PENDING);
+            assertEquals(3, log.size());
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.example.WaterWise.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+public class IntakeOutboxTest {
+    private File file;
+    private IntakeLog log;
+    private final List<Long> delays = new ArrayList<>();
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private final List<Map<String, IntakeLog.Entry>> batches = new ArrayList<>();
+    private final List<FirestoreHelper.SaveCallback> writeCallbacks = new ArrayList<>();
+    private final List<List<String>> lookups = new ArrayList<>();
+    private final List<IntakeOutbox.ExistingRecordsCallback> lookupCallbacks = new ArrayList<>();
+    private int lastPendingCount;
+    private int lastFailedCount;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("outbox", ".log");
+        log = new IntakeLog(file);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        log.close();
+        file.delete();
+    }
+
+    private IntakeOutbox newOutbox() {
+        return new IntakeOutbox(log, "install", (task, delayMillis) -> {
+            delays.add(delayMillis);
+            scheduled.add(task);
+        }, new IntakeOutbox.Sink() {
+            @Override
+            public void write(Map<String, IntakeLog.Entry> recordsById, FirestoreHelper.SaveCallback callback) {
+                batches.add(recordsById);
+                writeCallbacks.add(callback);
+            }
+
+            @Override
+            public void findExisting(List<String> recordIds, IntakeOutbox.ExistingRecordsCallback callback) {
+                lookups.add(recordIds);
+                lookupCallbacks.add(callback);
+            }
+        }, (pendingCount, failedCount) -> {
+            lastPendingCount = pendingCount;
+            lastFailedCount = failedCount;
+        });
+    }
+
+    private void runScheduled() {
+        List<Runnable> tasks = new ArrayList<>(scheduled);
+        scheduled.clear();
+        for (Runnable task : tasks) {
+            task.run();
+        }
+    }
+
+    private void add(IntakeOutbox outbox, long timestamp, int amount) throws IOException {
+        log.append(timestamp, amount, IntakeLog.STATE_PENDING);
+        outbox.onRecordAdded();
+    }
+
+    private int countInState(byte state) throws IOException {
+        int count = 0;
+        for (IntakeLog.Entry entry : log.readAll()) {
+            if (entry.syncState == state) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testBurstIsSentInOneBatch() throws IOException {
+        IntakeOutbox outbox = newOutbox();
+        add(outbox, 1000L, 200);
+        add(outbox, 2000L, 300);
+        add(outbox, 3000L, 250);
+        assertEquals(1, scheduled.size());
+        assertEquals(IntakeOutbox.FLUSH_DELAY_MILLIS, (long) delays.get(0));
+
+        runScheduled();
+
+        assertEquals(1, batches.size());
+        assertEquals(3, batches.get(0).size());
+        assertTrue(batches.get(0).containsKey("install-2000"));
+        assertEquals(3, countInState(IntakeLog.STATE_SENT));
+        assertEquals(3, lastPendingCount);
+
+        writeCallbacks.get(0).onSaved(true);
+        assertEquals(3, countInState(IntakeLog.STATE_SYNCED));
+        assertEquals(0, lastPendingCount);
+    }
+
+    @Test
+    public void testHoldWaitsForBatchInFlightAndStopsSending() throws IOException {
+        IntakeOutbox outbox = newOutbox();
+        add(outbox, 1000L, 200);
+        runScheduled();
+        List<String> events = new ArrayList<>();
+
+        outbox.hold(() -> events.add("idle"));
+        assertTrue(events.isEmpty());
+        writeCallbacks.get(0).onSaved(true);
+        assertEquals(1, events.size());
+
+        // Records added while held wait for the release
+        add(outbox, 2000L, 300);
+        runScheduled();
+        assertEquals(1, batches.size());
+
+        outbox.release();
+        assertEquals(2, batches.size());
+        assertTrue(batches.get(1).containsKey("install-2000"));
+    }
+
+    @Test
+    public void testRecordsInTheSameMillisecondAreAllSent() throws IOException {
+        IntakeOutbox outbox = newOutbox();
+        add(outbox, 1000L, 200);
+        add(outbox, 1000L, 300);
+        runScheduled();
+
+        assertEquals(2, batches.get(0).size());
+        assertTrue(batches.get(0).containsKey("install-1000"));
+        assertTrue(batches.get(0).containsKey("install-1000-1"));
+        writeCallbacks.get(0).onSaved(true);
+        assertEquals(2, countInState(IntakeLog.STATE_SYNCED));
+    }
+
+    @Test
+    public void testOldestUnsyncedTimestampFollowsTheLog() throws IOException {
+        IntakeOutbox outbox = newOutbox();
+        add(outbox, 1000L, 200);
+        add(outbox, 2000L, 300);
+        runScheduled();
+        assertEquals(1000L, outbox.getOldestUnsyncedTimestamp());
+
+        writeCallbacks.get(0).onSaved(true);
+        assertEquals(Long.MAX_VALUE, outbox.getOldestUnsyncedTimestamp());
+    }
+
+    @Test
+    public void testDrainSendsEveryBatchThenReports() throws IOException {
+        IntakeOutbox outbox = newOutbox();
+        for (int i = 0; i < IntakeOutbox.MAX_BATCH_RECORDS + 1; i++) {
+            log.append(1000L + i, 100, IntakeLog.STATE_PENDING);
+        }
+        List<Boolean> drained = new ArrayList<>();
+        outbox.drain(drained::add);
+        assertEquals(1, batches.size());
+
+        writeCallbacks.get(0).onSaved(true);
+        assertTrue(drained.isEmpty());
+        writeCallbacks.get(1).onSaved(true);
+
+        assertEquals(Collections.singletonList(true), drained);
+        assertEquals(0, lastPendingCount);
+    }
+
+    @Test
+    public void testDrainReportsFailedBatch() throws IOException {
+        IntakeOutbox outbox = newOutbox();
+        log.append(1000L, 200, IntakeLog.STATE_PENDING);
+        List<Boolean> drained = new ArrayList<>();
+        outbox.drain(drained::add);
+
+        writeCallbacks.get(0).onSaved(false);
+
+        assertEquals(Collections.singletonList(false), drained);
+        assertEquals(1, scheduled.size());
+    }
+
+    @Test
+    public void testFailedBatchIsRetriedWithBackoff() throws IOException {
+        IntakeOutbox outbox = newOutbox();
+        add(outbox, 1000L, 200);
+        runScheduled();
+        writeCallbacks.get(0).onSaved(false);
+
+        assertEquals(1, lastFailedCount);
+        assertEquals(1, countInState(IntakeLog.STATE_PENDING));
+        assertEquals(IntakeOutbox.INITIAL_BACKOFF_MILLIS, (long) delays.get(1));
+
+        runScheduled();
+        writeCallbacks.get(1).onSaved(false);
+        assertEquals(2 * IntakeOutbox.INITIAL_BACKOFF_MILLIS, (long) delays.get(2));
+
+        // The retried batch carries the same record ID, so it overwrites the same document
+        runScheduled();
+        assertEquals(batches.get(0).keySet(), batches.get(2).keySet());
+        writeCallbacks.get(2).onSaved(true);
+        assertEquals(0, lastFailedCount);
+        assertEquals(0, lastPendingCount);
+        assertEquals(1, countInState(IntakeLog.STATE_SYNCED));
+    }
+
+    @Test
+    public void testRecordsAddedDuringCommitAreSentNext() throws IOException {
+        IntakeOutbox outbox = newOutbox();
+        add(outbox, 1000L, 200);
+        runScheduled();
+        add(outbox, 2000L, 300);
+        add(outbox, 3000L, 300);
+        runScheduled();
+        // The first batch is still in flight
+        assertEquals(1, batches.size());
+
+        writeCallbacks.get(0).onSaved(true);
+
+        assertEquals(2, batches.size());
+        assertEquals(2, batches.get(1).size());
+    }
+
+    @Test
+    public void testLargeBacklogIsSplitIntoBatches() throws IOException {
+        IntakeOutbox outbox = newOutbox();
+        int count = IntakeOutbox.MAX_BATCH_RECORDS + 10;
+        for (int i = 0; i < count; i++) {
+            log.append(1000L + i, 100, IntakeLog.STATE_PENDING);
+        }
+
+        outbox.flush();
+        assertEquals(IntakeOutbox.MAX_BATCH_RECORDS, batches.get(0).size());
+        writeCallbacks.get(0).onSaved(true);
+        assertEquals(10, batches.get(1).size());
+    }
+
+    @Test
+    public void testSentRecordsAreCheckedAfterRestart() throws IOException {
+        // Sent by a previous run that was killed before Firestore answered
+        log.append(1000L, 200, IntakeLog.STATE_SENT);
+        log.append(2000L, 300, IntakeLog.STATE_SENT);
+        IntakeOutbox outbox = newOutbox();
+
+        outbox.flush();
+        assertEquals(1, lookups.size());
+        assertTrue(batches.isEmpty());
+
+        lookupCallbacks.get(0).onExistingLoaded(new HashSet<>(Collections.singletonList("install-1000")));
+
+        // Only the record that never arrived is sent again
+        assertEquals(1, batches.size());
+        assertEquals(Collections.singleton("install-2000"), batches.get(0).keySet());
+    }
+
+    @Test
+    public void testFailedLookupIsRetried() throws IOException {
+        log.append(1000L, 200, IntakeLog.STATE_SENT);
+        IntakeOutbox outbox = newOutbox();
+        outbox.flush();
+
+        lookupCallbacks.get(0).onExistingLoaded(null);
+
+        assertTrue(batches.isEmpty());
+        assertEquals(1, countInState(IntakeLog.STATE_SENT));
+        runScheduled();
+        assertEquals(2, lookups.size());
+    }
+
+    @Test
+    public void testBackoffIsCapped() {
+        assertEquals(IntakeOutbox.INITIAL_BACKOFF_MILLIS, IntakeOutbox.backoffMillis(1));
+        assertEquals(4 * IntakeOutbox.INITIAL_BACKOFF_MILLIS, IntakeOutbox.backoffMillis(3));
+        assertEquals(IntakeOutbox.MAX_BACKOFF_MILLIS, IntakeOutbox.backoffMillis(40));
+    }
+}
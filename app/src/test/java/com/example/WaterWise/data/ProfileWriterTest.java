@@ -0,0 +1,174 @@
+package com.example.WaterWise.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ProfileWriterTest {
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private final List<Map<String, Object>> writes = new ArrayList<>();
+    private final List<FirestoreHelper.SaveCallback> pendingCallbacks = new ArrayList<>();
+    private final List<Long> delays = new ArrayList<>();
+    // Values shown by the caller, none until the first snapshot is applied
+    private final Map<String, Object> shown = new HashMap<>();
+    private ProfileWriter writer;
+
+    @Before
+    public void setUp() {
+        writer = new ProfileWriter(new ProfileWriter.Scheduler() {
+            @Override
+            public void schedule(Runnable task, long delayMillis) {
+                delays.add(delayMillis);
+                scheduled.add(task);
+            }
+
+            @Override
+            public void cancel(Runnable task) {
+                scheduled.remove(task);
+            }
+        }, (fields, callback) -> {
+            writes.add(fields);
+            pendingCallbacks.add(callback);
+        });
+    }
+
+    /**
+     * Runs the debounced flush, as if the debounce delay passed without further edits.
+     */
+    private void runScheduled() {
+        List<Runnable> tasks = new ArrayList<>(scheduled);
+        scheduled.clear();
+        for (Runnable task : tasks) {
+            task.run();
+        }
+    }
+
+    private static Map<String, Object> profile(String name, int goal, int weight, String gender) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("name", name);
+        fields.put("goal", goal);
+        fields.put("weight", weight);
+        fields.put("gender", gender);
+        return fields;
+    }
+
+    @Test
+    public void testHydrateNeverWrites() {
+        Map<String, Object> applied = writer.hydrate(profile("Ana", 2000, 60, "Female"), shown::get);
+
+        assertEquals(4, applied.size());
+        assertTrue(scheduled.isEmpty());
+        assertTrue(writes.isEmpty());
+        assertEquals(4, writer.getEchoesSkipped());
+    }
+
+    @Test
+    public void testSnapshotMatchingShownValuesIsNoEcho() {
+        Map<String, Object> applied = writer.hydrate(profile("Ana", 2000, 60, "Female"), shown::get);
+        shown.putAll(applied);
+
+        // The same values again, as a server snapshot after the cached one would bring
+        writer.hydrate(profile("Ana", 2000, 60, "Female"), shown::get);
+        writer.hydrate(profile("Ana", 2100, 60, "Female"), shown::get);
+
+        assertEquals(5, writer.getEchoesSkipped());
+    }
+
+    @Test
+    public void testBurstOfEditsIsOneWrite() {
+        writer.hydrate(profile("Ana", 2000, 60, "Female"), shown::get);
+        writer.set("goal", 2500);
+        writer.set("weight", 62);
+        writer.set("goal", 2600);
+        // Only one flush is pending, rescheduled by every edit
+        assertEquals(1, scheduled.size());
+
+        runScheduled();
+
+        assertEquals(1, writes.size());
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("goal", 2600);
+        expected.put("weight", 62);
+        assertEquals(expected, writes.get(0));
+        assertEquals(2, writer.getEditsCoalesced());
+    }
+
+    @Test
+    public void testUnchangedEditIsDropped() {
+        writer.hydrate(profile("Ana", 2000, 60, "Female"), shown::get);
+
+        assertFalse(writer.set("goal", 2000));
+        assertTrue(scheduled.isEmpty());
+        assertEquals(1, writer.getUnchangedEditsSkipped());
+    }
+
+    @Test
+    public void testHydrateKeepsPendingEdit() {
+        writer.hydrate(profile("Ana", 2000, 60, "Female"), shown::get);
+        writer.set("name", "Bea");
+
+        Map<String, Object> applied = writer.hydrate(profile("Ana", 2100, 60, "Female"), shown::get);
+
+        assertFalse(applied.containsKey("name"));
+        assertEquals(2100, applied.get("goal"));
+        runScheduled();
+        assertEquals("Bea", writes.get(0).get("name"));
+    }
+
+    @Test
+    public void testFailedWriteIsRetried() {
+        writer.set("goal", 2500);
+        runScheduled();
+        writer.set("weight", 70);
+        pendingCallbacks.get(0).onSaved(false);
+
+        // The retry carries the failed field and the edit made while it was in flight
+        runScheduled();
+        assertEquals(2, writes.size());
+        assertEquals(2500, writes.get(1).get("goal"));
+        assertEquals(70, writes.get(1).get("weight"));
+        pendingCallbacks.get(1).onSaved(true);
+        assertFalse(writer.hasPendingWrites());
+        assertEquals(2, writer.getWritesSent());
+    }
+
+    @Test
+    public void testRejectedWriteBacksOffThenIsDropped() {
+        writer.set("goal", 2500);
+        runScheduled();
+        for (int attempt = 1; attempt < ProfileWriter.MAX_WRITE_ATTEMPTS; attempt++) {
+            pendingCallbacks.get(attempt - 1).onSaved(false);
+            assertEquals(ProfileWriter.DEBOUNCE_MILLIS << attempt, (long) delays.get(delays.size() - 1));
+            runScheduled();
+        }
+        assertEquals(ProfileWriter.MAX_WRITE_ATTEMPTS, writes.size());
+
+        pendingCallbacks.get(ProfileWriter.MAX_WRITE_ATTEMPTS - 1).onSaved(false);
+
+        assertTrue(scheduled.isEmpty());
+        assertFalse(writer.hasPendingWrites());
+        assertEquals(1, writer.getWritesDropped());
+        assertEquals(ProfileWriter.MAX_BACKOFF_MILLIS, ProfileWriter.retryDelayMillis(40));
+    }
+
+    @Test
+    public void testStartupReadCostsNoWrites() {
+        // A startup read followed by the same values set by the UI sends nothing
+        writer.hydrate(profile("Ana", 2000, 60, "Female"), shown::get);
+        writer.set("goal", 2000);
+        writer.set("name", "Ana");
+        runScheduled();
+
+        assertTrue(writes.isEmpty());
+        assertEquals(6, writer.getWritesAvoided());
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.WaterWise.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SingleFlightTest {
+    private long now;
+    private final SingleFlight<String> flight = new SingleFlight<>(() -> now);
+    private final List<SingleFlight.Callback<String>> loads = new ArrayList<>();
+    private final List<String> results = new ArrayList<>();
+
+    private void get(String key) {
+        flight.get(key, loads::add, results::add);
+    }
+
+    @Test
+    public void testConcurrentReadsShareOneLoad() {
+        get("users/a");
+        get("users/a");
+        get("users/a");
+        assertEquals(1, loads.size());
+
+        loads.get(0).onResult("doc");
+
+        assertEquals(3, results.size());
+        assertEquals("doc", results.get(2));
+        assertEquals(2, flight.getCoalesced());
+    }
+
+    @Test
+    public void testRecentResultIsSharedUntilItExpires() {
+        get("users/a");
+        loads.get(0).onResult("doc");
+
+        now += SingleFlight.RESULT_TTL_MILLIS - 1;
+        get("users/a");
+        assertEquals(1, loads.size());
+        assertEquals(1, flight.getCacheHits());
+
+        now += 1;
+        get("users/a");
+        assertEquals(2, loads.size());
+    }
+
+    @Test
+    public void testFailureIsPassedToWaitersAndNotKept() {
+        get("users/a");
+        get("users/a");
+        loads.get(0).onResult(null);
+
+        assertEquals(2, results.size());
+        assertNull(results.get(0));
+        get("users/a");
+        assertEquals(2, loads.size());
+    }
+
+    @Test
+    public void testSeededResultCompletesReadInFlight() {
+        get("users/a");
+        flight.put("users/a", "snapshot");
+
+        assertEquals("snapshot", results.get(0));
+        get("users/a");
+        assertEquals(1, loads.size());
+        assertEquals("snapshot", results.get(1));
+    }
+
+    @Test
+    public void testInvalidateDropsResultAndKeysAreSeparate() {
+        flight.put("users/a", "doc");
+        get("users/b");
+        assertEquals(1, loads.size());
+
+        flight.invalidate("users/a");
+        get("users/a");
+        assertEquals(2, loads.size());
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.WaterWise.data;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class SyncPacerTest {
+    private static final long MINUTE = 60 * 1000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long NOW = 100 * 24 * HOUR;
+
+    @Test
+    public void testNoRecentRecordsWaitsLongest() {
+        assertEquals(SyncPacer.MAX_DELAY_MILLIS, SyncPacer.nextDelayMillis(Collections.<Long>emptyList(), NOW));
+        assertEquals(SyncPacer.MAX_DELAY_MILLIS, SyncPacer.nextDelayMillis(Collections.singletonList(NOW - MINUTE), NOW));
+        assertEquals(SyncPacer.MAX_DELAY_MILLIS,
+                SyncPacer.nextDelayMillis(Arrays.asList(NOW - 30 * HOUR, NOW - 26 * HOUR), NOW));
+    }
+
+    @Test
+    public void testFrequentLoggingSyncsAtAverageGap() {
+        long delay = SyncPacer.nextDelayMillis(Arrays.asList(NOW - 3 * HOUR, NOW - 2 * HOUR, NOW - HOUR), NOW);
+        assertEquals(HOUR, delay);
+    }
+
+    @Test
+    public void testDelayIsClampedToMinimum() {
+        long delay = SyncPacer.nextDelayMillis(Arrays.asList(NOW - 2 * MINUTE, NOW - MINUTE), NOW);
+        assertEquals(SyncPacer.MIN_DELAY_MILLIS, delay);
+    }
+
+    @Test
+    public void testIdleTimeStretchesDelay() {
+        long delay = SyncPacer.nextDelayMillis(Arrays.asList(NOW - 9 * HOUR, NOW - 8 * HOUR), NOW);
+        assertEquals(4 * HOUR, delay);
+    }
+}
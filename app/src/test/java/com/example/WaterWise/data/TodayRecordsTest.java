@@ -0,0 +1,85 @@
+package com.example.WaterWise.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.WaterWise.home.IntakeRecord;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class TodayRecordsTest {
+
+    private static IntakeRecord record(long timestamp, String time, int amount) {
+        return new IntakeRecord(timestamp, time, "2024-03-01", amount);
+    }
+
+    @Test
+    public void testRemoteRecordIsInsertedInOrder() {
+        TodayRecords today = new TodayRecords("install", Arrays.asList(
+                record(1000L, "08:00 AM", 200), record(3000L, "10:00 AM", 300)));
+
+        assertTrue(today.apply(TodayRecords.ADDED, "other-2000", record(2000L, "09:00 AM", 250), false));
+
+        List<IntakeRecord> records = today.getRecords();
+        assertEquals(3, records.size());
+        assertEquals(2000L, records.get(1).getTimestamp());
+        assertEquals(750, today.getTotal());
+    }
+
+    @Test
+    public void testOwnRecordIsNotAddedTwice() {
+        TodayRecords today = new TodayRecords("install", Collections.singletonList(record(1000L, "08:00 AM", 200)));
+
+        assertFalse(today.apply(TodayRecords.ADDED, "install-1000", record(1000L, "08:00 AM", 200), false));
+
+        assertEquals(1, today.getRecords().size());
+        assertEquals(200, today.getTotal());
+    }
+
+    @Test
+    public void testModifiedAndRemovedRecords() {
+        TodayRecords today = new TodayRecords("install", Collections.emptyList());
+        today.apply(TodayRecords.ADDED, "a", record(1000L, "08:00 AM", 200), false);
+
+        assertTrue(today.apply(TodayRecords.MODIFIED, "a", record(1000L, "08:00 AM", 400), false));
+        assertEquals(400, today.getTotal());
+        // A snapshot that repeats the same record changes nothing
+        assertFalse(today.apply(TodayRecords.MODIFIED, "a", record(1000L, "08:00 AM", 400), false));
+
+        assertTrue(today.apply(TodayRecords.REMOVED, "a", record(1000L, "08:00 AM", 400), false));
+        assertEquals(0, today.getTotal());
+        assertFalse(today.apply(TodayRecords.REMOVED, "a", record(1000L, "08:00 AM", 400), false));
+    }
+
+    @Test
+    public void testLegacyRecordMatchesLocalRecordOnce() {
+        // Two identical sips in the same minute, one of them written by an earlier version
+        TodayRecords today = new TodayRecords("install", Arrays.asList(
+                record(1000L, "08:00 AM", 200), record(2000L, "08:00 AM", 200)));
+
+        assertFalse(today.apply(TodayRecords.ADDED, "random1", record(0L, "08:00 AM", 200), true));
+        assertFalse(today.apply(TodayRecords.ADDED, "random2", record(0L, "08:00 AM", 200), true));
+        // A third one was added on another device
+        assertTrue(today.apply(TodayRecords.ADDED, "random3", record(0L, "08:00 AM", 200), true));
+
+        assertEquals(600, today.getTotal());
+        // A matched record stays matched when the listener reports it again
+        assertFalse(today.apply(TodayRecords.REMOVED, "random1", record(0L, "08:00 AM", 200), true));
+        assertEquals(600, today.getTotal());
+    }
+
+    @Test
+    public void testLocalRecordAddedLater() {
+        TodayRecords today = new TodayRecords("install", Collections.emptyList());
+        today.addLocal(record(5000L, "11:00 AM", 100));
+        today.apply(TodayRecords.ADDED, "other", record(4000L, "10:30 AM", 150), false);
+
+        assertEquals(4000L, today.getRecords().get(0).getTimestamp());
+        assertEquals(250, today.getTotal());
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.WaterWise.history;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class HeatmapLayoutTest {
+    // 2024-03-01, a Friday
+    private static final long FRIDAY = 19783;
+
+    @Test
+    public void testDaysFillColumnsByWeek() {
+        HeatmapLayout layout = new HeatmapLayout(FRIDAY, 366);
+
+        assertEquals(0, layout.columnOf(0));
+        assertEquals(5, layout.rowOf(0));
+        // The Sunday after starts the second week
+        assertEquals(1, layout.columnOf(2));
+        assertEquals(0, layout.rowOf(2));
+        assertEquals(53, layout.getColumnCount());
+    }
+
+    @Test
+    public void testHitTestingMatchesPlacement() {
+        HeatmapLayout layout = new HeatmapLayout(FRIDAY, 366);
+
+        for (int i = 0; i < layout.getDayCount(); i++) {
+            assertEquals(i, layout.indexAt(layout.columnOf(i), layout.rowOf(i)));
+        }
+        // Cells before the first day and after the last one hold no day
+        assertEquals(-1, layout.indexAt(0, 0));
+        assertEquals(-1, layout.indexAt(layout.getColumnCount(), 0));
+        assertEquals(-1, layout.indexAt(0, HeatmapLayout.DAYS_PER_WEEK));
+    }
+
+    @Test
+    public void testYearStartingOnSaturdayIsWidest() {
+        // 2024-03-02, a Saturday
+        HeatmapLayout layout = new HeatmapLayout(FRIDAY + 1, 366);
+
+        assertEquals(HeatmapLayout.MAX_COLUMNS, layout.getColumnCount());
+    }
+
+    @Test
+    public void testPercentagesMapToBuckets() {
+        assertEquals(HeatmapLayout.BUCKET_NONE, HeatmapLayout.bucketOf(0f));
+        assertEquals(HeatmapLayout.BUCKET_LOW, HeatmapLayout.bucketOf(12.5f));
+        assertEquals(HeatmapLayout.BUCKET_HIGH, HeatmapLayout.bucketOf(50f));
+        assertEquals(HeatmapLayout.BUCKET_GOAL, HeatmapLayout.bucketOf(100f));
+        assertEquals(HeatmapLayout.BUCKET_GOAL, HeatmapLayout.bucketOf(180f));
+    }
+}
@@ -0,0 +1,280 @@
+package com.example.WaterWise.history;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.text.DateFormatSymbols;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public class HistoryPagerTest {
+    // Ten years of history, ending on 2024-03-01
+    private static final long END = 19783;
+    private static final long START = END - 3650 + 1;
+
+    private final HistoryRowFormatter formatter = new HistoryRowFormatter(DateFormatSymbols.getInstance(Locale.US));
+    // Requested {start, end, goal}
+    private final List<long[]> requests = new ArrayList<>();
+    private final List<HistoryPager.PageCallback> callbacks = new ArrayList<>();
+    private final List<int[]> changes = new ArrayList<>();
+    private final List<int[]> insertions = new ArrayList<>();
+    private final List<int[]> removals = new ArrayList<>();
+    private int rangeChanges;
+    private HistoryPager pager;
+
+    @Before
+    public void setUp() {
+        pager = new HistoryPager((startEpochDay, endEpochDay, goal, callback) -> {
+            requests.add(new long[]{startEpochDay, endEpochDay, goal});
+            callbacks.add(callback);
+        });
+        pager.setListener(new HistoryPager.Listener() {
+            @Override
+            public void onDaysChanged(int firstPosition, int count) {
+                changes.add(new int[]{firstPosition, count});
+            }
+
+            @Override
+            public void onDaysInserted(int firstPosition, int count) {
+                insertions.add(new int[]{firstPosition, count});
+            }
+
+            @Override
+            public void onDaysRemoved(int firstPosition, int count) {
+                removals.add(new int[]{firstPosition, count});
+            }
+
+            @Override
+            public void onRangeChanged() {
+                rangeChanges++;
+            }
+        });
+    }
+
+    /**
+     * Delivers every pending request, with each day's total set to its epoch day modulo 1000.
+     */
+    private void deliverAll() {
+        while (!callbacks.isEmpty()) {
+            long[] range = requests.remove(0);
+            HistoryPager.PageCallback callback = callbacks.remove(0);
+            DailyIntakeBuckets buckets = new DailyIntakeBuckets(range[0], range[1]);
+            for (long day = range[0]; day <= range[1]; day++) {
+                buckets.add(day, (int) (day % 1000));
+            }
+            callback.onPageLoaded(formatter.format(buckets, (int) range[2]));
+        }
+    }
+
+    @Test
+    public void testFirstPageOnlyIsLoadedUpFront() {
+        pager.setRange(START, END);
+
+        assertEquals(3650, pager.size());
+        assertEquals(1, requests.size());
+        assertEquals(END - HistoryPager.PAGE_DAYS + 1, requests.get(0)[0]);
+        assertEquals(END, requests.get(0)[1]);
+    }
+
+    @Test
+    public void testUnloadedDaysArePlaceholders() {
+        pager.setRange(START, END);
+        assertEquals(HistoryPager.PLACEHOLDER, pager.getTotalAt(0));
+
+        deliverAll();
+
+        assertEquals(0, changes.get(0)[0]);
+        assertEquals(HistoryPager.PAGE_DAYS, changes.get(0)[1]);
+        assertEquals((int) (END % 1000), pager.getTotalAt(0));
+        assertEquals((int) ((END - 5) % 1000), pager.getTotalAt(5));
+        assertEquals(END - 5, pager.getEpochDayAt(5));
+    }
+
+    @Test
+    public void testNextPageIsPrefetched() {
+        pager.setRange(START, END);
+        deliverAll();
+
+        // Binding a day within the prefetch distance of the next page loads it
+        pager.getTotalAt(HistoryPager.PAGE_DAYS - HistoryPager.PREFETCH_DAYS);
+
+        assertEquals(1, requests.size());
+        assertEquals(END - 2 * HistoryPager.PAGE_DAYS + 1, requests.get(0)[0]);
+        assertEquals(END - HistoryPager.PAGE_DAYS, requests.get(0)[1]);
+    }
+
+    @Test
+    public void testPagesInMemoryAreBounded() {
+        pager.setRange(START, END);
+        for (int position = 0; position < pager.size(); position++) {
+            pager.getTotalAt(position);
+            deliverAll();
+        }
+
+        assertEquals(HistoryPager.MAX_PAGES, pager.getLoadedPageCount());
+        // The oldest page is clipped at the sign-up date
+        assertEquals((int) (START % 1000), pager.getTotalAt(pager.size() - 1));
+    }
+
+    @Test
+    public void testRangeChangeDropsStaleResults() {
+        pager.setRange(START, END);
+        pager.setRange(START, END + 1);
+        // The first request was for the previous range
+        requests.remove(0);
+        callbacks.remove(0).onPageLoaded(formatter.format(new DailyIntakeBuckets(END - 29, END), 0));
+
+        assertTrue(changes.isEmpty());
+        assertEquals(HistoryPager.PLACEHOLDER, pager.getTotalAt(0));
+    }
+
+    @Test
+    public void testInvalidateReloadsLoadedPage() {
+        pager.setRange(START, END);
+        deliverAll();
+
+        pager.invalidate(END);
+        assertEquals(1, requests.size());
+        // Days in pages that are not loaded are fetched when bound instead
+        pager.invalidate(START);
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    public void testReloadReportsOnlyChangedDays() {
+        pager.setRange(START, END);
+        deliverAll();
+        changes.clear();
+
+        pager.invalidate(END - 3);
+        long[] range = requests.remove(0);
+        DailyIntakeBuckets buckets = new DailyIntakeBuckets(range[0], range[1]);
+        for (long day = range[0]; day <= range[1]; day++) {
+            buckets.add(day, (int) (day % 1000) + (day == END - 3 ? 250 : 0));
+        }
+        callbacks.remove(0).onPageLoaded(formatter.format(buckets, 0));
+
+        assertEquals(1, changes.size());
+        assertArrayEquals(new int[]{3, 1}, changes.get(0));
+    }
+
+    @Test
+    public void testNewDayIsInsertedAtTheTop() {
+        pager.setRange(START, END);
+        deliverAll();
+        changes.clear();
+
+        pager.setRange(START, END + 1);
+
+        assertEquals(1, rangeChanges);
+        assertEquals(1, insertions.size());
+        assertArrayEquals(new int[]{0, 1}, insertions.get(0));
+        assertTrue(removals.isEmpty());
+        // Yesterday keeps its total while the page of the new range loads
+        assertEquals((int) (END % 1000), pager.getTotalAt(1));
+        assertEquals(HistoryPager.PLACEHOLDER, pager.getTotalAt(0));
+
+        deliverAll();
+
+        // Only the new day differs from what was shown
+        assertEquals(1, changes.size());
+        assertArrayEquals(new int[]{0, 1}, changes.get(0));
+    }
+
+    @Test
+    public void testMovedStartIsReportedAtTheBottom() {
+        pager.setRange(START, END);
+
+        pager.setRange(START + 10, END);
+        pager.setRange(START + 5, END);
+
+        assertArrayEquals(new int[]{3640, 10}, removals.get(0));
+        assertArrayEquals(new int[]{3640, 5}, insertions.get(0));
+        // A range that does not overlap the previous one is reported as a whole
+        pager.setRange(END + 100, END + 200);
+        assertEquals(2, rangeChanges);
+    }
+
+    @Test
+    public void testGoalChangeReformatsLoadedPages() {
+        pager.setRange(START, END);
+        deliverAll();
+        changes.clear();
+
+        pager.setGoal(2000);
+        assertEquals(1, requests.size());
+        assertEquals(2000, requests.get(0)[2]);
+        deliverAll();
+
+        // Every day of the page has a new percentage, except days with no intake
+        assertEquals(HistoryPager.PAGE_DAYS, changes.get(0)[1]);
+        HistoryRow row = pager.getRowAt(0);
+        assertEquals(formatter.formatRow(END, (int) (END % 1000), 2000).getPercentageText(), row.getPercentageText());
+    }
+
+    @Test
+    public void testResultForPreviousGoalIsDropped() {
+        pager.setRange(START, END);
+        pager.setGoal(2000);
+        // The first request was for the previous goal
+        requests.remove(0);
+        callbacks.remove(0).onPageLoaded(formatter.format(new DailyIntakeBuckets(END - 29, END), 0));
+
+        assertTrue(changes.isEmpty());
+        deliverAll();
+        assertEquals(1, changes.size());
+    }
+
+    /**
+     * Measures only {@link HistoryPager#getRowAt(int)}, the lookup the adapter does on each
+     * bind. Setting the views needs the Android framework, so it is not covered here.
+     */
+    @Test
+    public void testGettingLoadedRowsDoesNotAllocate() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported());
+        allocations.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+        pager.setRange(START, END);
+        // Load the pages of the first 150 days, which fit in memory
+        int days = 5 * HistoryPager.PAGE_DAYS;
+        for (int position = 0; position < days; position++) {
+            pager.getRowAt(position);
+            deliverAll();
+        }
+        long checksum = scroll(days);
+
+        long overhead = allocations.getThreadAllocatedBytes(thread);
+        overhead = allocations.getThreadAllocatedBytes(thread) - overhead;
+        long before = allocations.getThreadAllocatedBytes(thread);
+        checksum += scroll(days);
+        long allocated = allocations.getThreadAllocatedBytes(thread) - before - overhead;
+
+        assertTrue(checksum != 0);
+        assertEquals(0, allocated);
+        assertTrue(requests.isEmpty());
+    }
+
+    /**
+     * Gets 1000 rows from the pager, scrolling down and up over the given number of days like a
+     * list would, and reads their fields.
+     */
+    private long scroll(int days) {
+        long checksum = 0;
+        for (int i = 0; i < 1000; i++) {
+            int position = i / days % 2 == 0 ? i % days : days - 1 - i % days;
+            HistoryRow row = pager.getRowAt(position);
+            checksum += row.getDateLabel().length() + row.getPercentageText().length() + (long) row.getSweepAngle();
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.WaterWise.history;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.text.DateFormatSymbols;
+import java.util.Locale;
+
+public class HistoryRowFormatterTest {
+    // 2024-08-30, a Friday
+    private static final long DAY = 19965;
+
+    private final HistoryRowFormatter formatter = new HistoryRowFormatter(DateFormatSymbols.getInstance(Locale.US));
+
+    @Test
+    public void testRowIsFormattedForGoal() {
+        HistoryRow half = formatter.formatRow(DAY, 1000, 2000);
+        HistoryRow third = formatter.formatRow(DAY, 1000, 3000);
+
+        assertEquals("Fri, Aug 30, 2024", half.getDateLabel());
+        assertEquals(String.format("%.0f%%", 50f), half.getPercentageText());
+        assertEquals(180f, half.getSweepAngle(), 0.001f);
+        assertEquals(String.format("%.1f%%", 1000 * 100f / 3000), third.getPercentageText());
+        assertEquals("0%", formatter.formatRow(DAY, 1000, 0).getPercentageText());
+    }
+
+    @Test
+    public void testPageHoldsEveryDay() {
+        DailyIntakeBuckets totals = new DailyIntakeBuckets(DAY - 2, DAY);
+        totals.add(DAY - 1, 500);
+
+        HistoryPage page = formatter.format(totals, 2000);
+
+        assertEquals(2000, page.getGoal());
+        assertEquals(500, page.getRow(DAY - 1).getTotal());
+        assertEquals(DAY, page.getRow(DAY).getEpochDay());
+        assertFalse(page.contains(DAY + 1));
+        assertEquals(null, page.getRow(DAY - 3));
+    }
+
+    @Test
+    public void testRowsLookAlikeOnlyWithSameTotalAndPercentage() {
+        HistoryRow row = formatter.formatRow(DAY, 1000, 2000);
+
+        assertTrue(row.looksLike(formatter.formatRow(DAY, 1000, 2000)));
+        assertFalse(row.looksLike(formatter.formatRow(DAY, 1000, 2500)));
+        assertFalse(row.looksLike(formatter.formatRow(DAY, 1200, 2000)));
+        assertFalse(row.looksLike(null));
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.WaterWise.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+public class FuturesTest {
+    private final Map<String, CompletableFuture<Integer>> reads = new HashMap<>();
+    private int maxRunning;
+
+    private CompletableFuture<Integer> read(String key) {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        reads.put(key, future);
+        maxRunning = Math.max(maxRunning, running());
+        return future;
+    }
+
+    private int running() {
+        int count = 0;
+        for (CompletableFuture<Integer> future : reads.values()) {
+            if (!future.isDone()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testAllAsListKeepsOrder() throws Exception {
+        CompletableFuture<Integer> first = new CompletableFuture<>();
+        CompletableFuture<Integer> second = new CompletableFuture<>();
+        CompletableFuture<List<Integer>> all = Futures.allAsList(Arrays.asList(first, second));
+
+        second.complete(2);
+        assertFalse(all.isDone());
+        first.complete(1);
+
+        assertEquals(Arrays.asList(1, 2), all.get());
+    }
+
+    @Test
+    public void testAllAsListFailsFast() {
+        CompletableFuture<Integer> first = new CompletableFuture<>();
+        CompletableFuture<Integer> second = new CompletableFuture<>();
+        CompletableFuture<List<Integer>> all = Futures.allAsList(Arrays.asList(first, second));
+
+        second.completeExceptionally(new IllegalStateException("offline"));
+
+        assertTrue(all.isCompletedExceptionally());
+        assertFalse(first.isDone());
+    }
+
+    @Test
+    public void testMapBoundedLimitsConcurrency() throws Exception {
+        List<String> dates = Arrays.asList("a", "b", "c", "d", "e");
+        CompletableFuture<List<Integer>> all = Futures.mapBounded(dates, 2, this::read);
+        assertEquals(2, reads.size());
+
+        // Completed out of order; the results still follow the items
+        reads.get("b").complete(2);
+        reads.get("a").complete(1);
+        reads.get("c").complete(3);
+        reads.get("d").complete(4);
+        reads.get("e").complete(5);
+
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), all.get());
+        assertEquals(2, maxRunning);
+    }
+
+    @Test
+    public void testMapBoundedStopsAfterFailure() {
+        CompletableFuture<List<Integer>> all = Futures.mapBounded(Arrays.asList("a", "b", "c"), 1, this::read);
+
+        reads.get("a").completeExceptionally(new IllegalStateException("offline"));
+
+        assertTrue(all.isCompletedExceptionally());
+        assertEquals(1, reads.size());
+    }
+
+    @Test
+    public void testCancellingFanOutCancelsRunningReads() {
+        CompletableFuture<List<Integer>> all = Futures.mapBounded(Arrays.asList("a", "b", "c"), 2, this::read);
+
+        all.cancel(false);
+
+        assertTrue(reads.get("a").isCancelled());
+        assertTrue(reads.get("b").isCancelled());
+        assertEquals(2, reads.size());
+    }
+
+    @Test
+    public void testTimeoutFailsPendingFuture() throws InterruptedException {
+        List<Runnable> scheduled = new ArrayList<>();
+        Futures.Scheduler scheduler = new Futures.Scheduler() {
+            @Override
+            public void schedule(Runnable task, long delayMillis) {
+                scheduled.add(task);
+            }
+
+            @Override
+            public void cancel(Runnable task) {
+                scheduled.remove(task);
+            }
+        };
+        CompletableFuture<Integer> slow = Futures.withTimeout(new CompletableFuture<>(), 1000, scheduler);
+        CompletableFuture<Integer> fast = Futures.withTimeout(new CompletableFuture<>(), 1000, scheduler);
+        fast.complete(1);
+        assertEquals(1, scheduled.size());
+
+        scheduled.get(0).run();
+
+        try {
+            slow.get();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+            return;
+        }
+        throw new AssertionError("Expected a timeout");
+    }
+
+    @Test
+    public void testRetryBacksOffUntilSuccess() throws Exception {
+        List<Long> delays = new ArrayList<>();
+        List<Runnable> scheduled = new ArrayList<>();
+        Futures.Scheduler scheduler = new Futures.Scheduler() {
+            @Override
+            public void schedule(Runnable task, long delayMillis) {
+                delays.add(delayMillis);
+                scheduled.add(task);
+            }
+
+            @Override
+            public void cancel(Runnable task) {
+                scheduled.remove(task);
+            }
+        };
+        int[] attempt = {0};
+        CompletableFuture<Integer> result = Futures.retry(() -> read("attempt" + attempt[0]++), 3, 1000, scheduler);
+
+        reads.get("attempt0").completeExceptionally(new IllegalStateException("offline"));
+        scheduled.remove(0).run();
+        reads.get("attempt1").completeExceptionally(new IllegalStateException("offline"));
+        scheduled.remove(0).run();
+        assertFalse(result.isDone());
+        reads.get("attempt2").complete(7);
+
+        assertEquals(7, (int) result.get());
+        assertEquals(Arrays.asList(1000L, 2000L), delays);
+    }
+
+    @Test
+    public void testRetryGivesUpAfterLastAttempt() {
+        List<Runnable> scheduled = new ArrayList<>();
+        Futures.Scheduler scheduler = new Futures.Scheduler() {
+            @Override
+            public void schedule(Runnable task, long delayMillis) {
+                scheduled.add(task);
+            }
+
+            @Override
+            public void cancel(Runnable task) {
+                scheduled.remove(task);
+            }
+        };
+        int[] attempt = {0};
+        CompletableFuture<Integer> result = Futures.retry(() -> read("attempt" + attempt[0]++), 2, 1000, scheduler);
+
+        reads.get("attempt0").completeExceptionally(new IllegalStateException("offline"));
+        scheduled.remove(0).run();
+        reads.get("attempt1").completeExceptionally(new IllegalStateException("offline"));
+
+        assertTrue(result.isCompletedExceptionally());
+        assertTrue(scheduled.isEmpty());
+    }
+
+    @Test
+    public void testScopeCancelsWorkInProgress() {
+        FutureScope scope = new FutureScope();
+        CompletableFuture<Integer> done = scope.track(new CompletableFuture<>());
+        CompletableFuture<Integer> pending = scope.track(new CompletableFuture<>());
+        done.complete(1);
+        assertEquals(1, scope.size());
+
+        scope.cancel();
+
+        assertTrue(pending.isCancelled());
+        assertTrue(scope.track(new CompletableFuture<Integer>()).isCancelled());
+    }
+}
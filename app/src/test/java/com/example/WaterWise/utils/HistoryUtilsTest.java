@@ -1,13 +1,18 @@
 package com.example.WaterWise.utils;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import com.example.WaterWise.history.HistoryRecord;
 
 import org.junit.Test;
 
+import java.text.DateFormatSymbols;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
 
 public class HistoryUtilsTest {
 
@@ -27,4 +32,62 @@ public class HistoryUtilsTest {
         assertEquals("2024-01-01", historyList.get(1).getDate());
         assertEquals("2023-12-31", historyList.get(2).getDate());
     }
+
+    @Test
+    public void testToEpochDay() {
+        assertEquals(0, HistoryUtils.toEpochDay("1970-01-01"));
+        assertEquals(-1, HistoryUtils.toEpochDay("1969-12-31"));
+        assertEquals(19723, HistoryUtils.toEpochDay("2024-01-01"));
+        assertEquals(19782, HistoryUtils.toEpochDay("2024-02-29"));
+    }
+
+    @Test
+    public void testFormatEpochDayRoundTrip() {
+        for (long day = HistoryUtils.toEpochDay("1999-12-01"); day < HistoryUtils.toEpochDay("2030-03-01"); day++) {
+            assertEquals(day, HistoryUtils.toEpochDay(HistoryUtils.formatEpochDay(day)));
+        }
+        assertEquals("2024-02-29", HistoryUtils.formatEpochDay(19782));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testToEpochDayRejectsInvalidDate() {
+        HistoryUtils.toEpochDay("2024/01/01");
+    }
+
+    @Test
+    public void testSplitIntoWindows() {
+        List<long[]> windows = HistoryUtils.splitIntoWindows(0, 9, 4);
+
+        // Windows are returned newest first and cover every day exactly once
+        assertEquals(3, windows.size());
+        assertArrayEquals(new long[]{6, 9}, windows.get(0));
+        assertArrayEquals(new long[]{2, 5}, windows.get(1));
+        assertArrayEquals(new long[]{0, 1}, windows.get(2));
+    }
+
+    @Test
+    public void testSplitIntoWindowsWithSmallerFirstWindow() {
+        List<long[]> windows = HistoryUtils.splitIntoWindows(0, 9, 2, 5);
+
+        assertEquals(3, windows.size());
+        assertArrayEquals(new long[]{8, 9}, windows.get(0));
+        assertArrayEquals(new long[]{3, 7}, windows.get(1));
+        assertArrayEquals(new long[]{0, 2}, windows.get(2));
+        // A range shorter than the first window is a single window
+        assertEquals(1, HistoryUtils.splitIntoWindows(5, 6, 2, 5).size());
+    }
+
+    @Test
+    public void testFormatDisplayDateMatchesSimpleDateFormat() throws Exception {
+        DateFormatSymbols symbols = DateFormatSymbols.getInstance(Locale.US);
+        SimpleDateFormat inputFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        SimpleDateFormat outputFormat = new SimpleDateFormat("EEE, MMM dd, yyyy", Locale.US);
+        inputFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        outputFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        for (long day = HistoryUtils.toEpochDay("2023-12-20"); day < HistoryUtils.toEpochDay("2024-03-10"); day++) {
+            String date = HistoryUtils.formatEpochDay(day);
+            assertEquals(outputFormat.format(inputFormat.parse(date)), HistoryUtils.formatDisplayDate(day, symbols));
+        }
+        assertEquals("Fri, Aug 30, 2024", HistoryUtils.formatDisplayDate(HistoryUtils.toEpochDay("2024-08-30"), symbols));
+    }
 }
@@ -0,0 +1,61 @@
+package com.example.WaterWise.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class StartupTraceTest {
+
+    @Test
+    public void testBeginAndEnd() {
+        StartupTrace trace = new StartupTrace(1000);
+        trace.begin(StartupTrace.STAGE_RECORDS_DECODE, 1200);
+        assertTrue(trace.end(StartupTrace.STAGE_RECORDS_DECODE, 1250));
+
+        assertEquals(50, trace.getDuration(StartupTrace.STAGE_RECORDS_DECODE));
+        assertEquals(250, trace.getOffset(StartupTrace.STAGE_RECORDS_DECODE));
+        assertEquals("records_decode took 50 ms, done at 250 ms", trace.describe(StartupTrace.STAGE_RECORDS_DECODE));
+    }
+
+    @Test
+    public void testMarkIsMeasuredFromOrigin() {
+        StartupTrace trace = new StartupTrace(1000);
+        assertTrue(trace.mark(StartupTrace.STAGE_FIRST_RENDER, 1400));
+
+        assertEquals(400, trace.getDuration(StartupTrace.STAGE_FIRST_RENDER));
+        assertEquals(400, trace.getOffset(StartupTrace.STAGE_FIRST_RENDER));
+    }
+
+    @Test
+    public void testStageIsRecordedOnce() {
+        StartupTrace trace = new StartupTrace(0);
+        trace.begin(StartupTrace.STAGE_LOCAL_STORE_OPEN, 10);
+        assertTrue(trace.end(StartupTrace.STAGE_LOCAL_STORE_OPEN, 30));
+
+        // A second DataModel opening the store later must not overwrite the cold start timing
+        trace.begin(StartupTrace.STAGE_LOCAL_STORE_OPEN, 500);
+        assertFalse(trace.end(StartupTrace.STAGE_LOCAL_STORE_OPEN, 505));
+        assertEquals(20, trace.getDuration(StartupTrace.STAGE_LOCAL_STORE_OPEN));
+    }
+
+    @Test
+    public void testUnrecordedStage() {
+        StartupTrace trace = new StartupTrace(0);
+        assertEquals(-1, trace.getDuration(StartupTrace.STAGE_FIRST_FIRESTORE_RESPONSE));
+        assertNull(trace.describe(StartupTrace.STAGE_FIRST_FIRESTORE_RESPONSE));
+        assertEquals("", trace.summary());
+    }
+
+    @Test
+    public void testSummaryListsStagesInOrder() {
+        StartupTrace trace = new StartupTrace(0);
+        trace.mark(StartupTrace.STAGE_FIRST_RENDER, 300);
+        trace.mark(StartupTrace.STAGE_FIRST_FIRESTORE_RESPONSE, 900);
+
+        assertEquals("first_render took 300 ms, done at 300 ms\n"
+                + "first_firestore_response took 900 ms, done at 900 ms", trace.summary());
+    }
+}